@@ -1,23 +1,34 @@
 /*** In The Name of Allah ***/
 package srctoolkit.janalysis;
 
+import srctoolkit.janalysis.ast.ASNode;
 import srctoolkit.janalysis.ast.ASTBuilder;
+import srctoolkit.janalysis.ast.ASTPattern;
+import srctoolkit.janalysis.ast.ASTSequencer;
 import srctoolkit.janalysis.ast.AbstractSyntaxTree;
+import srctoolkit.janalysis.ast.PathContextExtractor;
 import srctoolkit.janalysis.dg.cfg.CFGBuilder;
-import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
 import srctoolkit.janalysis.dg.pdg.JavaClass;
 import srctoolkit.janalysis.dg.pdg.JavaClassExtractor;
 import srctoolkit.janalysis.dg.pdg.PDGBuilder;
 import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.dg.pdg.SDGBuilder;
+import srctoolkit.janalysis.dg.pdg.ProjectIndex;
+import srctoolkit.janalysis.dg.pdg.SideEffectSummaries;
+import srctoolkit.janalysis.dg.pdg.SystemDependenceGraph;
+import srctoolkit.janalysis.metrics.MetricsExtractor;
 import srctoolkit.janalysis.utils.FileUtils;
 import srctoolkit.janalysis.utils.Logger;
 import srctoolkit.janalysis.utils.SystemUtils;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class which holds program execution options.
@@ -32,6 +43,9 @@ public class Execution {
     private boolean debugMode;
 	private String outputDir;
 	private Formats format;
+	private ASTPattern query;
+	private String summariesPath;
+	private boolean projectIndex;
 	
 	public Execution() {
         debugMode = false;
@@ -50,7 +64,14 @@ public class Execution {
 		// analysis types
 		CFG			("CFG"),
 		PDG			("PDG"),
+		SDG			("SDG"),
+		SUMMARIES	("SUMMARIES"),
 		AST			("AST"),
+		PATHS		("PATHS"),
+		PRE_ORDER	("PRE_ORDER"),
+		SBT			("SBT"),
+		QUERY		("QUERY"),
+		METRICS		("METRICS"),
 		SRC_INFO 	("INFO");
 		
 		private Analysis(String str) {
@@ -90,6 +111,26 @@ public class Execution {
 		format = fmt;
 	}
 	
+	public void setQuery(ASTPattern pattern) {
+		query = pattern;
+	}
+	
+	/**
+	 * Set the path of the side-effect summaries of library methods,
+	 * which are used by the PDG and SDG analyses.
+	 */
+	public void setSummariesPath(String path) {
+		summariesPath = path;
+	}
+	
+	/**
+	 * If enabled, a project index of all input files is built before the analyses;
+	 * so the PDG analysis of each file resolves classes and methods of other files.
+	 */
+	public void setProjectIndex(boolean index) {
+		projectIndex = index;
+	}
+	
 	public boolean setOutputDirectory(String outPath) {
         if (!outPath.endsWith(File.separator))
             outPath += File.separator;
@@ -144,6 +185,24 @@ public class Execution {
 		File outDirFile = new File(outputDir);
 		outDirFile.mkdirs();
 
+		if (summariesPath != null) {
+			try {
+				SideEffectSummaries summaries = SideEffectSummaries.load(summariesPath);
+				PDGBuilder.setLibrarySummaries(summaries);
+				Logger.info("# library method summaries = " + summaries.size() + "\n");
+			} catch (IOException ex) {
+				Logger.error(ex);
+			}
+		}
+
+		if (projectIndex) {
+			try {
+				PDGBuilder.setProjectIndex(ProjectIndex.build(filePaths));
+			} catch (IOException ex) {
+				Logger.error(ex);
+			}
+		}
+
 		// 2. For each analysis type, do the analysis and output results
 		for (Analysis analysis: analysisTypes) {
 			
@@ -171,22 +230,77 @@ public class Execution {
 					}
 					break;
 				//
+				case "PATHS":
+					Logger.info("===== AST Path-Context Extraction ======");
+					Logger.debug("START: " + Logger.time() + '\n');
+					try (FileWriter writer = new FileWriter(outputDir + "path-contexts.txt")) {
+						new PathContextExtractor().extract(filePaths, writer);
+						Logger.info("Path-contexts exported to: " + outputDir + "path-contexts.txt");
+					} catch (IOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
+				case "PRE_ORDER":
+				case "SBT":
+					Logger.info("===== AST Sequence Extraction ======");
+					Logger.debug("START: " + Logger.time() + '\n');
+					String seqPath = outputDir + "ast-" + analysis.type.toLowerCase().replace('_', '-') + ".txt";
+					try (FileWriter writer = new FileWriter(seqPath)) {
+						ASTSequencer sequencer = new ASTSequencer(writer, analysis == Analysis.SBT ? 
+								ASTSequencer.Format.SBT : ASTSequencer.Format.PRE_ORDER);
+						sequencer.write(filePaths);
+						Logger.info("AST sequences exported to: " + seqPath);
+					} catch (IOException | UncheckedIOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
+				case "QUERY":
+					Logger.info("===== AST Pattern Search ======");
+					Logger.debug("START: " + Logger.time() + '\n');
+					try (FileWriter writer = new FileWriter(outputDir + "query-results.txt")) {
+						for (Map.Entry<String, List<ASNode>> matches: query.search(filePaths).entrySet())
+							for (ASNode node: matches.getValue())
+								writer.write(matches.getKey() + ":" + node.getLineOfCode() + ": " + node + '\n');
+						Logger.info("Query results exported to: " + outputDir + "query-results.txt");
+					} catch (IOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
+				case "METRICS":
+					Logger.info("===== Code Metrics Analysis ======");
+					Logger.debug("START: " + Logger.time() + '\n');
+					String metricsPath = outputDir + (format == Formats.JSON ? "metrics.ndjson" : "metrics.csv");
+					try (FileWriter writer = new FileWriter(metricsPath)) {
+						new MetricsExtractor(format == Formats.JSON).extract(filePaths, writer);
+						Logger.info("Code metrics exported to: " + metricsPath);
+					} catch (IOException | UncheckedIOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
 				case "CFG":
 					Logger.info("===== Control-Flow Analysis ======");
 					Logger.debug("START: " + Logger.time() + '\n');
 
 					for (String srcFile : filePaths) {
 						try {
-							List<ControlFlowGraph> cfgs = CFGBuilder.build(srcFile);
-							for (ControlFlowGraph cfg: cfgs) {
-								String outputPath = srcFile.substring(0, srcFile.indexOf('.')) + "-CFG-" + cfg.getName().hashCode() + "." + format.toString().toLowerCase();
-								cfg.export(format.toString(), outputPath);
-								if (format == Formats.DOT) {
-									String pngPath = srcFile.substring(0, srcFile.indexOf('.'))  + "-CFG-" + cfg.getName().hashCode() + ".png";
-									Runtime.getRuntime().exec("dot -Tpng -o \"" + pngPath + "\" \"" + outputPath + "\"");
+							// each CFG is exported as soon as it is built
+							CFGBuilder.build(srcFile, cfg -> {
+								try {
+									String outputPath = srcFile.substring(0, srcFile.indexOf('.')) + "-CFG-" + cfg.getName().hashCode() + "." + format.toString().toLowerCase();
+									cfg.export(format.toString(), outputPath);
+									if (format == Formats.DOT) {
+										String pngPath = srcFile.substring(0, srcFile.indexOf('.'))  + "-CFG-" + cfg.getName().hashCode() + ".png";
+										Runtime.getRuntime().exec("dot -Tpng -o \"" + pngPath + "\" \"" + outputPath + "\"");
+									}
+								} catch (IOException ex) {
+									throw new UncheckedIOException(ex);
 								}
-							}
-						} catch (IOException ex) {
+							});
+						} catch (IOException | UncheckedIOException ex) {
 							Logger.error(ex);
 						}
 					}
@@ -219,6 +333,30 @@ public class Execution {
 
 					break;
 				//
+				case "SDG":
+					Logger.info("===== System-Dependence Analysis =====");
+					Logger.debug("START: " + Logger.time() + '\n');
+					try {
+						// all source files are analyzed together, into a single SDG
+						SystemDependenceGraph sdg = SDGBuilder.build(filePaths);
+						String sdgPath = outputDir + "SDG." + format.toString().toLowerCase();
+						sdg.export(format.toString(), sdgPath);
+						Logger.info("SDG exported to: " + sdgPath);
+					} catch (IOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
+				case "SUMMARIES":
+					Logger.info("===== Library Side-Effect Summaries =====");
+					try {
+						// all source files are analyzed together, as library sources
+						SideEffectSummaries.build(filePaths, outputDir + "summaries.bin");
+					} catch (IOException ex) {
+						Logger.error(ex);
+					}
+					break;
+				//
 				case "INFO":
 					Logger.info("Code Information Analysis");
 					Logger.info("=========================");
@@ -1,6 +1,7 @@
 /*** In The Name of Allah ***/
 package srctoolkit.janalysis;
 
+import srctoolkit.janalysis.ast.ASTPattern;
 import srctoolkit.janalysis.utils.Logger;
 
 import java.io.File;
@@ -38,6 +39,61 @@ public class Main {
 						case "pdg":
 							exec.addAnalysisOption(Execution.Analysis.PDG);
 							break;
+						//
+						case "sdg":
+							exec.addAnalysisOption(Execution.Analysis.SDG);
+							break;
+						//
+						case "mksummaries":
+							exec.addAnalysisOption(Execution.Analysis.SUMMARIES);
+							break;
+						//
+						case "summaries":
+							if (i < args.length - 1) {
+								++i;
+								exec.setSummariesPath(args[i]);
+							} else {
+								printHelp("Summaries file not specified!");
+								System.exit(1);
+							}
+							break;
+						//
+						case "index":
+							exec.setProjectIndex(true);
+							break;
+						//
+						case "metrics":
+							exec.addAnalysisOption(Execution.Analysis.METRICS);
+							break;
+						//
+						case "paths":
+							exec.addAnalysisOption(Execution.Analysis.PATHS);
+							break;
+						//
+						case "preorder":
+							exec.addAnalysisOption(Execution.Analysis.PRE_ORDER);
+							break;
+						//
+						case "sbt":
+							exec.addAnalysisOption(Execution.Analysis.SBT);
+							break;
+						//
+						case "query":
+							if (i < args.length - 1) {
+								++i;
+								try {
+									exec.setQuery(ASTPattern.compile(args[i]));
+								} catch (IllegalArgumentException ex) {
+									printHelp(ex.getMessage());
+									System.exit(1);
+								}
+								exec.addAnalysisOption(Execution.Analysis.QUERY);
+							} else {
+								printHelp("Query pattern not specified!");
+								System.exit(1);
+							}
+							break;
+						//
 						case "info":
 							exec.addAnalysisOption(Execution.Analysis.SRC_INFO);
 							break;
@@ -131,15 +187,25 @@ public class Main {
 				"   -help      Print this help message",
 				"   -outdir    Specify path of output directory",
 				"   -format    Specify output format; either 'DOT', or 'JSON'",
+				"   -summaries Use the given side-effect summaries file for library method calls",
 				"   -ast       Perform AST (Abstract Syntax Tree) analysis",
 				"   -cfg       Perfomt CFG (Control Flow Graph) analysis",
+				"   -index     Index all given files first, to resolve calls between files in per-file analyses",
 				"   -info      Analyze and extract detailed information about program source code",
-				"   -pdg       Perform PDG (Program Dependence Graph) analysis\n",
+				"   -metrics   Compute code metrics (cyclomatic, essential, nesting, ...) for all methods",
+				"   -mksummaries  Build side-effect summaries of all given methods, for use as a library",
+				"   -paths     Extract AST path-contexts (code2vec style) for all methods",
+				"   -pdg       Perform PDG (Program Dependence Graph) analysis",
+				"   -preorder  Extract pre-order AST token sequences for all methods",
+				"   -query     Search for the given structural AST pattern (e.g. 'TRY[!FINALLY]')",
+				"   -sbt       Extract structure-based traversal (SBT) AST sequences for all methods",
+				"   -sdg       Perform SDG (System Dependence Graph) analysis over all given files\n",
 				"   -debug     Enable more detailed logs (only for debugging)",
 				"   -timetags  Enable time-tags and labels for logs (only for debugging)\n",
 				"DEFAULTS:\n",
 				"   - If not specified, the default output directory is the current working directory.",
 				"   - If not specified, the default output format is DOT.",
+				"   - Code metrics are written as CSV, or as NDJSON if the output format is JSON.",
 				"   - There is no default value for analysis type.",
 				"   - There is no default value for input directory path.\n",
 				"NOTES:\n",
@@ -72,9 +72,16 @@ public class ASNode {
 
     
     private Map<String, Object> properties;
+    private long hash;
+    private long normalizedHash;
+    // line shifts of the tree, and how many of them are applied to this node
+    private AbstractSyntaxTree.Shifts shifts;
+    private int shiftsApplied;
 
     public ASNode(Type type) {
         properties = new LinkedHashMap<>();
+        hash = 0L;
+        normalizedHash = 0L;
         setLineOfCode(0);
         setType(type);
     }
@@ -89,10 +96,30 @@ public class ASNode {
 
     public final void setLineOfCode(int line) {
         properties.put("line", line);
+        if (shifts != null)
+            shiftsApplied = shifts.size();
     }
 
     public final int getLineOfCode() {
-        return (Integer) properties.get("line");
+        int line = (Integer) properties.get("line");
+        if (shifts != null && shiftsApplied < shifts.size()) {
+            line = shifts.shiftLine(line, shiftsApplied);
+            properties.put("line", line);
+            shiftsApplied = shifts.size();
+        }
+        return line;
+    }
+    
+    /**
+     * Attach this node to the line shifts of its tree (or detach it, if null);
+     * the pending shifts of its previous tree (if any) are applied first.
+     */
+    final void setShifts(AbstractSyntaxTree.Shifts shifts) {
+        if (this.shifts == shifts)
+            return;
+        getLineOfCode();
+        this.shifts = shifts;
+        shiftsApplied = shifts == null ? 0 : shifts.size();
     }
 
     public final void setCode(String code) {
@@ -115,11 +142,34 @@ public class ASNode {
         return (String) properties.get("code");
     }
     
+    /**
+     * Merkle hash of the subtree rooted at this node, based on the exact code.
+     * This value is computed by the AST builder; it is zero before that.
+     */
+    public final long getHash() {
+        return hash;
+    }
+
+    /**
+     * Merkle hash of the subtree rooted at this node, based on the normalized code.
+     * This value is computed by the AST builder; it is zero before that.
+     */
+    public final long getNormalizedHash() {
+        return normalizedHash;
+    }
+
+    final void setHashes(long hash, long normalizedHash) {
+        this.hash = hash;
+        this.normalizedHash = normalizedHash;
+    }
+    
     public final void setProperty(String key, Object value) {
         properties.put(key.toLowerCase(), value);
     }
 
     public Object getProperty(String key) {
+        if (key.equalsIgnoreCase("line"))
+            return getLineOfCode();
         return properties.get(key.toLowerCase());
     }
 
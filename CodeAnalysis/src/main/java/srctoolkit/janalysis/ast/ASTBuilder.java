@@ -6,9 +6,15 @@ import srctoolkit.janalysis.common.antlrparser.JavaLexer;
 import srctoolkit.janalysis.common.antlrparser.JavaParser;
 import srctoolkit.janalysis.utils.Logger;
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
@@ -16,8 +22,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,13 +40,24 @@ import java.util.Map;
  */
 public class ASTBuilder {
     public static AbstractSyntaxTree buildWithCode(String code) throws IOException {
+		return buildWithCode(code, null);
+	}
+	
+	/**
+	 * ‌Build and return the Abstract Syntax Tree (AST) for the given Java source code.
+	 * If a sequencer is given, the token sequence of each method is written to it
+	 * as soon as the method subtree is built.
+	 */
+    public static AbstractSyntaxTree buildWithCode(String code, ASTSequencer sequencer) throws IOException {
 		Logger.info("Parsing source code ... ");
 		ANTLRInputStream input = new ANTLRInputStream(code);
 		JavaLexer lexer = new JavaLexer(input);
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		JavaParser parser = new JavaParser(tokens);
 		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree, null, null);
+		AbstractSyntaxVisitor visitor = new AbstractSyntaxVisitor(null, null);
+		visitor.sequencer = sequencer;
+		return visitor.build(parseTree);
 	}
 	
 	
@@ -43,13 +65,24 @@ public class ASTBuilder {
 	 * ‌Build and return the Abstract Syntax Tree (AST) for the given Java source file.
 	 */
 	public static AbstractSyntaxTree build(String file) throws IOException {
+		return build(file, null);
+	}
+	
+	/**
+	 * ‌Build and return the Abstract Syntax Tree (AST) for the given Java source file.
+	 * If a sequencer is given, the token sequence of each method is written to it
+	 * as soon as the method subtree is built.
+	 */
+	public static AbstractSyntaxTree build(String file, ASTSequencer sequencer) throws IOException {
 		InputStream inFile = new FileInputStream(file);
 		ANTLRInputStream input = new ANTLRInputStream(inFile);
 		JavaLexer lexer = new JavaLexer(input);
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		JavaParser parser = new JavaParser(tokens);
 		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree, null, null);
+		AbstractSyntaxVisitor visitor = new AbstractSyntaxVisitor(null, null);
+		visitor.sequencer = sequencer;
+		return visitor.build(parseTree);
 	}
 	
 	/**
@@ -64,6 +97,163 @@ public class ASTBuilder {
         return visitor.build(tree);
 	}
 	
+	/**
+	 * Incrementally rebuild the given Abstract Syntax Tree (AST) after the given edits.
+	 * The edit offsets refer to the previous source code of the tree, and 'code' is the new source code.
+	 * Only the smallest class member (method, constructor, field or initializer) enclosing
+	 * all edits is re-parsed, and its new subtree is spliced into the given tree in place.
+	 * The work is proportional to the size of the member; the normalization scope at the start
+	 * of the member is kept with it, and positions after it are shifted lazily.
+	 * If the edits are not enclosed by a single member, the member cannot be parsed on its own, 
+	 * the member declarations (names visible to the rest of the file) have changed,
+	 * or the number of lines changes and other code follows the member on its last line,
+	 * the whole file is rebuilt, and a new tree is returned instead.
+	 */
+	public static AbstractSyntaxTree rebuild(AbstractSyntaxTree ast, String code, List<SourceEdit> edits) 
+            throws IOException {
+        if (edits.isEmpty())
+            return ast;
+        List<SourceEdit> sorted = new ArrayList<>(edits);
+        sorted.sort(Comparator.comparingInt(edit -> edit.OFFSET));
+        int first = sorted.get(0).OFFSET;
+        int last = first, delta = 0;
+        for (SourceEdit edit: sorted) {
+            last = Math.max(last, edit.OFFSET + edit.OLD_LENGTH);
+            delta += edit.NEW_LENGTH - edit.OLD_LENGTH;
+        }
+        // find the smallest member enclosing all edits; members are in document order,
+        // so it is the last member which starts before the first edit and encloses all edits
+        int index = -1;
+        for (int lo = 0, hi = ast.members.size() - 1; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (ast.members.get(mid).getStart() <= first) {
+                index = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        while (index >= 0 && last > ast.members.get(index).getStop() + 1)
+            --index;
+        if (index < 0) {
+            Logger.debug("Edits are not enclosed by any member; rebuilding the whole file");
+            return buildWithCode(code);
+        }
+        AbstractSyntaxTree.Member member = ast.members.get(index);
+        int start = member.getStart();
+        int stop = member.getStop() + delta;
+        if (stop < start || stop >= code.length())
+            return buildWithCode(code);
+        //
+        JavaParser.ClassBodyDeclarationContext memberCtx;
+        try {
+            ANTLRInputStream input = new ANTLRInputStream(code.substring(start, stop + 1));
+            JavaLexer lexer = new JavaLexer(input);
+            lexer.setLine(member.getStartLine());
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(new BaseErrorListener() {
+                @Override
+                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, 
+                        int line, int charPositionInLine, String msg, RecognitionException e) {
+                    throw new ParseCancellationException(msg);
+                }
+            });
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            JavaParser parser = new JavaParser(tokens);
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            memberCtx = parser.classBodyDeclaration();
+            if (tokens.LA(1) != Token.EOF)
+                throw new ParseCancellationException("Trailing tokens after member");
+        } catch (ParseCancellationException ex) {
+            Logger.debug("Cannot re-parse edited member; rebuilding the whole file");
+            return buildWithCode(code);
+        }
+        //
+        ASNode parent = ast.incomingEdgesIterator(member.node).next().source;
+        ASNode holder = new ASNode(ASNode.Type.CLASS);
+        AbstractSyntaxVisitor visitor = new AbstractSyntaxVisitor(null, null, start);
+        visitor.restore(ast, member.scope);
+        visitor.AST.addVertex(holder);
+        visitor.parentStack.push(holder);
+        visitor.visit(memberCtx);
+        AbstractSyntaxTree piece = visitor.AST;
+        if (piece.getOutDegree(holder) != 1 || piece.members.isEmpty() 
+                || !sameDeclarations(piece.members.get(0).declarations, member.declarations)) {
+            Logger.debug("Declarations of edited member have changed; rebuilding the whole file");
+            return buildWithCode(code);
+        }
+        // nodes after the member are shifted by comparing their lines with the last line
+        // of the member; so no other code may start on that line, after the member.
+        // the line delta counts the new lines of the re-parsed text, since an insertion 
+        // right after the member (e.g. a new line) is not part of its last token
+        int lineDelta = member.getStartLine() + countLines(code, start, stop + 1) - member.getStopLine();
+        if (lineDelta != 0 && !endsLine(code, stop + 1)) {
+            Logger.debug("Code after the end of edited member; rebuilding the whole file");
+            return buildWithCode(code);
+        }
+        ast.spliceMember(index, parent, piece, holder, delta, lineDelta);
+        return ast;
+    }
+    
+    /**
+     * Returns the number of line breaks in the given range of the code.
+     */
+    private static int countLines(String code, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; ++i) {
+            char ch = code.charAt(i);
+            if (ch == '\n' || (ch == '\r' && (i + 1 == to || code.charAt(i + 1) != '\n')))
+                ++lines;
+        }
+        return lines;
+    }
+    
+    /**
+     * Check whether only closing tokens, white-space or a line comment follow 
+     * the given offset of the code, up to the end of its line.
+     */
+    private static boolean endsLine(String code, int offset) {
+        for (int i = offset; i < code.length(); ++i) {
+            char ch = code.charAt(i);
+            if (ch == '\n' || ch == '\r')
+                return true;
+            if (ch == '/' && code.startsWith("//", i))
+                return true;
+            if (!Character.isWhitespace(ch) && ch != '}' && ch != ')' && ch != ';' && ch != ',')
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the declarations of a member which are visible to the members after it;
+     * local variables declared before the last reset of local variables are dropped.
+     */
+    private static List<String[]> visibleDeclarations(List<String[]> log) {
+        int lastReset = -1;
+        for (int i = 0; i < log.size(); ++i)
+            if (log.get(i)[0].equals("RESET"))
+                lastReset = i;
+        List<String[]> visible = new ArrayList<>();
+        for (int i = 0; i < log.size(); ++i) {
+            String kind = log.get(i)[0];
+            if (i < lastReset && (kind.equals("VAR") || kind.equals("RESET")))
+                continue;
+            visible.add(log.get(i));
+        }
+        return visible;
+    }
+    
+    private static boolean sameDeclarations(List<String[]> log1, List<String[]> log2) {
+        if (log1.size() != log2.size())
+            return false;
+        for (int i = 0; i < log1.size(); ++i)
+            if (!Arrays.equals(log1.get(i), log2.get(i)))
+                return false;
+        return true;
+    }
+	
 	/**
 	 * Visitor class which constructs the AST for a given ParseTree.
 	 */
@@ -77,16 +267,31 @@ public class ASTBuilder {
         private Map<String, String> vars, fields, methods;
 		private int varsCounter, fieldsCounter, methodsCounter;
 		private Map<ParserRuleContext, Object> contexutalProperties;
+        private final int offset;
+        private ASTSequencer sequencer;
+        // declarations log, for the visible declarations of members
+        private final List<String[]> log;
+        // copy of the local variables; shared by member scopes until the variables change
+        private Map<String, String> varsSnapshot;
+        // the tree and scope of an edited member, when re-building only that member
+        private AbstractSyntaxTree outer;
+        private AbstractSyntaxTree.Scope outerScope;
 		
 		public AbstractSyntaxVisitor(String propKey, Map<ParserRuleContext, Object> ctxProps) {
+            this(propKey, ctxProps, 0);
+        }
+		
+		public AbstractSyntaxVisitor(String propKey, Map<ParserRuleContext, Object> ctxProps, int offset) {
             parentStack = new ArrayDeque<>();
             AST = new AbstractSyntaxTree();
+            this.offset = offset;
 			this.propKey = propKey;
 			contexutalProperties = ctxProps;
             vars = new LinkedHashMap<>();
             fields = new LinkedHashMap<>();
             methods = new LinkedHashMap<>();
             varsCounter = 0; fieldsCounter = 0; methodsCounter = 0;
+            log = new ArrayList<>();
 		}
         
         public AbstractSyntaxTree build(ParseTree tree) {
@@ -115,6 +320,7 @@ public class ASTBuilder {
             vars.clear();
             fields.clear();
             methods.clear();
+            AST.updateHashes();
             return AST;
         }
 
@@ -244,6 +450,13 @@ public class ASTBuilder {
             //    |   classDeclaration
             //    |   enumDeclaration
             //
+            ASNode memberNode = null;
+            int memberIndex = AST.members.size();
+            int logStart = log.size();
+            boolean isMember = parentStack.peek().getType() == ASNode.Type.CLASS;
+            AbstractSyntaxTree.Scope scope = isMember ? scope() : null;
+            if (isMember)
+                AST.members.add(null);  // placeholder for keeping members in document order
             if (ctx.block() != null) {
                 ASNode staticBlock = new ASNode(ASNode.Type.STATIC_BLOCK);
                 staticBlock.setLineOfCode(ctx.block().getStart().getLine());
@@ -253,6 +466,7 @@ public class ASTBuilder {
                 parentStack.push(staticBlock);
                 visitChildren(ctx.block());
                 parentStack.pop();
+                memberNode = staticBlock;
             } else if (ctx.memberDeclaration() != null) {
                 // Modifier
                 memberModifier = "";
@@ -269,6 +483,7 @@ public class ASTBuilder {
                     parentStack.push(fieldNode);
                     visit(ctx.memberDeclaration().fieldDeclaration());
                     parentStack.pop();
+                    memberNode = fieldNode;
                 } else if (ctx.memberDeclaration().constructorDeclaration() != null) {
                     // Constructor member
                     ASNode constructorNode = new ASNode(ASNode.Type.CONSTRUCTOR);
@@ -279,6 +494,7 @@ public class ASTBuilder {
                     parentStack.push(constructorNode);
                     visit(ctx.memberDeclaration().constructorDeclaration());
                     parentStack.pop();
+                    memberNode = constructorNode;
                 } else if (ctx.memberDeclaration().methodDeclaration() != null) {
                     // Method member
                     ASNode methodNode = new ASNode(ASNode.Type.METHOD);
@@ -289,11 +505,24 @@ public class ASTBuilder {
                     parentStack.push(methodNode);
                     visit(ctx.memberDeclaration().methodDeclaration());
                     parentStack.pop();
+                    memberNode = methodNode;
                 } else if (ctx.memberDeclaration().classDeclaration() != null) {
                     // Inner-type member
                     visitChildren(ctx.memberDeclaration());
                 }
             }
+            if (sequencer != null && memberNode != null && (memberNode.getType() == ASNode.Type.METHOD 
+                    || memberNode.getType() == ASNode.Type.CONSTRUCTOR))
+                sequencer.write(AST, memberNode);
+            if (isMember) {
+                if (memberNode == null)
+                    AST.members.remove(memberIndex);
+                else
+                    AST.members.set(memberIndex, new AbstractSyntaxTree.Member(memberNode, scope, 
+                            visibleDeclarations(log.subList(logStart, log.size())),
+                            offset + ctx.getStart().getStartIndex(), offset + ctx.getStop().getStopIndex(),
+                            ctx.getStart().getLine(), ctx.getStop().getLine(), AST.shifts));
+            }
             return "";
         }
         
@@ -330,7 +559,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode name = new ASNode(ASNode.Type.NAME);
                     String normalized = "$VARL_" + varsCounter;
-                    vars.put(paramctx.variableDeclaratorId().Identifier().getText(), normalized);
+                    putVar(paramctx.variableDeclaratorId().Identifier().getText(), normalized);
                     name.setCode(paramctx.variableDeclaratorId().getText());
                     name.setNormalizedCode(normalized);
                     name.setLineOfCode(paramctx.variableDeclaratorId().getStart().getLine());
@@ -352,7 +581,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode name = new ASNode(ASNode.Type.NAME);
                     String normalized = "$VARL_" + varsCounter;
-                    vars.put(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().Identifier().getText(), normalized);
+                    putVar(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().Identifier().getText(), normalized);
                     name.setCode(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().getText());
                     name.setNormalizedCode(normalized);
                     name.setLineOfCode(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().getStart().getLine());
@@ -395,7 +624,7 @@ public class ASTBuilder {
                 ++fieldsCounter;
                 ASNode name = new ASNode(ASNode.Type.NAME);
                 String normalized = "$VARF_" + fieldsCounter;
-                fields.put(varctx.variableDeclaratorId().Identifier().getText(), normalized);
+                putField(varctx.variableDeclaratorId().Identifier().getText(), normalized);
                 name.setCode(varctx.variableDeclaratorId().getText());
                 name.setNormalizedCode(normalized);
                 name.setLineOfCode(varctx.variableDeclaratorId().getStart().getLine());
@@ -447,7 +676,7 @@ public class ASTBuilder {
             ASNode nameNode = new ASNode(ASNode.Type.NAME);
             String methodName = ctx.Identifier().getText();
             String normalized = "$METHOD_" + methodsCounter;
-            methods.put(methodName, normalized);
+            putMethod(methodName, normalized);
             nameNode.setCode(methodName);
             nameNode.setNormalizedCode(normalized);
             nameNode.setLineOfCode(ctx.getStart().getLine());
@@ -478,7 +707,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode name = new ASNode(ASNode.Type.NAME);
                     normalized = "$VARL_" + varsCounter;
-                    vars.put(paramctx.variableDeclaratorId().Identifier().getText(), normalized);
+                    putVar(paramctx.variableDeclaratorId().Identifier().getText(), normalized);
                     name.setCode(paramctx.variableDeclaratorId().getText());
                     name.setNormalizedCode(normalized);
                     name.setLineOfCode(paramctx.variableDeclaratorId().getStart().getLine());
@@ -500,7 +729,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode name = new ASNode(ASNode.Type.NAME);
                     normalized = "$VARL_" + varsCounter;
-                    vars.put(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().Identifier().getText(), normalized);
+                    putVar(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().Identifier().getText(), normalized);
                     name.setCode(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().getText());
                     name.setNormalizedCode(normalized);
                     name.setLineOfCode(ctx.formalParameters().formalParameterList().lastFormalParameter().variableDeclaratorId().getStart().getLine());
@@ -545,7 +774,7 @@ public class ASTBuilder {
                 ++varsCounter;
                 ASNode nameNode = new ASNode(ASNode.Type.NAME);
                 String normalized = "$VARL_" + varsCounter;
-                vars.put(varctx.variableDeclaratorId().Identifier().getText(), normalized);
+                putVar(varctx.variableDeclaratorId().Identifier().getText(), normalized);
                 nameNode.setCode(varctx.variableDeclaratorId().getText());
                 nameNode.setNormalizedCode(normalized);
                 nameNode.setLineOfCode(varctx.variableDeclaratorId().getStart().getLine());
@@ -722,7 +951,7 @@ public class ASTBuilder {
                 ++varsCounter;
                 ASNode varID = new ASNode(ASNode.Type.NAME);
                 String normalized = "$VARL_" + varsCounter;
-                vars.put(ctx.forControl().enhancedForControl().variableDeclaratorId().Identifier().getText(), normalized);
+                putVar(ctx.forControl().enhancedForControl().variableDeclaratorId().Identifier().getText(), normalized);
                 varID.setCode(ctx.forControl().enhancedForControl().variableDeclaratorId().getText());
                 varID.setNormalizedCode(normalized);
                 varID.setLineOfCode(ctx.forControl().enhancedForControl().variableDeclaratorId().getStart().getLine());
@@ -896,7 +1125,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode catchName = new ASNode(ASNode.Type.NAME);
                     String normalized = "$VARL_" + varsCounter;
-                    vars.put(catchx.Identifier().getText(), normalized);
+                    putVar(catchx.Identifier().getText(), normalized);
                     catchName.setCode(catchx.Identifier().getText());
                     catchName.setNormalizedCode(normalized);
                     catchName.setLineOfCode(catchx.getStart().getLine());
@@ -956,7 +1185,7 @@ public class ASTBuilder {
                 ++varsCounter;
                 ASNode resName = new ASNode(ASNode.Type.NAME);
                 String normalized = "$VARL_" + varsCounter;
-                vars.put(resctx.variableDeclaratorId().Identifier().getText(), normalized);
+                putVar(resctx.variableDeclaratorId().Identifier().getText(), normalized);
                 resName.setCode(resctx.variableDeclaratorId().getText());
                 resName.setNormalizedCode(normalized);
                 resName.setLineOfCode(resctx.variableDeclaratorId().getStart().getLine());
@@ -995,7 +1224,7 @@ public class ASTBuilder {
                     ++varsCounter;
                     ASNode catchName = new ASNode(ASNode.Type.NAME);
                     String normalized = "$VARL_" + varsCounter;
-                    vars.put(catchx.Identifier().getText(), normalized);
+                    putVar(catchx.Identifier().getText(), normalized);
                     catchName.setCode(catchx.Identifier().getText());
                     catchName.setNormalizedCode(normalized);
                     catchName.setLineOfCode(catchx.catchType().getStart().getLine());
@@ -1416,14 +1645,61 @@ public class ASTBuilder {
         private void resetLocalVars() {
             vars.clear();
             varsCounter = 0;
+            varsSnapshot = null;
+            log.add(new String[] {"RESET"});
+        }
+        
+        private void putVar(String name, String normalized) {
+            vars.put(name, normalized);
+            varsSnapshot = null;
+            log.add(new String[] {"VAR", name, normalized});
+        }
+        
+        private void putField(String name, String normalized) {
+            fields.put(name, normalized);
+            AST.addFieldName(name, fieldsCounter, normalized);
+            log.add(new String[] {"FIELD", name, normalized});
+        }
+        
+        private void putMethod(String name, String normalized) {
+            methods.put(name, normalized);
+            AST.addMethodName(name, methodsCounter, normalized);
+            log.add(new String[] {"METHOD", name, normalized});
+        }
+        
+        /**
+         * Returns the current normalization scope, for the member starting here.
+         */
+        private AbstractSyntaxTree.Scope scope() {
+            if (varsSnapshot == null)
+                varsSnapshot = vars.isEmpty() ? Collections.emptyMap() : new LinkedHashMap<>(vars);
+            return new AbstractSyntaxTree.Scope(typeModifier, varsSnapshot, varsCounter, fieldsCounter, methodsCounter);
+        }
+        
+        /**
+         * Restore the normalization state of this visitor at the start of a member of
+         * the given tree; fields and methods declared before the member are looked up in the tree.
+         */
+        private void restore(AbstractSyntaxTree ast, AbstractSyntaxTree.Scope scope) {
+            typeModifier = scope.typeModifier;
+            vars.putAll(scope.vars);
+            varsCounter = scope.varsCounter;
+            fieldsCounter = scope.fieldsCounter;
+            methodsCounter = scope.methodsCounter;
+            outer = ast;
+            outerScope = scope;
         }
 
         private String normalizedIdentifier(TerminalNode id) {
             String normalized = vars.get(id.getText());
             if (normalized == null || normalized.isEmpty())
                 normalized = fields.get(id.getText());
+            if ((normalized == null || normalized.isEmpty()) && outer != null)
+                normalized = outer.getFieldName(id.getText(), outerScope.fieldsCounter);
             if (normalized == null || normalized.isEmpty())
                 normalized = methods.get(id.getText());
+            if ((normalized == null || normalized.isEmpty()) && outer != null)
+                normalized = outer.getMethodName(id.getText(), outerScope.methodsCounter);
             if (normalized == null || normalized.isEmpty())
                 normalized = id.getText();
             return normalized;
@@ -0,0 +1,362 @@
+package srctoolkit.janalysis.ast;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.utils.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Compiled structural pattern over Abstract Syntax Trees.
+ * Patterns are path expressions over node types, similar to XPath:
+ *
+ *   pattern   :=  step (('/' | '//') step)*
+ *   step      :=  (TYPE | '*') ('[' predicate ']')*
+ *   predicate :=  '!' predicate
+ *              |  ('code' | 'normalized') ('=' | '~') "string"
+ *              |  ('/' | '//')? step (('/' | '//') step)*
+ *
+ * where TYPE is the name of an <tt>ASNode.Type</tt> (case-insensitive),
+ * '/' is the child axis and '//' is the descendant axis.
+ * A code predicate either matches the exact text ('='), or searches for a
+ * regular-expression ('~'). A path predicate holds if the relative path
+ * (by default on the child axis) matches at least one node.
+ * The nodes matched by the last step are the results of the pattern; e.g.
+ *
+ *   TRY[!FINALLY][//STATEMENT[code ~ "new\\s+File(Input|Output)Stream"]]
+ *
+ * matches all try statements without a finally block, which open a file stream.
+ * The first pattern step can match anywhere in the tree. Candidate nodes are
+ * taken from the type index of the tree for the last step (if it is not '*'),
+ * and the preceding steps are verified upwards along the ancestors.
+ */
+public class ASTPattern {
+
+	private final String pattern;
+	private final List<Step> steps;
+
+	private ASTPattern(String pattern, List<Step> steps) {
+		this.pattern = pattern;
+		this.steps = steps;
+	}
+
+	/**
+	 * Compile the given pattern text.
+	 *
+	 * @throws IllegalArgumentException if the pattern is not valid.
+	 */
+	public static ASTPattern compile(String pattern) {
+		Parser parser = new Parser(pattern);
+		List<Step> steps = parser.path(false);
+		if (!parser.atEnd())
+			throw parser.error("Unexpected input");
+		return new ASTPattern(pattern, steps);
+	}
+
+	/**
+	 * Returns all nodes of the given AST matched by this pattern.
+	 */
+	public List<ASNode> match(AbstractSyntaxTree ast) {
+		Step last = steps.get(steps.size() - 1);
+		Collection<ASNode> candidates;
+		if (last.type == null) {
+			candidates = new ArrayList<>();
+			ast.allVerticesIterator().forEachRemaining(candidates::add);
+		} else
+			candidates = ast.getNodesOfType(last.type);
+		List<ASNode> matches = new ArrayList<>();
+		for (ASNode node: candidates)
+			if (matchesUpwards(ast, node, steps.size() - 1))
+				matches.add(node);
+		return matches;
+	}
+
+	/**
+	 * Check whether the given node of the given AST is matched by this pattern.
+	 */
+	public boolean matches(AbstractSyntaxTree ast, ASNode node) {
+		return matchesUpwards(ast, node, steps.size() - 1);
+	}
+
+	/**
+	 * Search for this pattern in all the given Java source files.
+	 * Files are parsed and searched in parallel; the returned map
+	 * follows the order of given files, and only includes files with matches.
+	 */
+	public Map<String, List<ASNode>> search(String[] files) {
+		List<List<ASNode>> matches = Arrays.stream(files).parallel().map(file -> {
+			try {
+				return match(ASTBuilder.build(file));
+			} catch (IOException ex) {
+				Logger.error(ex);
+				return Collections.<ASNode>emptyList();
+			}
+		}).collect(Collectors.toList());
+		Map<String, List<ASNode>> results = new LinkedHashMap<>();
+		for (int i = 0; i < files.length; ++i)
+			if (!matches.get(i).isEmpty())
+				results.put(files[i], matches.get(i));
+		return results;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	private boolean matchesUpwards(AbstractSyntaxTree ast, ASNode node, int index) {
+		Step step = steps.get(index);
+		if (!step.test(ast, node))
+			return false;
+		if (index == 0)
+			return true;
+		if (!step.descendant) {
+			Iterator<Edge<ASNode, ASEdge>> ins = ast.incomingEdgesIterator(node);
+			while (ins.hasNext())
+				if (matchesUpwards(ast, ins.next().source, index - 1))
+					return true;
+			return false;
+		}
+		// descendant axis; try all ancestors
+		Map<ASNode, Boolean> visited = new IdentityHashMap<>();
+		Deque<ASNode> stack = new ArrayDeque<>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			Iterator<Edge<ASNode, ASEdge>> ins = ast.incomingEdgesIterator(stack.pop());
+			while (ins.hasNext()) {
+				ASNode parent = ins.next().source;
+				if (visited.put(parent, Boolean.TRUE) != null)
+					continue;
+				if (matchesUpwards(ast, parent, index - 1))
+					return true;
+				stack.push(parent);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether the relative path starting at the given index matches any node below the given node.
+	 */
+	private static boolean existsDownwards(AbstractSyntaxTree ast, ASNode node, List<Step> path, int index) {
+		Step step = path.get(index);
+		Map<ASNode, Boolean> visited = new IdentityHashMap<>();
+		Deque<ASNode> stack = new ArrayDeque<>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(stack.pop());
+			while (outs.hasNext()) {
+				ASNode child = outs.next().target;
+				if (visited.put(child, Boolean.TRUE) != null)
+					continue;
+				if (step.test(ast, child)
+						&& (index == path.size() - 1 || existsDownwards(ast, child, path, index + 1)))
+					return true;
+				if (step.descendant)
+					stack.push(child);
+			}
+		}
+		return false;
+	}
+
+	//=====================================================================//
+	//                         COMPILED PATTERN                            //
+	//=====================================================================//
+
+	/**
+	 * Functional interface of compiled step predicates.
+	 */
+	private interface Predicate {
+		boolean test(AbstractSyntaxTree ast, ASNode node);
+	}
+
+	/**
+	 * A single path step; the axis is the relation of this step to the previous one.
+	 */
+	private static class Step {
+		final boolean descendant;
+		final ASNode.Type type;
+		final List<Predicate> predicates;
+
+		Step(boolean descendant, ASNode.Type type) {
+			this.descendant = descendant;
+			this.type = type;
+			this.predicates = new ArrayList<>();
+		}
+
+		boolean test(AbstractSyntaxTree ast, ASNode node) {
+			if (type != null && node.getType() != type)
+				return false;
+			for (Predicate predicate: predicates)
+				if (!predicate.test(ast, node))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * A simple recursive-descent parser for the pattern language.
+	 */
+	private static class Parser {
+		private final String text;
+		private int pos;
+
+		Parser(String text) {
+			this.text = text;
+			this.pos = 0;
+		}
+
+		boolean atEnd() {
+			skipSpaces();
+			return pos == text.length();
+		}
+
+		IllegalArgumentException error(String msg) {
+			return new IllegalArgumentException(msg + " at position " + pos + " of pattern: " + text);
+		}
+
+		List<Step> path(boolean relative) {
+			List<Step> path = new ArrayList<>();
+			boolean descendant = relative ? axis(false) : false;
+			if (!relative && lookingAt("/"))
+				throw error("Pattern must start with a step");
+			while (true) {
+				path.add(step(descendant));
+				skipSpaces();
+				if (!lookingAt("/"))
+					return path;
+				descendant = axis(false);
+			}
+		}
+
+		/**
+		 * Parse an optional axis; returns true for the descendant axis.
+		 */
+		boolean axis(boolean descendant) {
+			skipSpaces();
+			if (lookingAt("//")) {
+				pos += 2;
+				return true;
+			}
+			if (lookingAt("/")) {
+				pos += 1;
+				return false;
+			}
+			return descendant;
+		}
+
+		Step step(boolean descendant) {
+			skipSpaces();
+			ASNode.Type type = null;
+			if (lookingAt("*"))
+				++pos;
+			else {
+				String name = identifier();
+				try {
+					type = ASNode.Type.valueOf(name.toUpperCase());
+				} catch (IllegalArgumentException ex) {
+					throw error("Unknown node type '" + name + "'");
+				}
+			}
+			Step step = new Step(descendant, type);
+			skipSpaces();
+			while (lookingAt("[")) {
+				++pos;
+				step.predicates.add(predicate());
+				skipSpaces();
+				if (!lookingAt("]"))
+					throw error("Expected ']'");
+				++pos;
+				skipSpaces();
+			}
+			return step;
+		}
+
+		Predicate predicate() {
+			skipSpaces();
+			if (lookingAt("!")) {
+				++pos;
+				Predicate negated = predicate();
+				return (ast, node) -> !negated.test(ast, node);
+			}
+			int start = pos;
+			if (!lookingAt("/") && !lookingAt("*")) {
+				String name = identifier().toLowerCase();
+				skipSpaces();
+				if ((name.equals("code") || name.equals("normalized")) && (lookingAt("=") || lookingAt("~")))
+					return codePredicate(name.equals("normalized"));
+				pos = start;
+			}
+			List<Step> path = path(true);
+			return (ast, node) -> existsDownwards(ast, node, path, 0);
+		}
+
+		Predicate codePredicate(boolean normalized) {
+			boolean regex = text.charAt(pos++) == '~';
+			String value = string();
+			if (regex) {
+				Pattern compiled;
+				try {
+					compiled = Pattern.compile(value);
+				} catch (PatternSyntaxException ex) {
+					throw error("Invalid regular-expression '" + value + "'");
+				}
+				return (ast, node) -> {
+					String code = normalized ? node.getNormalizedCode() : node.getCode();
+					return code != null && compiled.matcher(code).find();
+				};
+			}
+			return (ast, node) -> value.equals(normalized ? node.getNormalizedCode() : node.getCode());
+		}
+
+		String identifier() {
+			skipSpaces();
+			int start = pos;
+			while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_'))
+				++pos;
+			if (start == pos)
+				throw error("Expected a node type or predicate");
+			return text.substring(start, pos);
+		}
+
+		String string() {
+			skipSpaces();
+			if (!lookingAt("\""))
+				throw error("Expected a quoted string");
+			StringBuilder value = new StringBuilder();
+			++pos;
+			while (pos < text.length() && text.charAt(pos) != '"') {
+				char c = text.charAt(pos++);
+				if (c == '\\' && pos < text.length() && (text.charAt(pos) == '"' || text.charAt(pos) == '\\'))
+					c = text.charAt(pos++);
+				value.append(c);
+			}
+			if (pos == text.length())
+				throw error("Unterminated string");
+			++pos;
+			return value.toString();
+		}
+
+		boolean lookingAt(String token) {
+			return text.startsWith(token, pos);
+		}
+
+		void skipSpaces() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+				++pos;
+		}
+	}
+}
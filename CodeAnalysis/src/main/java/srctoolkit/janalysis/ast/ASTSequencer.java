@@ -0,0 +1,230 @@
+package srctoolkit.janalysis.ast;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Linearizes method subtrees of Abstract Syntax Trees into token sequences,
+ * either in pre-order or as a structure-based traversal (SBT), and streams
+ * them to a writer; one line per method:
+ *
+ *   method-name  line  token token token ...
+ *
+ * When the sequences of whole source files are written (see 'write(String[])'),
+ * each line is prefixed with the path of its source file:
+ *
+ *   file-path  method-name  line  token token token ...
+ *
+ * A sequencer can be given to <tt>ASTBuilder</tt>, so each method is written
+ * as soon as its subtree is built. If a vocabulary is given, tokens are
+ * written as vocabulary IDs instead; unknown tokens are mapped to the ID of
+ * UNKNOWN_TOKEN (or -1, if the vocabulary does not include it).
+ */
+public class ASTSequencer {
+
+	public static final String UNKNOWN_TOKEN = "<unk>";
+
+	/**
+	 * Enumeration of supported linearization formats.
+	 */
+	public enum Format {
+		PRE_ORDER, SBT
+	}
+
+	private final Writer out;
+	private final Format format;
+	private final boolean normalized;
+	private final Map<String, Integer> vocabulary;
+	private final int unknownId;
+	private final String source;
+
+	public ASTSequencer(Writer out, Format format) {
+		this(out, format, false, null);
+	}
+
+	/**
+	 * Construct a new sequencer which writes to the given writer.
+	 * If 'normalized' is true, normalized code is used for node tokens.
+	 * The vocabulary can be null, in which case tokens are written as is.
+	 */
+	public ASTSequencer(Writer out, Format format, boolean normalized, Map<String, Integer> vocabulary) {
+		this(out, format, normalized, vocabulary, null);
+	}
+
+	/**
+	 * Construct a sequencer which prefixes each line with the given source file path (if not null).
+	 */
+	private ASTSequencer(Writer out, Format format, boolean normalized, Map<String, Integer> vocabulary, String source) {
+		this.source = source;
+		this.out = out;
+		this.format = format;
+		this.normalized = normalized;
+		this.vocabulary = vocabulary;
+		this.unknownId = vocabulary == null ? -1 : vocabulary.getOrDefault(UNKNOWN_TOKEN, -1);
+	}
+
+	/**
+	 * Load a vocabulary file with one token per line; the ID of each token is its line index.
+	 */
+	public static Map<String, Integer> loadVocabulary(String path) throws IOException {
+		Map<String, Integer> vocabulary = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+			String token;
+			while ((token = reader.readLine()) != null)
+				vocabulary.putIfAbsent(token.trim(), vocabulary.size());
+		}
+		return vocabulary;
+	}
+
+	/**
+	 * Write the sequences of all methods (and constructors) of the given Java source files;
+	 * each line is prefixed with the path of its file. Files are parsed in parallel,
+	 * but the output follows the order of the given files.
+	 */
+	public void write(String[] files) {
+		Arrays.stream(files).parallel().map(file -> {
+			StringWriter lines = new StringWriter();
+			try {
+				ASTBuilder.build(file, new ASTSequencer(lines, format, normalized, vocabulary, file));
+			} catch (IOException ex) {
+				Logger.error(ex);
+				return "";
+			}
+			return lines.toString();
+		}).forEachOrdered(lines -> {
+			try {
+				synchronized (out) {
+					out.write(lines);
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Write the sequences of all methods (and constructors) of the given AST.
+	 */
+	public void write(AbstractSyntaxTree ast) {
+		Iterator<ASNode> nodes = ast.allVerticesIterator();
+		while (nodes.hasNext()) {
+			ASNode node = nodes.next();
+			if (node.getType() == ASNode.Type.METHOD || node.getType() == ASNode.Type.CONSTRUCTOR)
+				write(ast, node);
+		}
+	}
+
+	/**
+	 * Write the sequence of the given method (or constructor) subtree.
+	 * Lines are written atomically, so a sequencer can be shared by parallel builds.
+	 */
+	public void write(AbstractSyntaxTree ast, ASNode method) {
+		StringBuilder line = new StringBuilder();
+		if (source != null)
+			line.append(source).append('\t');
+		line.append(methodName(ast, method)).append('\t').append(method.getLineOfCode()).append('\t');
+		if (format == Format.SBT)
+			appendSBT(ast, method, line);
+		else
+			appendPreOrder(ast, method, line);
+		line.setLength(line.length() - 1);  // remove the last space
+		line.append('\n');
+		try {
+			synchronized (out) {
+				out.write(line.toString());
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Returns the token of the given node; the type name followed by its code,
+	 * where white-spaces in the code are replaced by underscores.
+	 */
+	public String token(ASNode node) {
+		String code = normalized ? node.getNormalizedCode() : node.getCode();
+		if (code == null || code.isEmpty())
+			return node.getType().name();
+		return node.getType().name() + '_' + code.trim().replaceAll("\\s+", "_");
+	}
+
+	private void appendPreOrder(AbstractSyntaxTree ast, ASNode top, StringBuilder line) {
+		Map<ASNode, Boolean> visited = new IdentityHashMap<>();
+		Deque<ASNode> stack = new ArrayDeque<>();
+		stack.push(top);
+		while (!stack.isEmpty()) {
+			ASNode node = stack.pop();
+			if (visited.put(node, Boolean.TRUE) != null)
+				continue;
+			append(token(node), line);
+			// push children in reverse, so they are popped in order
+			Deque<ASNode> children = new ArrayDeque<>();
+			Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(node);
+			while (outs.hasNext())
+				children.push(outs.next().target);
+			while (!children.isEmpty())
+				stack.push(children.pop());
+		}
+	}
+
+	private void appendSBT(AbstractSyntaxTree ast, ASNode top, StringBuilder line) {
+		// SBT(node) = '(' token SBT(child)* ')' token
+		Map<ASNode, Boolean> visited = new IdentityHashMap<>();
+		Deque<ASNode> stack = new ArrayDeque<>();
+		Deque<Iterator<Edge<ASNode, ASEdge>>> children = new ArrayDeque<>();
+		visited.put(top, Boolean.TRUE);
+		append("(", line);
+		append(token(top), line);
+		stack.push(top);
+		children.push(ast.outgoingEdgesIterator(top));
+		while (!stack.isEmpty()) {
+			Iterator<Edge<ASNode, ASEdge>> outs = children.peek();
+			if (outs.hasNext()) {
+				ASNode child = outs.next().target;
+				if (visited.put(child, Boolean.TRUE) != null)
+					continue;
+				append("(", line);
+				append(token(child), line);
+				stack.push(child);
+				children.push(ast.outgoingEdgesIterator(child));
+			} else {
+				append(")", line);
+				append(token(stack.pop()), line);
+				children.pop();
+			}
+		}
+	}
+
+	private void append(String token, StringBuilder line) {
+		if (vocabulary == null)
+			line.append(token);
+		else
+			line.append(vocabulary.getOrDefault(token, unknownId));
+		line.append(' ');
+	}
+
+	private String methodName(AbstractSyntaxTree ast, ASNode method) {
+		Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(method);
+		while (outs.hasNext()) {
+			ASNode child = outs.next().target;
+			if (child.getType() == ASNode.Type.NAME)
+				return child.getCode();
+		}
+		return method.getType().name().toLowerCase();
+	}
+}
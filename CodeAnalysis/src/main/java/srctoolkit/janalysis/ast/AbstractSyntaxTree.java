@@ -2,20 +2,46 @@
 package srctoolkit.janalysis.ast;
 
 import srctoolkit.janalysis.common.graph.AbstractProgramGraph;
+import srctoolkit.janalysis.hash.MurmurHash;
 import srctoolkit.janalysis.utils.StringUtils;
 import srctoolkit.janalysis.common.graph.Edge;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Abstract Syntax Tree (AST).
  * 
+ * A tree which is only read is safe for concurrent readers; but after an incremental
+ * rebuild (see ASTBuilder.rebuild) node positions are shifted lazily, and reading them
+ * updates the nodes, so such a tree must be confined to a single thread.
+ * 
  * @author Seyed Mohammad Ghaffarian
  */
 public class AbstractSyntaxTree extends AbstractProgramGraph<ASNode, ASEdge> {
     public final ASNode root;
+    private Map<Long, List<ASNode>> hashIndex;
+    private Map<Long, List<ASNode>> normalizedHashIndex;
+    private final Map<ASNode.Type, Set<ASNode>> typeIndex;
+    // bookkeeping for incremental rebuilds; see ASTBuilder.rebuild
+    final List<Member> members;
+    final Shifts shifts;
+    private final Map<String, TreeMap<Integer, String>> fieldNames;
+    private final Map<String, TreeMap<Integer, String>> methodNames;
 	
     /**
      * Construct a new empty Abstract Syntax Tree, 
@@ -23,10 +49,17 @@ public class AbstractSyntaxTree extends AbstractProgramGraph<ASNode, ASEdge> {
      */
 	public AbstractSyntaxTree() {
 		super();
+        typeIndex = new EnumMap<>(ASNode.Type.class);
+        shifts = new Shifts();
         this.root = new ASNode(ASNode.Type.ROOT);
         properties.put("label", "AST");
         properties.put("type", "Abstract Syntax Tree (AST)");
         addVertex(root);
+        hashIndex = new HashMap<>();
+        normalizedHashIndex = new HashMap<>();
+        members = new ArrayList<>();
+        fieldNames = new HashMap<>();
+        methodNames = new HashMap<>();
 	}
     
     /**
@@ -35,6 +68,458 @@ public class AbstractSyntaxTree extends AbstractProgramGraph<ASNode, ASEdge> {
     public AbstractSyntaxTree(AbstractSyntaxTree ast) {
         super(ast);
         this.root = ast.root;
+        typeIndex = new EnumMap<>(ASNode.Type.class);
+        for (Entry<ASNode.Type, Set<ASNode>> entry: ast.typeIndex.entrySet())
+            typeIndex.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+        hashIndex = copyIndex(ast.hashIndex);
+        normalizedHashIndex = copyIndex(ast.normalizedHashIndex);
+        // nodes are shared with the given tree, and keep its position shifts; the copy 
+        // has no members of its own, so rebuilding the copy builds a new tree instead
+        members = new ArrayList<>();
+        shifts = new Shifts();
+        fieldNames = new HashMap<>();
+        methodNames = new HashMap<>();
+    }
+    
+    @Override
+    public boolean addVertex(ASNode node) {
+        if (super.addVertex(node)) {
+            node.setShifts(shifts);
+            typeIndex.computeIfAbsent(node.getType(), k -> new LinkedHashSet<>()).add(node);
+            return true;
+        }
+        return false;
+    }
+    
+    @Override
+    public boolean removeVertex(ASNode node) {
+        if (super.removeVertex(node)) {
+            Set<ASNode> nodes = typeIndex.get(node.getType());
+            if (nodes != null)
+                nodes.remove(node);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Returns all nodes of this tree with the given type, in insertion order.
+     */
+    public Collection<ASNode> getNodesOfType(ASNode.Type type) {
+        Set<ASNode> nodes = typeIndex.get(type);
+        return nodes == null ? Collections.emptySet() : Collections.unmodifiableSet(nodes);
+    }
+    
+    /**
+     * (Re)compute the Merkle hashes of all nodes of this tree in one bottom-up pass,
+     * and rebuild the hash-to-nodes indices.
+     * The hash of each node combines its type and code with the hashes of its
+     * children (in order); so two nodes have equal hashes iff their subtrees are
+     * identical (modulo hash collisions).
+     */
+    public void updateHashes() {
+        hashIndex = new HashMap<>();
+        normalizedHashIndex = new HashMap<>();
+        hashSubtree(root);
+    }
+    
+    /**
+     * Compute the hashes of all nodes in the subtree of the given node, bottom-up.
+     */
+    private void hashSubtree(ASNode top) {
+        Map<ASNode, Boolean> done = new IdentityHashMap<>();
+        Deque<ASNode> stack = new ArrayDeque<>();
+        stack.push(top);
+        while (!stack.isEmpty()) {
+            ASNode node = stack.peek();
+            if (!done.containsKey(node)) {
+                // first visit; push children and come back later
+                done.put(node, Boolean.FALSE);
+                Iterator<Edge<ASNode, ASEdge>> outs = outgoingEdgesIterator(node);
+                while (outs.hasNext()) {
+                    ASNode child = outs.next().target;
+                    if (!done.containsKey(child))
+                        stack.push(child);
+                }
+                continue;
+            }
+            stack.pop();
+            if (!done.get(node)) {
+                hashNode(node);
+                done.put(node, Boolean.TRUE);
+            }
+        }
+    }
+    
+    private void hashNode(ASNode node) {
+        long hash = hashOf(node.getType(), node.getCode());
+        long normal = hashOf(node.getType(), node.getNormalizedCode());
+        Iterator<Edge<ASNode, ASEdge>> outs = outgoingEdgesIterator(node);
+        while (outs.hasNext()) {
+            ASNode child = outs.next().target;
+            hash = combine(hash, child.getHash());
+            normal = combine(normal, child.getNormalizedHash());
+        }
+        node.setHashes(hash, normal);
+        hashIndex.computeIfAbsent(hash, k -> new ArrayList<>()).add(node);
+        normalizedHashIndex.computeIfAbsent(normal, k -> new ArrayList<>()).add(node);
+    }
+    
+    private void unindexNode(ASNode node) {
+        List<ASNode> nodes = hashIndex.get(node.getHash());
+        if (nodes != null && nodes.remove(node) && nodes.isEmpty())
+            hashIndex.remove(node.getHash());
+        nodes = normalizedHashIndex.get(node.getNormalizedHash());
+        if (nodes != null && nodes.remove(node) && nodes.isEmpty())
+            normalizedHashIndex.remove(node.getNormalizedHash());
+    }
+    
+    /**
+     * Replace the member at the given index with the single member subtree of the given piece,
+     * which is built under the given holder node.
+     * The replacement keeps the position of the member among its siblings;
+     * only the hashes of the new subtree and its ancestors are recomputed.
+     * Members and nodes after the replaced member are not visited; a shift by the given
+     * offset and line deltas is recorded instead, which they apply when their position is read.
+     */
+    void spliceMember(int index, ASNode parent, AbstractSyntaxTree piece, ASNode holder, int delta, int lineDelta) {
+        Member old = members.get(index);
+        int oldStop = old.getStop();
+        // remove the old member subtree
+        List<ASNode> oldNodes = new ArrayList<>();
+        Map<ASNode, Boolean> visited = new IdentityHashMap<>();
+        Deque<ASNode> stack = new ArrayDeque<>();
+        stack.push(old.node);
+        visited.put(old.node, Boolean.TRUE);
+        while (!stack.isEmpty()) {
+            ASNode node = stack.pop();
+            oldNodes.add(node);
+            Iterator<Edge<ASNode, ASEdge>> outs = outgoingEdgesIterator(node);
+            while (outs.hasNext()) {
+                ASNode child = outs.next().target;
+                if (visited.put(child, Boolean.TRUE) == null)
+                    stack.push(child);
+            }
+        }
+        Edge<ASNode, ASEdge> oldEdge = incomingEdgesIterator(old.node).next();
+        int position = 0;
+        for (Edge<ASNode, ASEdge> edge: outEdges.get(parent)) {
+            if (edge.equals(oldEdge))
+                break;
+            ++position;
+        }
+        removeEdge(oldEdge);
+        for (ASNode node: oldNodes) {
+            unindexNode(node);
+            removeVertex(node);
+            node.setShifts(null);
+        }
+        // replace the old member (and the members nested in it) with the new ones;
+        // the shift is recorded before the new nodes are added, so they are not shifted
+        int end = index + 1;
+        while (end < members.size() && members.get(end).getStop() <= oldStop)
+            ++end;
+        if (delta != 0 || lineDelta != 0)
+            shifts.add(oldStop, delta, old.getStopLine(), lineDelta);
+        if (shifts.pending() >= Shifts.COMPACT_THRESHOLD)
+            compactShifts();
+        members.subList(index, end).clear();
+        for (Member member: piece.members)
+            member.setShifts(shifts);
+        members.addAll(index, piece.members);
+        // add the new member subtree
+        ASNode memberNode = piece.outgoingEdgesIterator(holder).next().target;
+        for (ASNode node: piece.allVertices)
+            if (node != piece.root && node != holder)
+                addVertex(node);
+        for (Edge<ASNode, ASEdge> edge: piece.allEdges)
+            if (edge.source != holder)
+                addEdge(edge);
+        // keep the position of the new member among its siblings
+        Edge<ASNode, ASEdge> newEdge = new Edge<>(parent, null, memberNode);
+        List<Edge<ASNode, ASEdge>> siblings = new ArrayList<>(outEdges.get(parent));
+        siblings.add(position, newEdge);
+        outEdges.get(parent).clear();
+        allEdges.add(newEdge);
+        inEdges.get(memberNode).add(newEdge);
+        outEdges.get(parent).addAll(siblings);
+        // update hashes of the new subtree and all its ancestors
+        hashSubtree(memberNode);
+        for (ASNode node = parent; node != null; node = parentOf(node)) {
+            unindexNode(node);
+            hashNode(node);
+        }
+    }
+    
+    /**
+     * Returns the normalized name of the last field with the given name, 
+     * among the first 'count' fields declared in this tree; null if there is none.
+     */
+    String getFieldName(String name, int count) {
+        return lookupName(fieldNames, name, count);
+    }
+    
+    /**
+     * Returns the normalized name of the last method with the given name, 
+     * among the first 'count' methods declared in this tree; null if there is none.
+     */
+    String getMethodName(String name, int count) {
+        return lookupName(methodNames, name, count);
+    }
+    
+    void addFieldName(String name, int number, String normalized) {
+        fieldNames.computeIfAbsent(name, k -> new TreeMap<>()).put(number, normalized);
+    }
+    
+    void addMethodName(String name, int number, String normalized) {
+        methodNames.computeIfAbsent(name, k -> new TreeMap<>()).put(number, normalized);
+    }
+    
+    private static String lookupName(Map<String, TreeMap<Integer, String>> names, String name, int count) {
+        TreeMap<Integer, String> declared = names.get(name);
+        if (declared == null)
+            return null;
+        Entry<Integer, String> last = declared.floorEntry(count);
+        return last == null ? null : last.getValue();
+    }
+    
+    /**
+     * Apply all recorded shifts to all nodes and members of this tree, and drop them
+     * from the journal; so the journal (and the shifts a node may have to replay 
+     * when it is read) is bounded, at the cost of one pass every few rebuilds.
+     */
+    private void compactShifts() {
+        for (ASNode node: allVertices)
+            node.getLineOfCode();
+        for (Member member: members)
+            member.getStart();
+        shifts.compact();
+    }
+    
+    private ASNode parentOf(ASNode node) {
+        Iterator<Edge<ASNode, ASEdge>> ins = incomingEdgesIterator(node);
+        return ins.hasNext() ? ins.next().source : null;
+    }
+    
+    /**
+     * Returns all nodes whose subtree has the given exact hash.
+     */
+    public List<ASNode> getNodesWithHash(long hash) {
+        return Collections.unmodifiableList(hashIndex.getOrDefault(hash, Collections.emptyList()));
+    }
+    
+    /**
+     * Returns all nodes whose subtree has the given normalized hash.
+     */
+    public List<ASNode> getNodesWithNormalizedHash(long hash) {
+        return Collections.unmodifiableList(normalizedHashIndex.getOrDefault(hash, Collections.emptyList()));
+    }
+    
+    /**
+     * Returns all other nodes of this tree with a subtree identical to the given node.
+     */
+    public List<ASNode> findDuplicates(ASNode node) {
+        return othersIn(hashIndex.get(node.getHash()), node);
+    }
+    
+    /**
+     * Returns all other nodes of this tree with a subtree identical to the 
+     * given node, after normalization of identifiers and literals.
+     */
+    public List<ASNode> findNormalizedDuplicates(ASNode node) {
+        return othersIn(normalizedHashIndex.get(node.getNormalizedHash()), node);
+    }
+    
+    /**
+     * Check whether the subtrees rooted at the two given nodes are identical.
+     */
+    public static boolean isIdentical(ASNode node1, ASNode node2) {
+        return node1.getHash() == node2.getHash() && node1.getType() == node2.getType();
+    }
+    
+    /**
+     * Check whether the subtrees rooted at the two given nodes are identical after normalization.
+     */
+    public static boolean isNormalizedIdentical(ASNode node1, ASNode node2) {
+        return node1.getNormalizedHash() == node2.getNormalizedHash() && node1.getType() == node2.getType();
+    }
+    
+    private static List<ASNode> othersIn(List<ASNode> nodes, ASNode node) {
+        List<ASNode> others = new ArrayList<>();
+        if (nodes != null)
+            for (ASNode other: nodes)
+                if (other != node)
+                    others.add(other);
+        return others;
+    }
+    
+    private static long hashOf(ASNode.Type type, String code) {
+        long hash = MurmurHash.hash64(code == null ? "" : code);
+        return combine(type.ordinal() + 1, hash);
+    }
+    
+    private static long combine(long hash, long child) {
+        // mix step of the 64-bit finalizer of MurmurHash3
+        long h = hash * 31 + child;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * Position of a class member in the source code of this tree, the normalization 
+     * scope at its start, and its declarations which are visible to the members after it.
+     * Positions are shifted lazily, by the shifts recorded after the member was built.
+     */
+    static final class Member {
+        final ASNode node;
+        final Scope scope;
+        final List<String[]> declarations;
+        private int start, stop;
+        private int startLine, stopLine;
+        private Shifts shifts;
+        private int shiftsApplied;
+        
+        Member(ASNode node, Scope scope, List<String[]> declarations, 
+                int start, int stop, int startLine, int stopLine, Shifts shifts) {
+            this.node = node;
+            this.scope = scope;
+            this.declarations = declarations;
+            this.start = start;
+            this.stop = stop;
+            this.startLine = startLine;
+            this.stopLine = stopLine;
+            this.shifts = shifts;
+            this.shiftsApplied = shifts.size();
+        }
+        
+        int getStart() {
+            sync();
+            return start;
+        }
+        
+        int getStop() {
+            sync();
+            return stop;
+        }
+        
+        int getStartLine() {
+            sync();
+            return startLine;
+        }
+        
+        int getStopLine() {
+            sync();
+            return stopLine;
+        }
+        
+        /**
+         * Move this member to the given shifts journal (of another tree).
+         */
+        void setShifts(Shifts shifts) {
+            sync();
+            this.shifts = shifts;
+            shiftsApplied = shifts.size();
+        }
+        
+        private void sync() {
+            for (; shiftsApplied < shifts.size(); ++shiftsApplied) {
+                int[] shift = shifts.get(shiftsApplied);
+                if (start > shift[0]) {
+                    start += shift[1];
+                    startLine += shift[3];
+                }
+                if (stop > shift[0]) {
+                    stop += shift[1];
+                    stopLine += shift[3];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Normalization state of the AST builder at the start of a class member.
+     * Fields and methods are not copied; they are looked up in the tree by their counters.
+     */
+    static final class Scope {
+        final String typeModifier;
+        final Map<String, String> vars;
+        final int varsCounter, fieldsCounter, methodsCounter;
+        
+        Scope(String typeModifier, Map<String, String> vars, int varsCounter, int fieldsCounter, int methodsCounter) {
+            this.typeModifier = typeModifier;
+            this.vars = vars;
+            this.varsCounter = varsCounter;
+            this.fieldsCounter = fieldsCounter;
+            this.methodsCounter = methodsCounter;
+        }
+    }
+    
+    /**
+     * Journal of the position shifts of incremental rebuilds. Each shift moves all 
+     * offsets and lines after the end of a replaced member, by the given deltas;
+     * members and nodes apply the shifts they have not seen yet when their position is read.
+     * Indices of shifts are counted from the creation of the journal; the shifts which are
+     * applied to all nodes and members of the tree are dropped by compaction.
+     */
+    static final class Shifts {
+        static final int COMPACT_THRESHOLD = 64;
+        private final List<int[]> shifts = new ArrayList<>();
+        private int base = 0;
+        
+        void add(int offset, int delta, int line, int lineDelta) {
+            shifts.add(new int[] {offset, delta, line, lineDelta});
+        }
+        
+        /**
+         * Returns the index after the last shift.
+         */
+        int size() {
+            return base + shifts.size();
+        }
+        
+        /**
+         * Returns the number of shifts which are not dropped yet.
+         */
+        int pending() {
+            return shifts.size();
+        }
+        
+        int[] get(int index) {
+            if (index < base)
+                throw new IllegalStateException("Shift #" + index + " is already compacted!");
+            return shifts.get(index - base);
+        }
+        
+        /**
+         * Apply the shifts from the given index on, to the given line number.
+         */
+        int shiftLine(int line, int from) {
+            for (int i = from; i < size(); ++i) {
+                int[] shift = get(i);
+                if (line > shift[2])
+                    line += shift[3];
+            }
+            return line;
+        }
+        
+        /**
+         * Drop all shifts; they must be applied by all readers of this journal.
+         */
+        void compact() {
+            base += shifts.size();
+            shifts.clear();
+        }
+    }
+    
+    private static Map<Long, List<ASNode>> copyIndex(Map<Long, List<ASNode>> index) {
+        Map<Long, List<ASNode>> copy = new HashMap<>();
+        for (Entry<Long, List<ASNode>> entry: index.entrySet())
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        return copy;
     }
     
     @Override
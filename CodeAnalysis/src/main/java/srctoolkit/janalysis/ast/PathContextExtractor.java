@@ -0,0 +1,228 @@
+package srctoolkit.janalysis.ast;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.hash.MurmurHash;
+import srctoolkit.janalysis.utils.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts code2vec-style path-contexts from Abstract Syntax Trees.
+ * For each method (or constructor) all leaf-to-leaf paths are enumerated,
+ * bounded by a maximum path length (number of edges) and a maximum path width
+ * (distance between the two sibling subtrees at the top of the path).
+ * Each path is hashed using <tt>MurmurHash</tt> and written as one line per method:
+ *
+ *   method|name  token,hash,token  token,hash,token  ...
+ */
+public class PathContextExtractor {
+
+	public static final int DEFAULT_MAX_LENGTH = 8;
+	public static final int DEFAULT_MAX_WIDTH = 2;
+
+	private static final String METHOD_NAME = "METHOD_NAME";
+
+	private final int maxLength;
+	private final int maxWidth;
+
+	public PathContextExtractor() {
+		this(DEFAULT_MAX_LENGTH, DEFAULT_MAX_WIDTH);
+	}
+
+	public PathContextExtractor(int maxLength, int maxWidth) {
+		if (maxLength < 2 || maxWidth < 1)
+			throw new IllegalArgumentException("Path length must be >= 2 and path width must be >= 1!");
+		this.maxLength = maxLength;
+		this.maxWidth = maxWidth;
+	}
+
+	/**
+	 * Extract path-contexts for all the given Java source files, and write them to the given writer.
+	 * Files are parsed and processed in parallel, but the output follows the order of the given files.
+	 */
+	public void extract(String[] files, Writer out) {
+		Arrays.stream(files).parallel().map(file -> {
+			try {
+				StringBuilder lines = new StringBuilder();
+				for (String line: extract(ASTBuilder.build(file)))
+					lines.append(line).append('\n');
+				return lines.toString();
+			} catch (IOException ex) {
+				Logger.error(ex);
+				return "";
+			}
+		}).forEachOrdered(lines -> {
+			try {
+				out.write(lines);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Extract path-contexts for all methods of the given AST, and write them to the given writer.
+	 */
+	public void extract(AbstractSyntaxTree ast, Writer out) throws IOException {
+		for (String line: extract(ast))
+			out.write(line + '\n');
+	}
+
+	/**
+	 * Extract path-contexts for all methods of the given AST.
+	 * Returns one line per method; methods without any path-context are skipped.
+	 */
+	public List<String> extract(AbstractSyntaxTree ast) {
+		List<String> lines = new ArrayList<>();
+		Iterator<ASNode> nodes = ast.allVerticesIterator();
+		while (nodes.hasNext()) {
+			ASNode node = nodes.next();
+			if (node.getType() != ASNode.Type.METHOD && node.getType() != ASNode.Type.CONSTRUCTOR)
+				continue;
+			String line = new MethodPaths(ast, node).extract();
+			if (line != null)
+				lines.add(line);
+		}
+		return lines;
+	}
+
+	/**
+	 * Split the given code into lower-case sub-tokens joined by '|'.
+	 * Camel-case names are split as well, so 'getFooBar' becomes 'get|foo|bar'.
+	 */
+	public static String toSubTokens(String code) {
+		if (code == null)
+			return "";
+		StringBuilder tokens = new StringBuilder();
+		for (String part: code.split("[^A-Za-z0-9$_]+|(?<=[a-z0-9])(?=[A-Z])|(?<=[A-Z])(?=[A-Z][a-z])|_")) {
+			if (part.isEmpty())
+				continue;
+			if (tokens.length() > 0)
+				tokens.append('|');
+			tokens.append(part.toLowerCase());
+		}
+		return tokens.toString();
+	}
+
+	/**
+	 * Path-context extraction state for a single method subtree.
+	 */
+	private class MethodPaths {
+
+		private final AbstractSyntaxTree ast;
+		private final ASNode method;
+		private final ASNode methodName;
+		private final Map<ASNode, ASNode> parents;
+		private final StringBuilder line;
+		private int contexts;
+
+		MethodPaths(AbstractSyntaxTree ast, ASNode method) {
+			this.ast = ast;
+			this.method = method;
+			this.methodName = findNameNode(method);
+			this.parents = new IdentityHashMap<>();
+			this.line = new StringBuilder();
+			this.contexts = 0;
+		}
+
+		String extract() {
+			if (methodName == null)
+				line.append(method.getType().name().toLowerCase());
+			else
+				line.append(toSubTokens(methodName.getCode()));
+			parents.put(method, null);
+			collectLeaves(method);
+			return contexts == 0 ? null : line.toString();
+		}
+
+		/**
+		 * Returns all leaves of the given subtree which can still be part of a path,
+		 * and emits every path whose top-most node is the given node.
+		 */
+		private List<Leaf> collectLeaves(ASNode node) {
+			List<List<Leaf>> children = new ArrayList<>();
+			Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(node);
+			while (outs.hasNext()) {
+				ASNode child = outs.next().target;
+				// switch-labels share their block; only the first parent owns it
+				if (parents.containsKey(child))
+					continue;
+				parents.put(child, node);
+				children.add(collectLeaves(child));
+			}
+			List<Leaf> leaves = new ArrayList<>();
+			if (children.isEmpty()) {
+				leaves.add(new Leaf(node));
+				return leaves;
+			}
+			for (int i = 0; i < children.size(); ++i) {
+				for (int j = i + 1; j < children.size() && j - i <= maxWidth; ++j) {
+					for (Leaf first: children.get(i))
+						for (Leaf second: children.get(j))
+							if (first.up + second.up + 2 <= maxLength)
+								emit(first, node, second);
+				}
+			}
+			for (List<Leaf> list: children) {
+				for (Leaf leaf: list) {
+					// another edge is needed to go up, and at least one to come down
+					if (++leaf.up + 2 <= maxLength)
+						leaves.add(leaf);
+				}
+			}
+			return leaves;
+		}
+
+		private void emit(Leaf first, ASNode top, Leaf second) {
+			StringBuilder path = new StringBuilder();
+			for (ASNode up = first.node; up != top; up = parents.get(up))
+				path.append(up.getType().name()).append('^');
+			path.append(top.getType().name());
+			int mark = path.length();
+			for (ASNode down = second.node; down != top; down = parents.get(down))
+				path.insert(mark, '_' + down.getType().name());
+			line.append(' ').append(token(first.node)).append(',')
+				.append(MurmurHash.hash32(path.toString())).append(',')
+				.append(token(second.node));
+			++contexts;
+		}
+
+		private String token(ASNode leaf) {
+			if (leaf == methodName)
+				return METHOD_NAME;
+			String token = toSubTokens(leaf.getCode());
+			return token.isEmpty() ? leaf.getType().name() : token;
+		}
+
+		private ASNode findNameNode(ASNode node) {
+			Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(node);
+			while (outs.hasNext()) {
+				ASNode child = outs.next().target;
+				if (child.getType() == ASNode.Type.NAME)
+					return child;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A leaf node along with the number of edges traversed upwards from it.
+	 */
+	private static class Leaf {
+		final ASNode node;
+		int up;
+
+		Leaf(ASNode node) {
+			this.node = node;
+			this.up = 0;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package srctoolkit.janalysis.ast;
+
+/**
+ * A single text edit on a source file, used for incremental AST rebuilding.
+ * The edit replaces OLD_LENGTH characters starting at OFFSET (in the previous
+ * source code) with NEW_LENGTH characters of new text.
+ */
+public class SourceEdit {
+
+	public final int OFFSET;
+	public final int OLD_LENGTH;
+	public final int NEW_LENGTH;
+
+	public SourceEdit(int offset, int oldLength, int newLength) {
+		if (offset < 0 || oldLength < 0 || newLength < 0)
+			throw new IllegalArgumentException("Edit offset and lengths must be non-negative!");
+		OFFSET = offset;
+		OLD_LENGTH = oldLength;
+		NEW_LENGTH = newLength;
+	}
+
+	@Override
+	public String toString() {
+		return "{ OFFSET : " + OFFSET + ", OLD_LENGTH : " + OLD_LENGTH + ", NEW_LENGTH : " + NEW_LENGTH + " }";
+	}
+}
@@ -0,0 +1,463 @@
+package srctoolkit.janalysis.common.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ordering and loop structure of a directed graph, with respect to a root vertex.
+ * All of the following are computed in (almost) linear time on int-indexed arrays:
+ *
+ *  - reverse post-order (RPO) numbering of vertices reachable from the root,
+ *  - strongly connected components (Tarjan), in reverse topological order,
+ *  - back edges; i.e. edges to an ancestor in the depth-first spanning tree,
+ *  - the loop nesting forest (Havlak), including irreducible loops.
+ *
+ * Worklist analyses converge faster when vertices are visited in RPO.
+ * Instances are immutable snapshots, and do not track changes of the graph.
+ */
+public class GraphStructure<V,E> {
+
+    public final Digraph<V,E> GRAPH;
+    public final V ROOT;
+
+    private final List<V> vertices;
+    private final Map<V, Integer> indices;
+    private final int[][] succs;
+    private final int[][] preds;
+
+    private final int[] rpoNumber;
+    private final List<V> reversePostOrder;
+    private final int[] preorder;
+    private final int[] lastDescendant;
+    private final Set<Edge<V,E>> backEdges;
+
+    private final int[] sccIndex;
+    private final List<List<V>> sccs;
+
+    private final Loop<V>[] innermostLoop;
+    private final List<Loop<V>> loops;
+
+    /**
+     * Compute the structure of the given graph, starting from the given root vertex.
+     */
+    public GraphStructure(Digraph<V,E> graph, V root) {
+        if (!graph.containsVertex(root))
+            throw new IllegalArgumentException("No such root-vertex in this graph!");
+        GRAPH = graph;
+        ROOT = root;
+        int n = graph.vertexCount();
+        vertices = new ArrayList<>(n);
+        indices = new HashMap<>();
+        for (V v: graph.allVertices) {
+            indices.put(v, vertices.size());
+            vertices.add(v);
+        }
+        succs = new int[n][];
+        preds = new int[n][];
+        for (int i = 0; i < n; ++i) {
+            V v = vertices.get(i);
+            succs[i] = new int[graph.outEdges.get(v).size()];
+            int j = 0;
+            for (Edge<V,E> out: graph.outEdges.get(v))
+                succs[i][j++] = indices.get(out.target);
+            preds[i] = new int[graph.inEdges.get(v).size()];
+            j = 0;
+            for (Edge<V,E> in: graph.inEdges.get(v))
+                preds[i][j++] = indices.get(in.source);
+        }
+        //
+        rpoNumber = new int[n];
+        preorder = new int[n];
+        lastDescendant = new int[n];
+        int[] byPreorder = depthFirstSearch(indices.get(root));
+        reversePostOrder = new ArrayList<>();
+        int[] rpo = new int[n];
+        int reachable = 0;
+        for (int i = 0; i < n; ++i)
+            if (rpoNumber[i] >= 0) {
+                rpo[rpoNumber[i]] = i;
+                ++reachable;
+            }
+        for (int i = 0; i < reachable; ++i)
+            reversePostOrder.add(vertices.get(rpo[i]));
+        //
+        backEdges = new LinkedHashSet<>();
+        for (Edge<V,E> edge: graph.allEdges) {
+            int src = indices.get(edge.source);
+            int trg = indices.get(edge.target);
+            if (preorder[src] >= 0 && isAncestor(trg, src))
+                backEdges.add(edge);
+        }
+        //
+        sccIndex = new int[n];
+        sccs = new ArrayList<>();
+        tarjan();
+        //
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Loop<V>[] innermost = new Loop[n];
+        innermostLoop = innermost;
+        loops = new ArrayList<>();
+        havlak(byPreorder, reachable);
+    }
+
+    /**
+     * Returns the vertices reachable from the root, in reverse post-order.
+     */
+    public List<V> getReversePostOrder() {
+        return Collections.unmodifiableList(reversePostOrder);
+    }
+
+    /**
+     * Returns the reverse post-order number of the given vertex,
+     * or -1 if the vertex is not reachable from the root.
+     */
+    public int getRPONumber(V v) {
+        Integer index = indices.get(v);
+        return index == null ? -1 : rpoNumber[index];
+    }
+
+    /**
+     * Returns all back edges; i.e. edges from a vertex to one of its ancestors
+     * in the depth-first spanning tree (including self-loops).
+     */
+    public Set<Edge<V,E>> getBackEdges() {
+        return Collections.unmodifiableSet(backEdges);
+    }
+
+    public boolean isBackEdge(Edge<V,E> edge) {
+        return backEdges.contains(edge);
+    }
+
+    /**
+     * Returns the strongly connected components of the whole graph,
+     * in reverse topological order (a component comes before its predecessors).
+     */
+    public List<List<V>> getSCCs() {
+        return Collections.unmodifiableList(sccs);
+    }
+
+    /**
+     * Returns the index of the strongly connected component of the given vertex in getSCCs().
+     */
+    public int getSCCIndex(V v) {
+        return sccIndex[indices.get(v)];
+    }
+
+    /**
+     * Returns all loops of the loop nesting forest; outer loops come before inner loops.
+     */
+    public List<Loop<V>> getLoops() {
+        return Collections.unmodifiableList(loops);
+    }
+
+    /**
+     * Returns the outermost loops of the loop nesting forest.
+     */
+    public List<Loop<V>> getTopLevelLoops() {
+        List<Loop<V>> roots = new ArrayList<>();
+        for (Loop<V> loop: loops)
+            if (loop.parent == null)
+                roots.add(loop);
+        return roots;
+    }
+
+    /**
+     * Returns the innermost loop containing the given vertex, or null if it is not in any loop.
+     */
+    public Loop<V> getLoop(V v) {
+        Integer index = indices.get(v);
+        return index == null ? null : innermostLoop[index];
+    }
+
+    /**
+     * Returns the number of loops containing the given vertex.
+     */
+    public int getLoopDepth(V v) {
+        Loop<V> loop = getLoop(v);
+        return loop == null ? 0 : loop.depth;
+    }
+
+    /**
+     * Check whether the given vertex is a loop header.
+     */
+    public boolean isLoopHeader(V v) {
+        Loop<V> loop = getLoop(v);
+        return loop != null && loop.header.equals(v);
+    }
+
+    //=====================================================================//
+    //                         INTERNAL ALGORITHMS                         //
+    //=====================================================================//
+
+    /**
+     * Iterative depth-first search from the root; assigns pre-order numbers,
+     * last descendants and RPO numbers. Returns the vertices in pre-order.
+     */
+    private int[] depthFirstSearch(int root) {
+        int n = vertices.size();
+        Arrays.fill(rpoNumber, -1);
+        Arrays.fill(preorder, -1);
+        int[] byPreorder = new int[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        int top = 0;
+        int preCounter = 0;
+        int postCounter = 0;
+        stack[top++] = root;
+        byPreorder[preCounter] = root;
+        preorder[root] = preCounter++;
+        while (top > 0) {
+            int v = stack[top - 1];
+            if (next[v] < succs[v].length) {
+                int w = succs[v][next[v]++];
+                if (preorder[w] < 0) {
+                    byPreorder[preCounter] = w;
+                    preorder[w] = preCounter++;
+                    stack[top++] = w;
+                }
+            } else {
+                lastDescendant[v] = preCounter - 1;
+                rpoNumber[v] = postCounter++;
+                --top;
+            }
+        }
+        for (int i = 0; i < n; ++i)
+            if (rpoNumber[i] >= 0)
+                rpoNumber[i] = postCounter - 1 - rpoNumber[i];
+        return byPreorder;
+    }
+
+    /**
+     * Check whether vertex 'w' is an ancestor of vertex 'v' in the DFS spanning tree.
+     */
+    private boolean isAncestor(int w, int v) {
+        return preorder[w] >= 0 && preorder[w] <= preorder[v] && preorder[v] <= lastDescendant[w];
+    }
+
+    /**
+     * Iterative version of Tarjan's strongly connected components algorithm.
+     */
+    private void tarjan() {
+        int n = vertices.size();
+        int[] number = new int[n];
+        int[] lowLink = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] sccStack = new int[n];
+        int[] callStack = new int[n];
+        int[] next = new int[n];
+        Arrays.fill(number, -1);
+        int sccTop = 0;
+        int counter = 0;
+        for (int start = 0; start < n; ++start) {
+            if (number[start] >= 0)
+                continue;
+            int top = 0;
+            callStack[top++] = start;
+            number[start] = lowLink[start] = counter++;
+            sccStack[sccTop++] = start;
+            onStack[start] = true;
+            while (top > 0) {
+                int v = callStack[top - 1];
+                if (next[v] < succs[v].length) {
+                    int w = succs[v][next[v]++];
+                    if (number[w] < 0) {
+                        number[w] = lowLink[w] = counter++;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        callStack[top++] = w;
+                    } else if (onStack[w])
+                        lowLink[v] = Math.min(lowLink[v], number[w]);
+                } else {
+                    --top;
+                    if (top > 0) {
+                        int parent = callStack[top - 1];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                    if (lowLink[v] == number[v]) {
+                        List<V> scc = new ArrayList<>();
+                        int w;
+                        do {
+                            w = sccStack[--sccTop];
+                            onStack[w] = false;
+                            sccIndex[w] = sccs.size();
+                            scc.add(vertices.get(w));
+                        } while (w != v);
+                        Collections.reverse(scc);
+                        sccs.add(scc);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Havlak's loop nesting forest construction ("Nesting of Reducible and
+     * Irreducible Loops", TOPLAS 1997), using a union-find over pre-order numbers.
+     */
+    private void havlak(int[] byPreorder, int reachable) {
+        // all indices below are pre-order numbers of reachable vertices
+        int[] unionFind = new int[reachable];
+        int[] header = new int[reachable];
+        boolean[] isHeader = new boolean[reachable];
+        boolean[] irreducible = new boolean[reachable];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Loop<V>[] loopOf = new Loop[reachable];
+        List<List<Integer>> backPreds = new ArrayList<>(reachable);
+        List<List<Integer>> nonBackPreds = new ArrayList<>(reachable);
+        // -1 means no enclosing loop; the root may itself be a loop header
+        Arrays.fill(header, -1);
+        for (int w = 0; w < reachable; ++w) {
+            unionFind[w] = w;
+            backPreds.add(new ArrayList<>(2));
+            nonBackPreds.add(new ArrayList<>(2));
+            int vw = byPreorder[w];
+            for (int p: preds[vw]) {
+                if (preorder[p] < 0)
+                    continue;
+                if (isAncestor(vw, p))
+                    backPreds.get(w).add(preorder[p]);
+                else
+                    nonBackPreds.get(w).add(preorder[p]);
+            }
+        }
+        int[] inPool = new int[reachable];
+        Arrays.fill(inPool, -1);
+        List<Integer> nodePool = new ArrayList<>();
+        List<Integer> workList = new ArrayList<>();
+        for (int w = reachable - 1; w >= 0; --w) {
+            nodePool.clear();
+            boolean selfLoop = false;
+            for (int v: backPreds.get(w)) {
+                if (v == w) {
+                    selfLoop = true;
+                    continue;
+                }
+                int root = find(unionFind, v);
+                if (inPool[root] != w) {
+                    inPool[root] = w;
+                    nodePool.add(root);
+                }
+            }
+            workList.clear();
+            workList.addAll(nodePool);
+            while (!workList.isEmpty()) {
+                int x = workList.remove(workList.size() - 1);
+                for (int y: nonBackPreds.get(x)) {
+                    int ydash = find(unionFind, y);
+                    if (!isAncestor(byPreorder[w], byPreorder[ydash])) {
+                        irreducible[w] = true;
+                        nonBackPreds.get(w).add(ydash);
+                    } else if (ydash != w && inPool[ydash] != w) {
+                        inPool[ydash] = w;
+                        nodePool.add(ydash);
+                        workList.add(ydash);
+                    }
+                }
+            }
+            if (!nodePool.isEmpty() || selfLoop) {
+                isHeader[w] = true;
+                Loop<V> loop = new Loop<>(vertices.get(byPreorder[w]), !irreducible[w]);
+                loopOf[w] = loop;
+                for (int x: nodePool) {
+                    header[x] = w;
+                    unionFind[x] = w;
+                    if (isHeader[x])
+                        loopOf[x].parent = loop;
+                }
+            }
+        }
+        // innermost loop of each vertex, and loops in pre-order of headers
+        for (int w = 0; w < reachable; ++w) {
+            Loop<V> loop;
+            if (isHeader[w]) {
+                loop = loopOf[w];
+                loop.depth = loop.parent == null ? 1 : loop.parent.depth + 1;
+                if (loop.parent != null)
+                    loop.parent.children.add(loop);
+                loops.add(loop);
+            } else
+                loop = header[w] < 0 ? null : loopOf[header[w]];
+            innermostLoop[byPreorder[w]] = loop;
+            for (Loop<V> outer = loop; outer != null; outer = outer.parent)
+                outer.nodes.add(vertices.get(byPreorder[w]));
+        }
+    }
+
+    private static int find(int[] unionFind, int v) {
+        int root = v;
+        while (unionFind[root] != root)
+            root = unionFind[root];
+        while (unionFind[v] != root) {
+            int next = unionFind[v];
+            unionFind[v] = root;
+            v = next;
+        }
+        return root;
+    }
+
+    /**
+     * A loop of the loop nesting forest.
+     * The nodes of a loop include the nodes of all its nested loops.
+     * Irreducible loops have multiple entries; the header is the entry
+     * visited first by the depth-first search.
+     */
+    public static class Loop<V> {
+
+        private final V header;
+        private final boolean reducible;
+        private final List<V> nodes;
+        private final List<Loop<V>> children;
+        private Loop<V> parent;
+        private int depth;
+
+        private Loop(V header, boolean reducible) {
+            this.header = header;
+            this.reducible = reducible;
+            this.nodes = new ArrayList<>();
+            this.children = new ArrayList<>();
+            this.parent = null;
+            this.depth = 1;
+        }
+
+        public V getHeader() {
+            return header;
+        }
+
+        public boolean isReducible() {
+            return reducible;
+        }
+
+        /**
+         * Returns all nodes of this loop (including nested loops), in pre-order.
+         */
+        public List<V> getNodes() {
+            return Collections.unmodifiableList(nodes);
+        }
+
+        public List<Loop<V>> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public Loop<V> getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the nesting depth of this loop; outermost loops have depth 1.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        @Override
+        public String toString() {
+            return "Loop{header: " + header + ", size: " + nodes.size() + ", depth: " + depth + "}";
+        }
+    }
+}
@@ -23,7 +23,12 @@ public class DEPEdge {
 
     public enum Type {
         CTRL ("control flow"),
-        DATA ("data flow");
+        DATA ("data flow"),
+        // interprocedural edges of system dependence graphs
+        CALL ("call"),
+        PARAM_IN ("parameter in"),
+        PARAM_OUT ("parameter out"),
+        SUMMARY ("summary");
 
         private String type;
 
@@ -4,7 +4,7 @@ package srctoolkit.janalysis.dg;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -12,17 +12,33 @@ import java.util.Set;
 /**
  * Class type of Control Flow (CF) nodes.
  * 
+ * DEF, USE and self-flow sets are stored as sorted arrays of variable IDs,
+ * which are interned by the symbol table of the node; all nodes of a method
+ * should share a single symbol table, so their IDs are comparable.
+ * The ID-based API allows iterating these sets without any allocation;
+ * the String-based API is a thin view on top of it.
+ * 
  * @author Seyed Mohammad Ghaffarian
  */
 public class DEPNode {
 	private Map<String, Object> properties;
-	private Set<String> DEFs, USEs, selfFlows;
+	private SymbolTable symbols;
+	private IdSet DEFs, USEs, selfFlows;
 
 	
 	public DEPNode() {
-		DEFs = new HashSet<>();
-		USEs = new HashSet<>();
-		selfFlows = new HashSet<>();
+		this(null);
+	}
+	
+	/**
+	 * Create a node with the given symbol table;
+	 * if null, a new symbol table is created on the first use.
+	 */
+	public DEPNode(SymbolTable symbols) {
+		this.symbols = symbols;
+		DEFs = new IdSet();
+		USEs = new IdSet();
+		selfFlows = new IdSet();
 		properties = new LinkedHashMap<>();
 	}
 	
@@ -51,43 +67,139 @@ public class DEPNode {
 	}
 
 	public void setRuleCtx(ParserRuleContext ctx) {
+		properties.remove("rulekey");
 		properties.put("rulectx", ctx);
 	}
     
+    /**
+     * Returns the rule-context of this node; null if not set, or if it is released.
+     */
     public ParserRuleContext getRuleCtx() {
         return (ParserRuleContext) getProperty("rulectx");
     }
 
+	/**
+	 * Returns the key of the rule-context of this node; this is kept after the rule-context is released.
+	 */
+	public RuleKey getRuleKey() {
+		RuleKey key = (RuleKey) properties.get("rulekey");
+		return key != null ? key : RuleKey.of(getRuleCtx());
+	}
+
+	/**
+	 * Release the rule-context of this node, and only keep its key;
+	 * so this node does not keep the parse-tree (and its tokens) alive.
+	 */
+	public void releaseRuleCtx() {
+		ParserRuleContext ctx = (ParserRuleContext) properties.remove("rulectx");
+		if (ctx != null)
+			properties.put("rulekey", RuleKey.of(ctx));
+	}
+
+	public SymbolTable getSymbolTable() {
+		if (symbols == null)
+			symbols = new SymbolTable();
+		return symbols;
+	}
+	
+	/**
+	 * Set the symbol table of this node;
+	 * any existing DEF/USE/self-flow is re-interned by the given table.
+	 */
+	public void setSymbolTable(SymbolTable table) {
+		if (table == symbols)
+			return;
+		if (symbols != null) {
+			DEFs = DEFs.reintern(symbols, table);
+			USEs = USEs.reintern(symbols, table);
+			selfFlows = selfFlows.reintern(symbols, table);
+		}
+		symbols = table;
+	}
+
 	public boolean addDEF(String var) {
-		return DEFs.add(var);
+		return DEFs.add(getSymbolTable().intern(var));
+	}
+
+	public boolean addDEF(int id) {
+		return DEFs.add(id);
 	}
 
 	public boolean hasDEF(String var) {
-		return DEFs.contains(var);
+		return symbols != null && DEFs.contains(symbols.indexOf(var));
+	}
+
+	public boolean hasDEF(int id) {
+		return DEFs.contains(id);
+	}
+
+	public int getDEFCount() {
+		return DEFs.size;
+	}
+
+	/**
+	 * Returns the ID of the i-th DEF of this node (in order of IDs).
+	 */
+	public int getDEF(int i) {
+		return DEFs.ids[i];
 	}
 
 	public String[] getAllDEFs() {
-		return DEFs.toArray(new String[DEFs.size()]);
+		return DEFs.toArray(symbols);
 	}
 
 	public boolean addUSE(String var) {
-		return USEs.add(var);
+		return USEs.add(getSymbolTable().intern(var));
+	}
+
+	public boolean addUSE(int id) {
+		return USEs.add(id);
 	}
 
 	public boolean hasUSE(String var) {
-		return USEs.contains(var);
+		return symbols != null && USEs.contains(symbols.indexOf(var));
+	}
+
+	public boolean hasUSE(int id) {
+		return USEs.contains(id);
+	}
+
+	public int getUSECount() {
+		return USEs.size;
+	}
+
+	/**
+	 * Returns the ID of the i-th USE of this node (in order of IDs).
+	 */
+	public int getUSE(int i) {
+		return USEs.ids[i];
 	}
 
 	public String[] getAllUSEs() {
-		return USEs.toArray(new String[USEs.size()]);
+		return USEs.toArray(symbols);
 	}
 
 	public boolean addSelfFlow(String var) {
-		return selfFlows.add(var);
+		return selfFlows.add(getSymbolTable().intern(var));
+	}
+
+	public boolean addSelfFlow(int id) {
+		return selfFlows.add(id);
+	}
+
+	public int getSelfFlowCount() {
+		return selfFlows.size;
+	}
+
+	/**
+	 * Returns the ID of the i-th self-flow of this node (in order of IDs).
+	 */
+	public int getSelfFlow(int i) {
+		return selfFlows.ids[i];
 	}
 
 	public String[] getAllSelfFlows() {
-		return selfFlows.toArray(new String[selfFlows.size()]);
+		return selfFlows.toArray(symbols);
 	}
 	
 	public void setProperty(String key, Object value) {
@@ -107,4 +219,46 @@ public class DEPNode {
 		return (Integer) properties.get("line") + ": " + 
 				(String) properties.get("code");
 	}
+	
+	/**
+	 * A small set of variable IDs, stored as a sorted array.
+	 */
+	private static class IdSet {
+		
+		private static final int[] EMPTY = new int[0];
+		
+		private int[] ids = EMPTY;
+		private int size = 0;
+		
+		boolean add(int id) {
+			int index = Arrays.binarySearch(ids, 0, size, id);
+			if (index >= 0)
+				return false;
+			index = -(index + 1);
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, Math.max(4, 2 * size));
+			System.arraycopy(ids, index, ids, index + 1, size - index);
+			ids[index] = id;
+			++size;
+			return true;
+		}
+		
+		boolean contains(int id) {
+			return id >= 0 && Arrays.binarySearch(ids, 0, size, id) >= 0;
+		}
+		
+		String[] toArray(SymbolTable symbols) {
+			String[] array = new String[size];
+			for (int i = 0; i < size; ++i)
+				array[i] = symbols.getSymbol(ids[i]);
+			return array;
+		}
+		
+		IdSet reintern(SymbolTable from, SymbolTable to) {
+			IdSet set = new IdSet();
+			for (int i = 0; i < size; ++i)
+				set.add(to.intern(from.getSymbol(ids[i])));
+			return set;
+		}
+	}
 }
@@ -0,0 +1,51 @@
+package srctoolkit.janalysis.dg;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * Compact and stable key of a parser rule-context; i.e. the rule type,
+ * and the character offsets of its first and last tokens in the source.
+ * A key does not reference the parse-tree, so it can be kept by graph nodes
+ * after the parse-tree is released; keys of the same source are comparable.
+ */
+public final class RuleKey {
+
+	public final int RULE_INDEX;
+	public final int START_OFFSET;
+	public final int STOP_OFFSET;
+
+	public RuleKey(int ruleIndex, int startOffset, int stopOffset) {
+		RULE_INDEX = ruleIndex;
+		START_OFFSET = startOffset;
+		STOP_OFFSET = stopOffset;
+	}
+
+	/**
+	 * Returns the key of the given rule-context; null if the context is null.
+	 */
+	public static RuleKey of(ParserRuleContext ctx) {
+		if (ctx == null)
+			return null;
+		int start = ctx.getStart() == null ? -1 : ctx.getStart().getStartIndex();
+		int stop = ctx.getStop() == null ? -1 : ctx.getStop().getStopIndex();
+		return new RuleKey(ctx.getRuleIndex(), start, stop);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof RuleKey))
+			return false;
+		RuleKey key = (RuleKey) obj;
+		return RULE_INDEX == key.RULE_INDEX && START_OFFSET == key.START_OFFSET && STOP_OFFSET == key.STOP_OFFSET;
+	}
+
+	@Override
+	public int hashCode() {
+		return (RULE_INDEX * 31 + START_OFFSET) * 31 + STOP_OFFSET;
+	}
+
+	@Override
+	public String toString() {
+		return RULE_INDEX + "@" + START_OFFSET + ":" + STOP_OFFSET;
+	}
+}
@@ -0,0 +1,58 @@
+package srctoolkit.janalysis.dg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Symbol table which interns variable names to dense integer IDs.
+ * A symbol table is shared by all nodes of a method, so the DEF/USE
+ * sets of these nodes can be stored and compared as integer IDs.
+ * IDs are assigned in the order symbols are first interned, starting from zero.
+ */
+public class SymbolTable {
+
+	private final Map<String, Integer> ids;
+	private final List<String> symbols;
+
+	public SymbolTable() {
+		ids = new HashMap<>();
+		symbols = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the ID of the given symbol; a new ID is assigned if the symbol is not interned yet.
+	 */
+	public int intern(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			id = symbols.size();
+			ids.put(symbol, id);
+			symbols.add(symbol);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the given symbol, or -1 if it is not interned.
+	 */
+	public int indexOf(String symbol) {
+		Integer id = ids.get(symbol);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the symbol with the given ID.
+	 */
+	public String getSymbol(int id) {
+		return symbols.get(id);
+	}
+
+	/**
+	 * Returns the number of interned symbols.
+	 */
+	public int size() {
+		return symbols.size();
+	}
+}
@@ -0,0 +1,64 @@
+package srctoolkit.janalysis.dg.cfg;
+
+import srctoolkit.janalysis.dg.DEPNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Basic block of a Control Flow Graph;
+ * a maximal chain of statements with a single entry and a single exit.
+ * Only the first statement can have multiple (or no) predecessors,
+ * and only the last statement can have multiple (or no) successors.
+ */
+public class BasicBlock {
+
+	private final int id;
+	private final List<DEPNode> statements;
+
+	BasicBlock(int id) {
+		this.id = id;
+		this.statements = new ArrayList<>();
+	}
+
+	void add(DEPNode statement) {
+		statements.add(statement);
+	}
+
+	/**
+	 * Returns the ID of this block; blocks are numbered from 0,
+	 * and the block containing the CFG entry has ID 0.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the statements of this block, in control-flow order.
+	 */
+	public List<DEPNode> getStatements() {
+		return Collections.unmodifiableList(statements);
+	}
+
+	public DEPNode getFirst() {
+		return statements.get(0);
+	}
+
+	public DEPNode getLast() {
+		return statements.get(statements.size() - 1);
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	public int getLineOfCode() {
+		return getFirst().getLineOfCode();
+	}
+
+	@Override
+	public String toString() {
+		return "B" + id + ": " + getFirst() + (statements.size() > 1 ? " ... " + getLast() : "");
+	}
+}
@@ -0,0 +1,245 @@
+package srctoolkit.janalysis.dg.cfg;
+
+import srctoolkit.janalysis.common.graph.AbstractProgramGraph;
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.utils.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Basic-block view of a Control Flow Graph.
+ * Single-entry single-exit chains of statements (connected by unlabeled
+ * control-flow edges) are collapsed into basic blocks; the edges between
+ * blocks are the CFG edges leaving the last statement of each block.
+ * Analyses can run over blocks, and map results back to statements
+ * using <tt>getBlock</tt> and <tt>mapToStatements</tt>.
+ *
+ * This view is computed from, but does not track, the given CFG;
+ * use <tt>ControlFlowGraph.getBasicBlocks()</tt> for an up-to-date view.
+ */
+public class BasicBlockGraph extends AbstractProgramGraph<BasicBlock, CFEdge> {
+
+	private final ControlFlowGraph cfg;
+	private final List<BasicBlock> blocks;
+	private final Map<DEPNode, BasicBlock> blockOf;
+	private final Map<DEPNode, Integer> positionOf;
+
+	public BasicBlockGraph(ControlFlowGraph cfg) {
+		super();
+		this.cfg = cfg;
+		this.blocks = new ArrayList<>();
+		this.blockOf = new IdentityHashMap<>();
+		this.positionOf = new IdentityHashMap<>();
+		properties.put("label", "BBG");
+		properties.put("type", "Basic-Block Graph");
+		build();
+	}
+
+	public ControlFlowGraph getCFG() {
+		return cfg;
+	}
+
+	/**
+	 * Returns the block containing the CFG entry.
+	 */
+	public BasicBlock getEntry() {
+		return blocks.isEmpty() ? null : blocks.get(0);
+	}
+
+	/**
+	 * Returns all blocks, ordered by their IDs.
+	 */
+	public List<BasicBlock> getBlocks() {
+		return Collections.unmodifiableList(blocks);
+	}
+
+	/**
+	 * Returns the block containing the given statement, or null if there is no such statement.
+	 */
+	public BasicBlock getBlock(DEPNode statement) {
+		return blockOf.get(statement);
+	}
+
+	/**
+	 * Returns the index of the given statement within its block, or -1 if there is no such statement.
+	 */
+	public int getPosition(DEPNode statement) {
+		Integer position = positionOf.get(statement);
+		return position == null ? -1 : position;
+	}
+
+	/**
+	 * Map the given per-block results back to statements;
+	 * each statement is mapped to the result of its block.
+	 */
+	public <T> Map<DEPNode, T> mapToStatements(Map<BasicBlock, T> blockResults) {
+		Map<DEPNode, T> results = new IdentityHashMap<>();
+		for (Entry<BasicBlock, T> entry: blockResults.entrySet())
+			for (DEPNode statement: entry.getKey().getStatements())
+				results.put(statement, entry.getValue());
+		return results;
+	}
+
+	private void build() {
+		DEPNode entry = cfg.getEntry();
+		if (entry == null)
+			return;
+		// blocks are discovered in depth-first order from the entry;
+		// any remaining (unreachable) statements start their own blocks
+		Deque<DEPNode> stack = new ArrayDeque<>();
+		stack.push(entry);
+		while (!stack.isEmpty()) {
+			DEPNode leader = stack.pop();
+			if (blockOf.containsKey(leader))
+				continue;
+			BasicBlock block = newBlock(leader);
+			DEPNode last = leader;
+			DEPNode next;
+			while ((next = successorInBlock(last)) != null && !blockOf.containsKey(next)) {
+				addToBlock(block, next);
+				last = next;
+			}
+			List<DEPNode> targets = new ArrayList<>();
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(last);
+			while (outs.hasNext())
+				targets.add(outs.next().target);
+			for (int i = targets.size() - 1; i >= 0; --i)
+				stack.push(targets.get(i));
+		}
+		Iterator<DEPNode> nodes = cfg.allVerticesIterator();
+		while (nodes.hasNext()) {
+			DEPNode node = nodes.next();
+			if (!blockOf.containsKey(node)) {
+				BasicBlock block = newBlock(node);
+				DEPNode last = node;
+				DEPNode next;
+				while ((next = successorInBlock(last)) != null && !blockOf.containsKey(next)) {
+					addToBlock(block, next);
+					last = next;
+				}
+			}
+		}
+		for (BasicBlock block: blocks) {
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(block.getLast());
+			while (outs.hasNext()) {
+				Edge<DEPNode, CFEdge> out = outs.next();
+				addEdge(new Edge<>(block, out.label, blockOf.get(out.target)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the successor of the given statement if it belongs to the same block, otherwise null.
+	 */
+	private DEPNode successorInBlock(DEPNode node) {
+		if (cfg.getOutDegree(node) != 1)
+			return null;
+		Edge<DEPNode, CFEdge> out = cfg.outgoingEdgesIterator(node).next();
+		if (out.target == node || out.target == cfg.getEntry() || cfg.getInDegree(out.target) != 1)
+			return null;
+		if (!out.label.getLabel().equals(CFEdge.EPSILON))
+			return null;
+		return out.target;
+	}
+
+	private BasicBlock newBlock(DEPNode leader) {
+		BasicBlock block = new BasicBlock(blocks.size());
+		blocks.add(block);
+		addVertex(block);
+		addToBlock(block, leader);
+		return block;
+	}
+
+	private void addToBlock(BasicBlock block, DEPNode statement) {
+		positionOf.put(statement, block.size());
+		blockOf.put(statement, block);
+		block.add(statement);
+	}
+
+	@Override
+	public String exportDOT() {
+		StringBuilder dot = new StringBuilder();
+		dot.append("digraph BBG {\n");
+		dot.append("  // graph-vertices\n");
+		for (BasicBlock block: blocks) {
+			StringBuilder label = new StringBuilder("  [shape=box, label=\"");
+			for (DEPNode node: block.getStatements()) {
+				if (node.getLineOfCode() > 0)
+					label.append(node.getLineOfCode()).append(":  ");
+				label.append(StringUtils.escape(node.getCode())).append("\\l");
+			}
+			label.append("\"];");
+			dot.append("  b" + block.getId() + label.toString() + "\n");
+		}
+		dot.append("  // graph-edges\n");
+		for (Edge<BasicBlock, CFEdge> edge: allEdges) {
+			String src = "b" + edge.source.getId();
+			String trg = "b" + edge.target.getId();
+			if (edge.label.getLabel().equals(CFEdge.EPSILON))
+				dot.append("  " + src + " -> " + trg + ";\n");
+			else
+				dot.append("  " + src + " -> " + trg + "  [label=\"" + edge.label.getLabel() + "\"];\n");
+		}
+		dot.append("  // end-of-graph\n}\n");
+		return dot.toString();
+	}
+
+	@Override
+	public String exportJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"directed\": true,\n");
+		json.append("  \"multigraph\": true,\n");
+		for (Entry<String, String> property: properties.entrySet()) {
+			switch (property.getKey()) {
+				case "directed":
+					continue;
+				default:
+					json.append("  \"" + property.getKey() + "\": \"" + property.getValue() + "\",\n");
+			}
+		}
+		json.append("  \"nodes\": [\n");
+		for (BasicBlock block: blocks) {
+			json.append("    {\n");
+			json.append("      \"id\": " + block.getId() + ",\n");
+			json.append("      \"line\": " + block.getLineOfCode() + ",\n");
+			json.append("      \"statements\": [");
+			for (int i = 0; i < block.size(); ++i) {
+				DEPNode node = block.getStatements().get(i);
+				if (i > 0)
+					json.append(", ");
+				json.append("{\"line\": " + node.getLineOfCode() + ", \"label\": \"" + StringUtils.escape(node.getCode()) + "\"}");
+			}
+			json.append("]\n");
+			if (block.getId() == blocks.size() - 1)
+				json.append("    }\n");
+			else
+				json.append("    },\n");
+		}
+		json.append("  ],\n\n  \"edges\": [\n");
+		int edgeCounter = 0;
+		for (Edge<BasicBlock, CFEdge> edge: allEdges) {
+			json.append("    {\n");
+			json.append("      \"id\": " + edgeCounter + ",\n");
+			json.append("      \"source\": " + edge.source.getId() + ",\n");
+			json.append("      \"target\": " + edge.target.getId() + ",\n");
+			json.append("      \"label\": \"" + edge.label.getLabel() + "\"\n");
+			++edgeCounter;
+			if (edgeCounter == allEdges.size())
+				json.append("    }\n");
+			else
+				json.append("    },\n");
+		}
+		json.append("  ]\n}\n");
+		return json.toString();
+	}
+}
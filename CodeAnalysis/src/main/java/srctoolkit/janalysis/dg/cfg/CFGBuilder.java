@@ -8,7 +8,6 @@ import srctoolkit.janalysis.common.antlrparser.JavaLexer;
 import srctoolkit.janalysis.common.antlrparser.JavaParser;
 import srctoolkit.janalysis.dg.DEPEdge;
 import srctoolkit.janalysis.dg.DEPNode;
-import srctoolkit.janalysis.common.graph.Digraph;
 import srctoolkit.janalysis.common.graph.Edge;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -20,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A Control Flow Graph (CFG) builder for Java programs.
@@ -31,19 +31,39 @@ import java.util.*;
 public class CFGBuilder {
 
 	public static List<ControlFlowGraph> buildWithCode(String code) throws IOException {
+		List<ControlFlowGraph> cfgs = new ArrayList<>();
+		buildWithCode(code, cfgs::add);
+		return cfgs;
+	}
+	
+	/**
+	 * ‌Build the Control Flow Graphs (CFG) for the given Java source code,
+	 * and pass each CFG to the given consumer as soon as it is built.
+	 */
+	public static void buildWithCode(String code, Consumer<ControlFlowGraph> consumer) throws IOException {
 		Logger.info("Parsing source code ... ");
 		ANTLRInputStream input = new ANTLRInputStream(code);
 		JavaLexer lexer = new JavaLexer(input);
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		JavaParser parser = new JavaParser(tokens);
 		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree);
+		build(parseTree, consumer);
 	}
 	
 	/**
 	 * ‌Build and return the Control Flow Graph (CFG) for the given Java source file.
 	 */
 	public static List<ControlFlowGraph> build(String file) throws IOException {
+		List<ControlFlowGraph> cfgs = new ArrayList<>();
+		build(file, cfgs::add);
+		return cfgs;
+	}
+	
+	/**
+	 * ‌Build the Control Flow Graphs (CFG) for the given Java source file,
+	 * and pass each CFG to the given consumer as soon as it is built.
+	 */
+	public static void build(String file, Consumer<ControlFlowGraph> consumer) throws IOException {
 		Logger.info("Parsing source file ... ");
 		InputStream inFile = new FileInputStream(file);
 		ANTLRInputStream input = new ANTLRInputStream(inFile);
@@ -51,64 +71,37 @@ public class CFGBuilder {
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		JavaParser parser = new JavaParser(tokens);
 		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree);
+		build(parseTree, consumer);
 	}
 	
 	/**
-	 * ‌Build and return the Control Flow Graph (CFG) for the given Parse-Tree.
-	 * The 'ctxProps' map includes contextual-properties for particular nodes 
-	 * in the parse-tree, which can be used for linking this graph with other 
-	 * graphs by using the same parse-tree and the same contextual-properties.
+	 * ‌Build and return the Control Flow Graphs (CFG) for the given Parse-Tree;
+	 * one CFG per method, constructor, and initializer block, in source order.
 	 */
 	public static List<ControlFlowGraph> build(ParseTree tree) {
-		Digraph<DEPNode, CFEdge> wholeCFG = new Digraph<>();
-		Map<DEPNode, List<DEPNode>> entry2params = new HashMap<>();
-		ControlFlowVisitor visitor = new ControlFlowVisitor(wholeCFG, entry2params);
-		visitor.visit(tree);
-
-		return splitGraph(wholeCFG, entry2params);
-	}
-
-	public static List<ControlFlowGraph> splitGraph(Digraph<DEPNode, CFEdge> wholeCFG, Map<DEPNode, List<DEPNode>> entry2params) {
 		List<ControlFlowGraph> cfgs = new ArrayList<>();
-		for (Map.Entry<DEPNode, List<DEPNode>> entry: entry2params.entrySet()) {
-			DEPNode methodEntry = entry.getKey();
-			List<DEPNode> params = entry.getValue();
-			ControlFlowGraph cfg = new ControlFlowGraph(methodEntry.getCode());
-			cfg.setEntry(methodEntry);
-//			cfg.setParams(params);
-			cfgs.add(cfg);
-
-			Deque<DEPNode> waiting = new ArrayDeque<>();
-			Set<DEPNode> visitedNodes = new HashSet<>();
-			cfg.addVertex(methodEntry);
-			waiting.push(methodEntry);
-			visitedNodes.add(methodEntry);
-			while (!waiting.isEmpty()) {
-				DEPNode current = waiting.pop();
-				Iterator<Edge<DEPNode, CFEdge>> outEdges = wholeCFG.outgoingEdgesIterator(current);
-				while (outEdges.hasNext()) {
-					Edge<DEPNode, CFEdge> edge = outEdges.next();
-					if (!visitedNodes.contains(edge.target)) {
-						cfg.addVertex(edge.target);
-						waiting.push(edge.target);
-						visitedNodes.add(edge.target);
-					}
-					if (visitedNodes.contains(edge.target))
-						cfg.addEdge(edge);
-				}
-			}
-		}
+		build(tree, cfgs::add);
 		return cfgs;
 	}
 	
+	/**
+	 * ‌Build the Control Flow Graphs (CFG) for the given Parse-Tree.
+	 * Each CFG is built directly, and is passed to the given consumer
+	 * as soon as its method declaration is visited.
+	 */
+	public static void build(ParseTree tree, Consumer<ControlFlowGraph> consumer) {
+		ControlFlowVisitor visitor = new ControlFlowVisitor(consumer);
+		visitor.visit(tree);
+	}
+	
 	/**
 	 * Visitor-class which constructs the CFG by walking the parse-tree.
 	 */
 	private static class ControlFlowVisitor extends JavaBaseVisitor<Void> {
 		
-		private Digraph<DEPNode, CFEdge> cfg;
-		private Map<DEPNode, List<DEPNode>> entry2params;
+		private ControlFlowGraph cfg;
+		private final Consumer<ControlFlowGraph> consumer;
+		private final Deque<GraphState> outerStates;
 		private Deque<DEPNode> preNodes;
 		private Deque<String> preEdges;
 		private Deque<Block> loopBlocks;
@@ -121,7 +114,7 @@ public class CFGBuilder {
 
 		private DEPNode preRetForTry = null; // edge case of return statement in try block 
 
-		public ControlFlowVisitor(Digraph<DEPNode, CFEdge> cfg, Map<DEPNode, List<DEPNode>> entry2params) {
+		public ControlFlowVisitor(Consumer<ControlFlowGraph> consumer) {
 			preNodes = new ArrayDeque<>();
 			preEdges = new ArrayDeque<>();
 			loopBlocks = new ArrayDeque<>();
@@ -130,10 +123,9 @@ public class CFGBuilder {
 			casesQueue = new ArrayDeque<>();
 			classNames = new ArrayDeque<>();
 			dontPop = false;
-			this.cfg = cfg;
-			this.entry2params = entry2params;
-			//
-
+			this.cfg = null;
+			this.consumer = consumer;
+			outerStates = new ArrayDeque<>();
 		}
 
 		/**
@@ -148,6 +140,72 @@ public class CFGBuilder {
 			dontPop = false;
 		}
 		
+		/**
+		 * Start building a new CFG with the given entry node.
+		 * If a CFG is already being built (e.g. for local classes inside a method body),
+		 * the state of the outer CFG is saved and is restored by 'endGraph()'.
+		 */
+		private void beginGraph(DEPNode entry) {
+			if (cfg != null) {
+				outerStates.push(new GraphState(this));
+				preNodes = new ArrayDeque<>();
+				preEdges = new ArrayDeque<>();
+				loopBlocks = new ArrayDeque<>();
+				labeledBlocks = new ArrayList<>();
+				tryBlocks = new ArrayDeque<>();
+				casesQueue = new ArrayDeque<>();
+				preRetForTry = null;
+			}
+			init();
+			cfg = new ControlFlowGraph(entry.getCode());
+			cfg.setEntry(entry);
+			cfg.addVertex(entry);
+		}
+		
+		/**
+		 * Finish the current CFG, and pass it to the consumer.
+		 * Nodes which are not reachable from the entry are removed.
+		 */
+		private void endGraph() {
+			Set<DEPNode> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+			Deque<DEPNode> waiting = new ArrayDeque<>();
+			reachable.add(cfg.getEntry());
+			waiting.push(cfg.getEntry());
+			while (!waiting.isEmpty()) {
+				Iterator<Edge<DEPNode, CFEdge>> outEdges = cfg.outgoingEdgesIterator(waiting.pop());
+				while (outEdges.hasNext()) {
+					DEPNode next = outEdges.next().target;
+					if (reachable.add(next))
+						waiting.push(next);
+				}
+			}
+			if (reachable.size() < cfg.vertexCount()) {
+				for (DEPNode node: cfg.copyVertexSet()) {
+					if (reachable.contains(node))
+						continue;
+					for (Edge<DEPNode, CFEdge> edge: cfg.copyOutgoingEdges(node))
+						cfg.removeEdge(edge);
+					for (Edge<DEPNode, CFEdge> edge: cfg.copyIncomingEdges(node))
+						cfg.removeEdge(edge);
+					cfg.removeVertex(node);
+				}
+			}
+			consumer.accept(cfg);
+			cfg = null;
+			if (!outerStates.isEmpty()) {
+				GraphState state = outerStates.pop();
+				cfg = state.cfg;
+				preNodes = state.preNodes;
+				preEdges = state.preEdges;
+				loopBlocks = state.loopBlocks;
+				labeledBlocks = state.labeledBlocks;
+				tryBlocks = state.tryBlocks;
+				casesQueue = state.casesQueue;
+				dontPop = state.dontPop;
+				preRetForTry = state.preRetForTry;
+			}
+		}
+		
 		/**
 		 * Add contextual properties to the given node.
 		 * This will first check to see if there is any property for the 
@@ -191,10 +249,7 @@ public class CFGBuilder {
 		public Void visitClassBodyDeclaration(JavaParser.ClassBodyDeclarationContext ctx) {
 			// classBodyDeclaration :  ';'  |  'static'? block  |  modifier* memberDeclaration
 			if (ctx.block() != null) {
-				init();
-				//
 				DEPNode block = new DEPNode();
-				entry2params.put(block, new ArrayList<>());
 				if (ctx.getChildCount() == 2 && ctx.getChild(0).getText().equals("static")) {
 					block.setLineOfCode(ctx.getStart().getLine());
 					block.setCode("static");
@@ -203,13 +258,16 @@ public class CFGBuilder {
 					block.setCode("block");
 				}
 				addContextualProperty(block, ctx);
-				cfg.addVertex(block);
+				beginGraph(block);
 				//
 				block.setProperty("name", "static-block");
 				block.setProperty("class", classNames.peek());
 				//
 				preNodes.push(block);
 				preEdges.push(CFEdge.EPSILON);
+				visitChildren(ctx);
+				endGraph();
+				return null;
 			}
 			return visitChildren(ctx);
 		}
@@ -217,46 +275,21 @@ public class CFGBuilder {
 		@Override
 		public Void visitConstructorDeclaration(JavaParser.ConstructorDeclarationContext ctx) {
 			// Identifier formalParameters ('throws' qualifiedNameList)?  constructorBody
-			init();
-			//
 			DEPNode entry = new DEPNode();
-			List<DEPNode> params = new ArrayList<>();
-			entry2params.put(entry, params);
 			entry.setLineOfCode(ctx.getStart().getLine());
 			entry.setCode(ctx.Identifier().getText() + ' ' + getOriginalCodeText(ctx.formalParameters()));
 			addContextualProperty(entry, ctx);
-			cfg.addVertex(entry);
+			beginGraph(entry);
 			//
 			entry.setProperty("name", ctx.Identifier().getText());
 			entry.setProperty("class", classNames.peek());
 			//
 
-			if (ctx.formalParameters().formalParameterList() != null) {
-				for (JavaParser.FormalParameterContext prm :
-						ctx.formalParameters().formalParameterList().formalParameter()) {
-					DEPNode param = new DEPNode();
-					param.setLineOfCode(prm.getStart().getLine());
-					param.setCode(getOriginalCodeText(prm));
-					addContextualProperty(param, prm);
-					param.setProperty("type", prm.typeType().getText());
-					param.setProperty("name", prm.variableDeclaratorId().Identifier().getText());
-					params.add(param);
-				}
-				JavaParser.LastFormalParameterContext lastParam = ctx.formalParameters().formalParameterList().lastFormalParameter();
-				if (lastParam != null) {
-					DEPNode param = new DEPNode();
-					param.setLineOfCode(lastParam.getStart().getLine());
-					param.setCode(getOriginalCodeText(lastParam));
-					addContextualProperty(param, lastParam);
-					param.setProperty("type", lastParam.typeType().getText());
-					param.setProperty("name", lastParam.variableDeclaratorId().Identifier().getText());
-					params.add(param);
-				}
-			}
-
 			preNodes.push(entry);
 			preEdges.push(CFEdge.EPSILON);
-			return visitChildren(ctx);
+			visitChildren(ctx);
+			endGraph();
+			return null;
 		}
 
 		@Override
@@ -264,11 +297,7 @@ public class CFGBuilder {
 			// methodDeclaration :
 			//   (typeType|'void') Identifier formalParameters ('[' ']')*
 			//     ('throws' qualifiedNameList)?  ( methodBody | ';' )
-			init();
-			//
 			DEPNode entry = new DEPNode();
-			List<DEPNode> params = new ArrayList<>();
-			entry2params.put(entry, params);
 			entry.setLineOfCode(ctx.getStart().getLine());
 			String retType = "void";
 			if (ctx.typeType() != null)
@@ -276,39 +305,18 @@ public class CFGBuilder {
 			String args = getOriginalCodeText(ctx.formalParameters());
 			entry.setCode(retType + " " + ctx.Identifier() + args);
 			addContextualProperty(entry, ctx);
-			cfg.addVertex(entry);
+			beginGraph(entry);
 			//
 			entry.setProperty("name", ctx.Identifier().getText());
 			entry.setProperty("class", classNames.peek());
 			entry.setProperty("type", retType);
 			//
 
-			if (ctx.formalParameters().formalParameterList() != null) {
-				for (JavaParser.FormalParameterContext prm :
-						ctx.formalParameters().formalParameterList().formalParameter()) {
-					DEPNode param = new DEPNode();
-					param.setLineOfCode(prm.getStart().getLine());
-					param.setCode(getOriginalCodeText(prm));
-					addContextualProperty(param, prm);
-					param.setProperty("type", prm.typeType().getText());
-					param.setProperty("name", prm.variableDeclaratorId().Identifier().getText());
-					params.add(param);
-				}
-				JavaParser.LastFormalParameterContext lastParam = ctx.formalParameters().formalParameterList().lastFormalParameter();
-				if (lastParam != null) {
-					DEPNode param = new DEPNode();
-					param.setLineOfCode(lastParam.getStart().getLine());
-					param.setCode(getOriginalCodeText(lastParam));
-					addContextualProperty(param, lastParam);
-					param.setProperty("type", lastParam.typeType().getText());
-					param.setProperty("name", lastParam.variableDeclaratorId().Identifier().getText());
-					params.add(param);
-				}
-			}
-
 			preNodes.push(entry);
 			preEdges.push(CFEdge.EPSILON);
-			return visitChildren(ctx);
+			visitChildren(ctx);
+			endGraph();
+			return null;
 		}
 
 		@Override
@@ -1033,5 +1041,34 @@ public class CFGBuilder {
 				this(start, end, "");
 			}
 		}
+
+		/**
+		 * The state of the visitor for an outer CFG, while the CFG of 
+		 * a nested method (e.g. of a local class) is being built.
+		 */
+		private static class GraphState {
+
+			final ControlFlowGraph cfg;
+			final Deque<DEPNode> preNodes;
+			final Deque<String> preEdges;
+			final Deque<Block> loopBlocks;
+			final List<Block> labeledBlocks;
+			final Deque<Block> tryBlocks;
+			final Queue<DEPNode> casesQueue;
+			final boolean dontPop;
+			final DEPNode preRetForTry;
+
+			GraphState(ControlFlowVisitor visitor) {
+				cfg = visitor.cfg;
+				preNodes = visitor.preNodes;
+				preEdges = visitor.preEdges;
+				loopBlocks = visitor.loopBlocks;
+				labeledBlocks = visitor.labeledBlocks;
+				tryBlocks = visitor.tryBlocks;
+				casesQueue = visitor.casesQueue;
+				dontPop = visitor.dontPop;
+				preRetForTry = visitor.preRetForTry;
+			}
+		}
 	}
 }
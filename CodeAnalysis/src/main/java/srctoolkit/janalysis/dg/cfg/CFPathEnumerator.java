@@ -0,0 +1,332 @@
+package srctoolkit.janalysis.dg.cfg;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.common.graph.GraphStructure;
+import srctoolkit.janalysis.dg.DEPNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Bounded enumeration of control-flow paths, from the entry of a CFG to its exits
+ * (i.e. nodes without successors). Paths are bounded by three limits:
+ *
+ *  - maximum path length; the number of nodes on a path,
+ *  - maximum loop unrolling; the number of back edges taken along a path,
+ *  - maximum path count; the number of paths enumerated by <tt>enumerate</tt>.
+ *
+ * Loops are unrolled by copying the CFG once per allowed back edge, where back
+ * edges lead to the next copy; this yields a DAG on which the number of paths
+ * from each node (given the remaining length) is counted once and memoized,
+ * so shared suffixes are never re-explored. Similar to Ball-Larus path numbering,
+ * paths are numbered in [0, countPaths()) without materializing them; a path can
+ * be decoded from its ID, and uniform random paths are sampled by decoding random IDs.
+ *
+ * Parallel edges between the same two nodes are considered as a single path step.
+ * Counts saturate at Long.MAX_VALUE; path IDs are only exact if <tt>isSaturated()</tt> is false.
+ */
+public class CFPathEnumerator {
+
+	public static final int DEFAULT_MAX_LENGTH = 64;
+	public static final int DEFAULT_MAX_UNROLL = 1;
+	public static final int DEFAULT_MAX_PATHS = 10000;
+
+	private final ControlFlowGraph cfg;
+	private final int maxLength;
+	private final int maxUnroll;
+	private final int maxPaths;
+
+	private final DEPNode[] nodes;
+	private final Map<DEPNode, Integer> indices;
+	private final int[][] succs;
+	private final boolean[][] backs;
+	private final boolean bounded;
+	private final long[][] counts;
+	private final long total;
+
+	public CFPathEnumerator(ControlFlowGraph cfg) {
+		this(cfg, DEFAULT_MAX_LENGTH, DEFAULT_MAX_UNROLL, DEFAULT_MAX_PATHS);
+	}
+
+	/**
+	 * Construct a path enumerator for the given CFG with the given limits.
+	 * Use Integer.MAX_VALUE for an unlimited path length or path count.
+	 */
+	public CFPathEnumerator(ControlFlowGraph cfg, int maxLength, int maxUnroll, int maxPaths) {
+		if (maxLength < 1 || maxUnroll < 0 || maxPaths < 0)
+			throw new IllegalArgumentException("Path length must be >= 1, and unrolling and path count must be >= 0!");
+		this.cfg = cfg;
+		this.maxLength = maxLength;
+		this.maxUnroll = maxUnroll;
+		this.maxPaths = maxPaths;
+		//
+		GraphStructure<DEPNode, CFEdge> structure = cfg.getStructure();
+		List<DEPNode> rpo = structure.getReversePostOrder();
+		int n = rpo.size();
+		nodes = rpo.toArray(new DEPNode[n]);
+		indices = new IdentityHashMap<>();
+		for (int i = 0; i < n; ++i)
+			indices.put(nodes[i], i);
+		succs = new int[n][];
+		backs = new boolean[n][];
+		for (int i = 0; i < n; ++i) {
+			List<Integer> targets = new ArrayList<>();
+			List<Boolean> isBack = new ArrayList<>();
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(nodes[i]);
+			while (outs.hasNext()) {
+				Edge<DEPNode, CFEdge> out = outs.next();
+				int target = indices.get(out.target);
+				if (!targets.contains(target)) {
+					targets.add(target);
+					isBack.add(structure.isBackEdge(out));
+				}
+			}
+			succs[i] = new int[targets.size()];
+			backs[i] = new boolean[targets.size()];
+			for (int k = 0; k < succs[i].length; ++k) {
+				succs[i][k] = targets.get(k);
+				backs[i][k] = isBack.get(k);
+			}
+		}
+		// the length dimension is only needed if some paths are longer than the limit
+		bounded = maxLength < longestPath();
+		counts = new long[(maxUnroll + 1) * n][bounded ? maxLength + 1 : 1];
+		countPaths(n);
+		total = n == 0 ? 0 : count(0, 0, startBudget());
+	}
+
+	/**
+	 * Returns the total number of bounded paths from the entry to any exit.
+	 */
+	public long countPaths() {
+		return total;
+	}
+
+	/**
+	 * Check whether the number of paths exceeds the range of long.
+	 */
+	public boolean isSaturated() {
+		return total == Long.MAX_VALUE;
+	}
+
+	/**
+	 * Enumerate bounded paths in order of their IDs, until the maximum path count is reached.
+	 * The list given to the consumer is a read-only view, which is only valid during the call;
+	 * consecutive paths share their prefix, so each step is only visited once per branch.
+	 * Returns the number of enumerated paths.
+	 */
+	public int enumerate(Consumer<List<DEPNode>> consumer) {
+		if (total == 0 || maxPaths == 0)
+			return 0;
+		int depth = bounded ? maxLength : nodes.length * (maxUnroll + 1);
+		int[] copyStack = new int[depth];
+		int[] nodeStack = new int[depth];
+		int[] budgetStack = new int[depth];
+		int[] nextStack = new int[depth];
+		List<DEPNode> path = new ArrayList<>();
+		List<DEPNode> view = Collections.unmodifiableList(path);
+		int top = 0;
+		copyStack[0] = 0;
+		nodeStack[0] = 0;
+		budgetStack[0] = startBudget();
+		nextStack[0] = 0;
+		path.add(nodes[0]);
+		++top;
+		int enumerated = 0;
+		while (top > 0) {
+			int frame = top - 1;
+			int v = nodeStack[frame];
+			if (succs[v].length == 0 && nextStack[frame] == 0) {
+				nextStack[frame] = 1;
+				consumer.accept(view);
+				if (++enumerated == maxPaths)
+					break;
+				continue;
+			}
+			boolean pushed = false;
+			while (nextStack[frame] < succs[v].length) {
+				int k = nextStack[frame]++;
+				int copy = copyStack[frame] + (backs[v][k] ? 1 : 0);
+				int budget = nextBudget(budgetStack[frame]);
+				if (copy > maxUnroll || count(copy, succs[v][k], budget) == 0)
+					continue;
+				copyStack[top] = copy;
+				nodeStack[top] = succs[v][k];
+				budgetStack[top] = budget;
+				nextStack[top] = 0;
+				path.add(nodes[succs[v][k]]);
+				++top;
+				pushed = true;
+				break;
+			}
+			if (!pushed) {
+				path.remove(path.size() - 1);
+				--top;
+			}
+		}
+		return enumerated;
+	}
+
+	/**
+	 * Decode the path with the given ID.
+	 *
+	 * @throws IllegalArgumentException if the ID is not in [0, countPaths()).
+	 */
+	public List<DEPNode> getPath(long id) {
+		if (id < 0 || id >= total)
+			throw new IllegalArgumentException("Path ID must be in [0, " + total + ")!");
+		List<DEPNode> path = new ArrayList<>();
+		int copy = 0;
+		int v = 0;
+		int budget = startBudget();
+		path.add(nodes[v]);
+		while (succs[v].length > 0) {
+			int nextBudget = nextBudget(budget);
+			for (int k = 0; k < succs[v].length; ++k) {
+				int nextCopy = copy + (backs[v][k] ? 1 : 0);
+				if (nextCopy > maxUnroll)
+					continue;
+				long paths = count(nextCopy, succs[v][k], nextBudget);
+				if (id < paths) {
+					copy = nextCopy;
+					v = succs[v][k];
+					break;
+				}
+				id -= paths;
+			}
+			budget = nextBudget;
+			path.add(nodes[v]);
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the ID of the given path, or -1 if it is not a bounded path of this CFG.
+	 */
+	public long getPathId(List<DEPNode> path) {
+		if (path.isEmpty() || total == 0 || path.get(0) != nodes[0])
+			return -1;
+		long id = 0;
+		int copy = 0;
+		int v = 0;
+		int budget = startBudget();
+		for (int step = 1; step < path.size(); ++step) {
+			Integer target = indices.get(path.get(step));
+			if (target == null)
+				return -1;
+			int nextBudget = nextBudget(budget);
+			int found = -1;
+			for (int k = 0; k < succs[v].length && found < 0; ++k) {
+				int nextCopy = copy + (backs[v][k] ? 1 : 0);
+				if (nextCopy > maxUnroll)
+					continue;
+				if (succs[v][k] == target)
+					found = k;
+				else
+					id = add(id, count(nextCopy, succs[v][k], nextBudget));
+			}
+			if (found < 0)
+				return -1;
+			copy += backs[v][found] ? 1 : 0;
+			v = target;
+			budget = nextBudget;
+		}
+		return succs[v].length == 0 && count(copy, v, budget) > 0 ? id : -1;
+	}
+
+	/**
+	 * Sample a bounded path uniformly at random; returns null if there is no such path.
+	 */
+	public List<DEPNode> samplePath(Random random) {
+		if (total == 0)
+			return null;
+		// uniform long in [0, total) by rejection sampling
+		long bits, id;
+		do {
+			bits = random.nextLong() >>> 1;
+			id = bits % total;
+		} while (bits - id + (total - 1) < 0);
+		return getPath(id);
+	}
+
+	public ControlFlowGraph getCFG() {
+		return cfg;
+	}
+
+	//=====================================================================//
+	//                         MEMOIZED COUNTING                           //
+	//=====================================================================//
+
+	private int startBudget() {
+		return bounded ? maxLength : 0;
+	}
+
+	private int nextBudget(int budget) {
+		return bounded ? budget - 1 : 0;
+	}
+
+	/**
+	 * Number of paths from the given node (in the given loop copy) to any exit,
+	 * with at most 'budget' nodes (if bounded).
+	 */
+	private long count(int copy, int node, int budget) {
+		if (bounded && budget < 1)
+			return 0;
+		return counts[copy * nodes.length + node][budget];
+	}
+
+	/**
+	 * Fill the memoized path counts; RPO is a topological order of each copy
+	 * (without back edges), and back edges only lead to the next copy.
+	 */
+	private void countPaths(int n) {
+		for (int copy = maxUnroll; copy >= 0; --copy) {
+			for (int v = n - 1; v >= 0; --v) {
+				long[] slot = counts[copy * n + v];
+				if (succs[v].length == 0) {
+					for (int budget = bounded ? 1 : 0; budget < slot.length; ++budget)
+						slot[budget] = 1;
+					continue;
+				}
+				for (int k = 0; k < succs[v].length; ++k) {
+					int nextCopy = copy + (backs[v][k] ? 1 : 0);
+					if (nextCopy > maxUnroll)
+						continue;
+					for (int budget = bounded ? 1 : 0; budget < slot.length; ++budget)
+						slot[budget] = add(slot[budget], count(nextCopy, succs[v][k], nextBudget(budget)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of nodes on the longest path of the unrolled DAG from the entry to an exit.
+	 */
+	private int longestPath() {
+		int n = nodes.length;
+		int[] longest = new int[(maxUnroll + 1) * n];
+		for (int copy = maxUnroll; copy >= 0; --copy) {
+			for (int v = n - 1; v >= 0; --v) {
+				int best = succs[v].length == 0 ? 1 : 0;
+				for (int k = 0; k < succs[v].length; ++k) {
+					int nextCopy = copy + (backs[v][k] ? 1 : 0);
+					if (nextCopy <= maxUnroll && longest[nextCopy * n + succs[v][k]] > 0)
+						best = Math.max(best, longest[nextCopy * n + succs[v][k]] + 1);
+				}
+				longest[copy * n + v] = best;
+			}
+		}
+		return n == 0 ? 0 : longest[0];
+	}
+
+	private static long add(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+}
@@ -2,6 +2,7 @@
 package srctoolkit.janalysis.dg.cfg;
 
 import srctoolkit.janalysis.common.graph.AbstractProgramGraph;
+import srctoolkit.janalysis.common.graph.GraphStructure;
 import srctoolkit.janalysis.dg.DEPNode;
 import srctoolkit.janalysis.utils.StringUtils;
 import srctoolkit.janalysis.common.graph.Edge;
@@ -9,6 +10,7 @@ import srctoolkit.janalysis.common.graph.Edge;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Control Flow Graph (CFG).
@@ -19,11 +21,15 @@ public class ControlFlowGraph extends AbstractProgramGraph<DEPNode, CFEdge> {
 
 	private String name;
 	private DEPNode entry;
+	private BasicBlockGraph basicBlocks;
+	private GraphStructure<DEPNode, CFEdge> structure;
 
 	public ControlFlowGraph(String name) {
 		super();
 		this.name = name;
 		entry = null;
+		basicBlocks = null;
+		structure = null;
         properties.put("label", "CFG");
         properties.put("type", "Control Flow Graph (CFG)");
 	}
@@ -33,6 +39,7 @@ public class ControlFlowGraph extends AbstractProgramGraph<DEPNode, CFEdge> {
 	}
 
 	public void setEntry(DEPNode entry) {
+		modified();
 		this.entry = entry;
 	}
 
@@ -40,6 +47,74 @@ public class ControlFlowGraph extends AbstractProgramGraph<DEPNode, CFEdge> {
 		return entry;
 	}
 
+	/**
+	 * Returns the basic-block view of this CFG.
+	 * The view is computed on first use, and cached until this CFG is modified.
+	 */
+	public BasicBlockGraph getBasicBlocks() {
+		if (basicBlocks == null)
+			basicBlocks = new BasicBlockGraph(this);
+		return basicBlocks;
+	}
+
+	/**
+	 * Returns the ordering and loop structure of this CFG, with respect to its entry;
+	 * i.e. reverse post-order, strongly connected components, back edges and loop nesting forest.
+	 * The structure is computed on first use, and cached until this CFG is modified.
+	 */
+	public GraphStructure<DEPNode, CFEdge> getStructure() {
+		if (structure == null)
+			structure = new GraphStructure<>(this, entry);
+		return structure;
+	}
+
+	@Override
+	public boolean addVertex(DEPNode v) {
+		modified();
+		return super.addVertex(v);
+	}
+
+	@Override
+	public boolean removeVertex(DEPNode v) {
+		modified();
+		return super.removeVertex(v);
+	}
+
+	@Override
+	public boolean addEdge(Edge<DEPNode, CFEdge> e) {
+		modified();
+		return super.addEdge(e);
+	}
+
+	@Override
+	public boolean removeEdge(Edge<DEPNode, CFEdge> e) {
+		modified();
+		return super.removeEdge(e);
+	}
+
+	@Override
+	public Set<Edge<DEPNode, CFEdge>> removeEdges(DEPNode src, DEPNode trgt) {
+		modified();
+		return super.removeEdges(src, trgt);
+	}
+
+	/**
+	 * Discard all cached views of this CFG.
+	 */
+	private void modified() {
+		basicBlocks = null;
+		structure = null;
+	}
+
+	/**
+	 * Release the rule-contexts of all nodes of this CFG, keeping only their keys;
+	 * so this CFG does not keep the parse-tree alive. See 'DEPNode.releaseRuleCtx()'.
+	 */
+	public void releaseRuleContexts() {
+		for (DEPNode node: allVertices)
+			node.releaseRuleCtx();
+	}
+
     @Override
 	public String exportDOT() {
 		StringBuilder dot = new StringBuilder();
@@ -0,0 +1,355 @@
+package srctoolkit.janalysis.dg.cfg;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dominator (or post-dominator) tree of a Control Flow Graph.
+ * Immediate dominators are computed using the iterative algorithm of
+ * Cooper, Harvey and Kennedy ("A Simple, Fast Dominance Algorithm")
+ * on int-indexed arrays, visiting nodes in reverse post-order.
+ *
+ * For post-dominators, a virtual exit node is used as the root of the tree;
+ * all nodes without successors are linked to the virtual exit. Nodes which
+ * can not reach any exit (i.e. infinite loops) are linked to it as well,
+ * so every node of the CFG has a post-dominator.
+ *
+ * Nodes are identified by an index in [0, size()); the virtual exit (if any)
+ * has the last index, and no corresponding DEPNode.
+ */
+public class DominatorTree {
+
+	private final boolean postDominator;
+	private final DEPNode[] nodes;
+	private final Map<DEPNode, Integer> indices;
+	private final int root;
+	private final int[] idom;
+	private final int[] preorder;
+	private final int[] lastDescendant;
+
+	private DominatorTree(boolean postDominator, DEPNode[] nodes, Map<DEPNode, Integer> indices, int root, int[] idom) {
+		this.postDominator = postDominator;
+		this.nodes = nodes;
+		this.indices = indices;
+		this.root = root;
+		this.idom = idom;
+		this.preorder = new int[idom.length];
+		this.lastDescendant = new int[idom.length];
+		numberTree();
+	}
+
+	/**
+	 * Compute the dominator tree of the given CFG, rooted at its entry.
+	 * Nodes unreachable from the entry have no immediate dominator.
+	 */
+	public static DominatorTree dominators(ControlFlowGraph cfg) {
+		DEPNode[] nodes = new DEPNode[cfg.vertexCount()];
+		Map<DEPNode, Integer> indices = indexNodes(cfg, nodes);
+		int n = nodes.length;
+		List<List<Integer>> succs = newLists(n);
+		List<List<Integer>> preds = newLists(n);
+		Iterator<Edge<DEPNode, CFEdge>> edges = cfg.allEdgesIterator();
+		while (edges.hasNext()) {
+			Edge<DEPNode, CFEdge> edge = edges.next();
+			int src = indices.get(edge.source);
+			int trg = indices.get(edge.target);
+			succs.get(src).add(trg);
+			preds.get(trg).add(src);
+		}
+		int root = indices.get(cfg.getEntry());
+		int[] rpo = reversePostOrder(toArrays(succs), root, n);
+		return new DominatorTree(false, nodes, indices, root, computeIdoms(toArrays(preds), rpo, root, n));
+	}
+
+	/**
+	 * Compute the post-dominator tree of the given CFG, rooted at a virtual exit node.
+	 */
+	public static DominatorTree postDominators(ControlFlowGraph cfg) {
+		DEPNode[] nodes = new DEPNode[cfg.vertexCount() + 1];
+		Map<DEPNode, Integer> indices = indexNodes(cfg, nodes);
+		int exit = nodes.length - 1;
+		// successors and predecessors on the reverse CFG
+		List<List<Integer>> succs = newLists(nodes.length);
+		List<List<Integer>> preds = newLists(nodes.length);
+		Iterator<Edge<DEPNode, CFEdge>> edges = cfg.allEdgesIterator();
+		while (edges.hasNext()) {
+			Edge<DEPNode, CFEdge> edge = edges.next();
+			int src = indices.get(edge.source);
+			int trg = indices.get(edge.target);
+			succs.get(trg).add(src);
+			preds.get(src).add(trg);
+		}
+		for (int i = 0; i < exit; ++i) {
+			if (preds.get(i).isEmpty()) {
+				succs.get(exit).add(i);
+				preds.get(i).add(exit);
+			}
+		}
+		// link nodes which can not reach the exit in one pass; the first unreached
+		// node is linked, and everything it reaches is marked, and so on
+		int[][] reverse = toArrays(succs);
+		boolean[] reached = new boolean[nodes.length];
+		int[] stack = new int[nodes.length];
+		markReachable(reverse, exit, reached, stack);
+		for (int i = 0; i < exit; ++i) {
+			if (!reached[i]) {
+				succs.get(exit).add(i);
+				preds.get(i).add(exit);
+				markReachable(reverse, i, reached, stack);
+			}
+		}
+		int[] rpo = reversePostOrder(toArrays(succs), exit, nodes.length);
+		return new DominatorTree(true, nodes, indices, exit, computeIdoms(toArrays(preds), rpo, exit, nodes.length));
+	}
+
+	/**
+	 * Returns true if this is a post-dominator tree.
+	 */
+	public boolean isPostDominatorTree() {
+		return postDominator;
+	}
+
+	/**
+	 * Returns the number of nodes in this tree, including the virtual exit (if any).
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the index of the root; for post-dominator trees this is the virtual exit.
+	 */
+	public int getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the index of the given CFG node, or -1 if it is not part of this tree.
+	 */
+	public int indexOf(DEPNode node) {
+		Integer index = indices.get(node);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the CFG node at the given index; null for the virtual exit.
+	 */
+	public DEPNode getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Returns the index of the immediate dominator of the node at the given index.
+	 * Returns -1 for the root, and for nodes unreachable from the root.
+	 */
+	public int getImmediateDominator(int index) {
+		return index == root ? -1 : idom[index];
+	}
+
+	/**
+	 * Returns the immediate dominator of the given CFG node.
+	 * Returns null if the node has no immediate dominator, or it is the virtual exit.
+	 */
+	public DEPNode getImmediateDominator(DEPNode node) {
+		int index = indexOf(node);
+		if (index < 0)
+			return null;
+		int dom = getImmediateDominator(index);
+		return dom < 0 ? null : nodes[dom];
+	}
+
+	/**
+	 * Check whether the node at index 'a' dominates the node at index 'b'.
+	 * Every node dominates itself. This query takes constant time.
+	 */
+	public boolean dominates(int a, int b) {
+		if (preorder[a] < 0 || preorder[b] < 0)
+			return false;
+		return preorder[a] <= preorder[b] && preorder[b] <= lastDescendant[a];
+	}
+
+	/**
+	 * Check whether the CFG node 'a' dominates the CFG node 'b'.
+	 */
+	public boolean dominates(DEPNode a, DEPNode b) {
+		int ia = indexOf(a);
+		int ib = indexOf(b);
+		return ia >= 0 && ib >= 0 && dominates(ia, ib);
+	}
+
+	/**
+	 * Returns the CFG nodes whose immediate dominator is the given node.
+	 */
+	public List<DEPNode> getChildren(DEPNode node) {
+		int index = indexOf(node);
+		List<DEPNode> children = new ArrayList<>();
+		for (int i = 0; i < idom.length; ++i)
+			if (i != root && idom[i] == index && nodes[i] != null)
+				children.add(nodes[i]);
+		return children;
+	}
+
+	//=====================================================================//
+	//                         INTERNAL ALGORITHM                          //
+	//=====================================================================//
+
+	private static Map<DEPNode, Integer> indexNodes(ControlFlowGraph cfg, DEPNode[] nodes) {
+		Map<DEPNode, Integer> indices = new IdentityHashMap<>();
+		Iterator<DEPNode> vertices = cfg.allVerticesIterator();
+		while (vertices.hasNext()) {
+			DEPNode node = vertices.next();
+			nodes[indices.size()] = node;
+			indices.put(node, indices.size());
+		}
+		return indices;
+	}
+
+	private static List<List<Integer>> newLists(int n) {
+		List<List<Integer>> lists = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i)
+			lists.add(new ArrayList<>(2));
+		return lists;
+	}
+
+	private static int[][] toArrays(List<List<Integer>> lists) {
+		int[][] arrays = new int[lists.size()][];
+		for (int i = 0; i < arrays.length; ++i) {
+			List<Integer> list = lists.get(i);
+			arrays[i] = new int[list.size()];
+			for (int j = 0; j < arrays[i].length; ++j)
+				arrays[i][j] = list.get(j);
+		}
+		return arrays;
+	}
+
+	/**
+	 * Returns the nodes reachable from the root in reverse post-order (iterative DFS).
+	 */
+	private static int[] reversePostOrder(int[][] succs, int root, int n) {
+		int[] order = new int[n];
+		int count = 0;
+		boolean[] visited = new boolean[n];
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		int top = 0;
+		stack[top++] = root;
+		visited[root] = true;
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (next[v] < succs[v].length) {
+				int w = succs[v][next[v]++];
+				if (!visited[w]) {
+					visited[w] = true;
+					stack[top++] = w;
+				}
+			} else {
+				order[count++] = v;
+				--top;
+			}
+		}
+		int[] rpo = new int[count];
+		for (int i = 0; i < count; ++i)
+			rpo[i] = order[count - 1 - i];
+		return rpo;
+	}
+
+	/**
+	 * Mark all nodes reachable from the given node, which are not already marked.
+	 */
+	private static void markReachable(int[][] succs, int from, boolean[] reached, int[] stack) {
+		int top = 0;
+		stack[top++] = from;
+		reached[from] = true;
+		while (top > 0) {
+			int v = stack[--top];
+			for (int w: succs[v]) {
+				if (!reached[w]) {
+					reached[w] = true;
+					stack[top++] = w;
+				}
+			}
+		}
+	}
+
+	private static int[] computeIdoms(int[][] preds, int[] rpo, int root, int n) {
+		// post-order number of each node; unreachable nodes remain -1
+		int[] number = new int[n];
+		Arrays.fill(number, -1);
+		for (int i = 0; i < rpo.length; ++i)
+			number[rpo[i]] = rpo.length - 1 - i;
+		int[] idom = new int[n];
+		Arrays.fill(idom, -1);
+		idom[root] = root;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1; i < rpo.length; ++i) {
+				int v = rpo[i];
+				int newIdom = -1;
+				for (int p: preds[v]) {
+					if (idom[p] < 0)
+						continue;
+					newIdom = newIdom < 0 ? p : intersect(idom, number, p, newIdom);
+				}
+				if (idom[v] != newIdom) {
+					idom[v] = newIdom;
+					changed = true;
+				}
+			}
+		}
+		return idom;
+	}
+
+	private static int intersect(int[] idom, int[] number, int a, int b) {
+		while (a != b) {
+			while (number[a] < number[b])
+				a = idom[a];
+			while (number[b] < number[a])
+				b = idom[b];
+		}
+		return a;
+	}
+
+	/**
+	 * Number the tree nodes in pre-order, so dominance queries become interval checks.
+	 */
+	private void numberTree() {
+		int n = idom.length;
+		int[] childCount = new int[n + 1];
+		for (int i = 0; i < n; ++i)
+			if (i != root && idom[i] >= 0)
+				++childCount[idom[i] + 1];
+		for (int i = 0; i < n; ++i)
+			childCount[i + 1] += childCount[i];
+		int[] children = new int[n];
+		int[] fill = Arrays.copyOf(childCount, n);
+		for (int i = 0; i < n; ++i)
+			if (i != root && idom[i] >= 0)
+				children[fill[idom[i]]++] = i;
+		Arrays.fill(preorder, -1);
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		int top = 0;
+		int counter = 0;
+		stack[top++] = root;
+		preorder[root] = counter++;
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (childCount[v] + next[v] < childCount[v + 1]) {
+				int child = children[childCount[v] + next[v]++];
+				preorder[child] = counter++;
+				stack[top++] = child;
+			} else {
+				lastDescendant[v] = counter - 1;
+				--top;
+			}
+		}
+	}
+}
@@ -2,8 +2,9 @@
 package srctoolkit.janalysis.dg.pdg;
 
 
-import srctoolkit.janalysis.dg.DEPEdge;
 import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.cfg.CFEdge;
+import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
 import srctoolkit.janalysis.common.graph.Edge;
 
 import java.util.ArrayDeque;
@@ -12,21 +13,27 @@ import java.util.Iterator;
 
 /**
  * Control-Flow Path Traversal.
+ * Paths are traversed on the CFG attached to the PDG,
+ * since the control edges of a PDG are control-dependences.
  * 
  * @author Seyed Mohammad Ghaffarian
  */
 public class CFPathTraversal implements Iterator {
 	
 	private final DEPNode start;
-	private final ProgramDependenceGraph pdg;
-	private final Deque<Edge<DEPNode, DEPEdge>> paths;
+	private final ControlFlowGraph cfg;
+	private final Deque<Edge<DEPNode, CFEdge>> paths;
 	
 	private DEPNode current;
 	private boolean continueNextPath;
-	private Edge<DEPNode, DEPEdge> nextEdge;
+	private Edge<DEPNode, CFEdge> nextEdge;
 	
 	public CFPathTraversal(ProgramDependenceGraph pdg, DEPNode startNode) {
-		this.pdg = pdg;
+		this(pdg.getCFG(), startNode);
+	}
+
+	public CFPathTraversal(ControlFlowGraph cfg, DEPNode startNode) {
+		this.cfg = cfg;
 		start = startNode;
 		paths = new ArrayDeque<>();
 		continueNextPath = false;
@@ -43,7 +50,7 @@ public class CFPathTraversal implements Iterator {
     @Override
 	public boolean hasNext() {
 		return current == null || (!paths.isEmpty()) || 
-				(pdg.outCtrlEdges(current).size() > 0 && !continueNextPath);
+				(cfg.getOutDegree(current) > 0 && !continueNextPath);
 	}
 	
     @Override
@@ -52,8 +59,9 @@ public class CFPathTraversal implements Iterator {
 			return start();
 		//
 		if (!continueNextPath) {
-			for (Edge<DEPNode, DEPEdge> out : pdg.outCtrlEdges(current)) {
-				paths.push(out);
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(current);
+			while (outs.hasNext()) {
+				paths.push(outs.next());
             }
         }
 		continueNextPath = false;
@@ -0,0 +1,84 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records of the method calls resolved during DEF-USE analysis,
+ * and the declarations of resolved methods; used for linking PDGs.
+ */
+class CallRecords {
+
+	// calls of each statement, keyed by the rule-contexts of statements and calls
+	private final Map<ParserRuleContext, Map<ParserRuleContext, Call>> calls;
+	private final Map<MethodDefInfo, ParserRuleContext> methods;
+	private final Map<ParserRuleContext, MethodDefInfo> declarations;
+
+	CallRecords() {
+		calls = new IdentityHashMap<>();
+		methods = new IdentityHashMap<>();
+		declarations = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Record a call of the given statement; a call is only recorded once,
+	 * even if the statement is analyzed several times.
+	 */
+	void addCall(ParserRuleContext stmt, ParserRuleContext call, MethodDefInfo callee, String[] args, String[] argVars) {
+		calls.computeIfAbsent(stmt, k -> new LinkedHashMap<>())
+				.putIfAbsent(call, new Call(callee, args, argVars));
+	}
+
+	/**
+	 * Record the declaration of the given method.
+	 */
+	void addMethod(MethodDefInfo method, ParserRuleContext declaration) {
+		methods.putIfAbsent(method, declaration);
+		declarations.putIfAbsent(declaration, method);
+	}
+
+	/**
+	 * Returns the recorded calls of the given statement, in order of their first visit.
+	 */
+	Collection<Call> getCalls(ParserRuleContext stmt) {
+		Map<ParserRuleContext, Call> stmtCalls = calls.get(stmt);
+		return stmtCalls == null ? Collections.emptyList() : new ArrayList<>(stmtCalls.values());
+	}
+
+	/**
+	 * Returns the declaration of the given method; null if it is not declared in the analyzed code.
+	 */
+	ParserRuleContext getDeclaration(MethodDefInfo method) {
+		return methods.get(method);
+	}
+
+	/**
+	 * Returns the method declared by the given rule-context; null if not found.
+	 */
+	MethodDefInfo getMethod(ParserRuleContext declaration) {
+		return declarations.get(declaration);
+	}
+
+	/**
+	 * A resolved method call; the argument expressions, and the variables
+	 * passed as arguments (null for arguments which are not plain variables).
+	 */
+	static class Call {
+
+		final MethodDefInfo CALLEE;
+		final String[] ARGS;
+		final String[] ARG_VARS;
+
+		Call(MethodDefInfo callee, String[] args, String[] argVars) {
+			CALLEE = callee;
+			ARGS = args;
+			ARG_VARS = argVars;
+		}
+	}
+}
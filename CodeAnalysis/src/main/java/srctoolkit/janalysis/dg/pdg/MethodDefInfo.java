@@ -0,0 +1,138 @@
+/*** In The Name of Allah ***/
+package srctoolkit.janalysis.dg.pdg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A simple structure to store DEF information about a Java method.
+ * 
+ * @author Seyed Mohammad Ghaffarian
+ */
+class MethodDefInfo {
+	
+	// Method ID
+	public final String NAME;
+	public final String PACKAGE;
+	public final String RET_TYPE;
+	public final String CLASS_NAME;
+	public final String[] PARAM_TYPES;
+	
+	// DEF Info
+	private boolean stateDEF;
+	private boolean[] argDEFs;
+	private List<String> fieldDEFs;
+	
+	public MethodDefInfo(String ret, String name, String pkg, String cls, String[] args) {
+		NAME = name;
+		RET_TYPE = ret;
+		CLASS_NAME = cls;
+		PACKAGE = pkg == null ? "" : pkg;
+		PARAM_TYPES = args == null ? new String[0] : args;
+		//
+		fieldDEFs = new ArrayList<>(); 
+		stateDEF = guessByTypeOrName(); 
+		argDEFs = new boolean[PARAM_TYPES.length];  // all initialized to 'false'
+	}
+
+	private boolean guessByTypeOrName() {
+		// First check if this method is a constructor ...
+		if (RET_TYPE == null)
+			return true;
+		// If not, then try to guess by method-name ...
+		String[] prefixes = { "set", "put", "add", "insert", "push", "append" };
+		for (String pre: prefixes)
+			if (NAME.toLowerCase().startsWith(pre))
+				return true;
+		return false;
+	}
+
+	public boolean doesStateDEF() {
+		return stateDEF;
+	}
+
+	/**
+	 * Set the object-state DEF of this method.
+	 * Returns true if the DEF info is changed.
+	 */
+	public boolean setStateDEF(boolean stateDef) {
+		if (stateDEF == stateDef)
+			return false;
+		stateDEF = stateDef;
+		return true;
+	}
+
+	public boolean[] argDEFs() {
+		return argDEFs;
+	}
+	
+	/**
+	 * Set the DEF of the argument at the given index.
+	 * Returns true if the DEF info is changed.
+	 */
+	public boolean setArgDEF(int argIndex, boolean def) {
+		if (argDEFs[argIndex] == def)
+			return false;
+		argDEFs[argIndex] = def;
+		return true;
+	}
+
+	public void setAllArgDEFs(boolean[] argDefs) {
+		argDEFs = argDefs;
+	}
+
+	public String[] fieldDEFs() {
+		return fieldDEFs.toArray(new String[fieldDEFs.size()]);
+	}
+
+	/**
+	 * Add a field DEF to this method.
+	 * Returns true if the DEF info is changed.
+	 */
+	public boolean addFieldDEF(String fieldName) {
+		if (!fieldDEFs.contains(fieldName)) {
+			fieldDEFs.add(fieldName);
+			stateDEF = true;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the index key of this method; see 'key(pkg, cls, name, paramsCount)'.
+	 */
+	public String key() {
+		return key(PACKAGE, CLASS_NAME, NAME, PARAM_TYPES.length);
+	}
+
+	/**
+	 * Returns the index key of a method with the given package, class, name and number of params.
+	 */
+	public static String key(String pkg, String cls, String name, int paramsCount) {
+		return pkg + ':' + cls + '.' + name + '/' + paramsCount;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MethodDefInfo))
+			return false;
+		MethodDefInfo info = (MethodDefInfo) obj;
+		return this.NAME.equals(info.NAME) && this.CLASS_NAME.equals(info.CLASS_NAME)
+				&& this.PACKAGE.equals(info.PACKAGE) && this.RET_TYPE.equals(info.RET_TYPE)
+				&& Arrays.equals(this.PARAM_TYPES, info.PARAM_TYPES);
+	}
+
+	@Override
+	public String toString() {
+		String retType = RET_TYPE == null ? "null" : RET_TYPE;
+		String args = PARAM_TYPES == null ? "null" : Arrays.toString(PARAM_TYPES);
+		StringBuilder str = new StringBuilder();
+		str.append("{ TYPE : \"").append(retType).append("\", ");
+		str.append("NAME : \"").append(NAME).append("\", ");
+		str.append("ARGS : ").append(args).append(", ");
+		str.append("CLASS : \"").append(CLASS_NAME).append("\", ");
+		str.append("PACKAGE : \"").append(PACKAGE).append("\" }");
+		return str.toString();
+	}
+}
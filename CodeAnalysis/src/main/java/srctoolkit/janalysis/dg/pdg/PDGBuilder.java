@@ -9,6 +9,7 @@ import srctoolkit.janalysis.utils.Logger;
 import srctoolkit.janalysis.common.antlrparser.JavaLexer;
 import srctoolkit.janalysis.common.antlrparser.JavaParser;
 import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.SymbolTable;
 import srctoolkit.janalysis.common.graph.Edge;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -21,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Data Dependence Graph (DDG) builder for Java programs.
@@ -30,39 +32,211 @@ import java.util.*;
  * @author Seyed Mohammad Ghaffarian
  */
 public class PDGBuilder {
+
+	// Default options of new builders (and of the static build methods); see the static setters.
+	private static volatile SideEffectSummaries defaultSummaries;
+	private static volatile ProjectIndex defaultIndex;
+	private static volatile boolean defaultRelease = false;
+
 	// NOTE: This doesn't handle duplicate class names;
 	//       yet assuming no duplicate class names is fair enough.
 	//       To handle that, we should use 'Map<String, List<JavaClass>>'
-	private static Map<String, JavaClass> allClassInfos;
+	private Map<String, JavaClass> allClassInfos;
+
+	private Map<String, List<MethodDefInfo>> methodDEFs;
+
+	// Method DEF infos indexed by package, class, name and number of params;
+	// see 'MethodDefInfo.key(...)'.
+	private Map<String, List<MethodDefInfo>> methodIndex;
+
+	// Classes of the analyzed files, and the method names which are looked up in the project index.
+	private Set<JavaClass> analyzedClasses;
+	private Set<String> indexedNames;
+
+	// Side-effect summaries of library methods (if any); used for calls of methods
+	// which are not declared in the analyzed code.
+	private SideEffectSummaries librarySummaries;
+
+	// Index of the classes of the whole project (if any); used to resolve
+	// calls and types of classes which are declared in other files.
+	private ProjectIndex projectIndex;
+
+	// Release the rule-contexts of graph nodes after building; see 'setReleaseRuleContexts'.
+	private boolean releaseRuleContexts;
+
+	/**
+	 * Create a new builder, with the current default options.
+	 * A builder is a session which holds the state of one build at a time; so it can be
+	 * reused for consecutive builds, but must be confined to a single thread.
+	 * Separate builders share no mutable state, and can be used concurrently;
+	 * each call of the static build methods uses a new builder.
+	 */
+	public PDGBuilder() {
+		librarySummaries = defaultSummaries;
+		projectIndex = defaultIndex;
+		releaseRuleContexts = defaultRelease;
+	}
+
+	/**
+	 * If enabled, the built graphs do not keep the parse-trees alive; the rule-context of each node
+	 * is released after building, and only its key is kept (see 'DEPNode.getRuleKey()').
+	 * This is disabled by default. This sets the default of new builders.
+	 */
+	public static void setReleaseRuleContexts(boolean release) {
+		defaultRelease = release;
+	}
+
+	/**
+	 * Use the given side-effect summaries for calls of library methods;
+	 * if null, library calls are assumed to have no side-effects.
+	 * This sets the default of new builders.
+	 */
+	public static void setLibrarySummaries(SideEffectSummaries summaries) {
+		defaultSummaries = summaries;
+	}
+
+	/**
+	 * Use the given project index for resolving classes and methods which are not declared
+	 * in the analyzed files; if null, only the classes of the analyzed files are known.
+	 * Methods of other files are not re-analyzed; their DEF info is guessed by name.
+	 * This sets the default of new builders.
+	 */
+	public static void setProjectIndex(ProjectIndex index) {
+		defaultIndex = index;
+	}
+
+	/**
+	 * Set the release of rule-contexts for this builder; see 'setReleaseRuleContexts'.
+	 */
+	public PDGBuilder withReleaseRuleContexts(boolean release) {
+		releaseRuleContexts = release;
+		return this;
+	}
+
+	/**
+	 * Set the library summaries of this builder; see 'setLibrarySummaries'.
+	 */
+	public PDGBuilder withLibrarySummaries(SideEffectSummaries summaries) {
+		librarySummaries = summaries;
+		return this;
+	}
+
+	/**
+	 * Set the project index of this builder; see 'setProjectIndex'.
+	 */
+	public PDGBuilder withProjectIndex(ProjectIndex index) {
+		projectIndex = index;
+		return this;
+	}
 
-    private static Map<String, List<MethodDefInfo>> methodDEFs;
+	boolean isReleaseRuleContexts() {
+		return releaseRuleContexts;
+	}
 
 	public static List<ProgramDependenceGraph> buildWithCode(String code) throws IOException {
+		return new PDGBuilder().buildFromCode(code);
+	}
+
+	public static List<ProgramDependenceGraph> build(String file) throws IOException {
+		return new PDGBuilder().buildFromFile(file);
+	}
+
+	public static List<ProgramDependenceGraph> build(ParseTree parseTree) {
+		return new PDGBuilder().buildFromTree(parseTree);
+	}
+
+	public List<ProgramDependenceGraph> buildFromCode(String code) throws IOException {
 		Logger.info("Parsing source code ... ");
 		ANTLRInputStream input = new ANTLRInputStream(code);
 		JavaLexer lexer = new JavaLexer(input);
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		JavaParser parser = new JavaParser(tokens);
 		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree);
+		return buildFromTree(parseTree);
 	}
 
-    public static List<ProgramDependenceGraph> build(String file) throws IOException {
+	public List<ProgramDependenceGraph> buildFromFile(String file) throws IOException {
 		Logger.info("Parsing source file ... ");
-		InputStream inFile = new FileInputStream(file);
-		ANTLRInputStream input = new ANTLRInputStream(inFile);
-		JavaLexer lexer = new JavaLexer(input);
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		JavaParser parser = new JavaParser(tokens);
-		ParseTree parseTree = parser.compilationUnit();
-		return build(parseTree);
+		try (InputStream inFile = new FileInputStream(file)) {
+			ANTLRInputStream input = new ANTLRInputStream(inFile);
+			JavaLexer lexer = new JavaLexer(input);
+			CommonTokenStream tokens = new CommonTokenStream(lexer);
+			JavaParser parser = new JavaParser(tokens);
+			ParseTree parseTree = parser.compilationUnit();
+			return buildFromTree(parseTree);
+		}
+	}
+
+	public List<ProgramDependenceGraph> buildFromTree(ParseTree parseTree) {
+		List<ProgramDependenceGraph> pdgs = build(Collections.singletonList(parseTree), null);
+		if (releaseRuleContexts)
+			for (ProgramDependenceGraph pdg: pdgs)
+				pdg.releaseRuleContexts();
+		return pdgs;
 	}
 
-    public static List<ProgramDependenceGraph> build(ParseTree parseTree) {
+	/**
+	 * Build the PDGs of all methods of the given parse-trees, which are analyzed together;
+	 * so calls between them are resolved. If the given call-records is not null,
+	 * all resolved method calls (and method declarations) are recorded in it.
+	 */
+	List<ProgramDependenceGraph> build(List<ParseTree> parseTrees, CallRecords calls) {
+		Map<ParserRuleContext, DEPNode> dataNodes = new IdentityHashMap<>();
+		Map<ParserRuleContext, List<DEPNode>> entry2params = new IdentityHashMap<>();
+		analyzeDefUse(parseTrees, calls, dataNodes, entry2params);
+
+		// Build control-flow graphs for all Java files; then for each CFG, build its PDG
+		// by adding control-dependence edges, and data-flow edges using the extracted DEF-USE info.
+		// Methods are independent at this point; the DEF-USE info is only read, and each PDG
+		// only modifies its own nodes, so PDGs are built in parallel, in order of their CFGs.
+		Logger.info("Extracting CFGs and adding data-flow edges ... ");
+		List<ControlFlowGraph> cfgs = new ArrayList<>();
+		for (ParseTree parseTree: parseTrees)
+			CFGBuilder.build(parseTree, cfgs::add);
+		Map<ParserRuleContext, DEPNode> defUseInfo = Collections.unmodifiableMap(dataNodes);
+		List<ProgramDependenceGraph> pdgs = cfgs.parallelStream().map(cfg -> {
+			ProgramDependenceGraph pdg = new ProgramDependenceGraph(cfg.getName());
+			pdg.attachCFG(cfg);
+			List<DEPNode> params = entry2params.get(cfg.getEntry().getRuleCtx());
+			pdg.addParams(params);
+			updateDataDependence(pdg, defUseInfo);
+			return pdg;
+		}).collect(Collectors.toList());
+
+		return pdgs;
+	}
+
+
+
+	/**
+	 * Analyze the DEF info of all methods of the given parse-trees, without building their PDGs;
+	 * returns the DEF infos of all methods (in no particular order).
+	 */
+	List<MethodDefInfo> analyzeMethods(List<ParseTree> parseTrees) {
+		Set<String> classes = new HashSet<>();
+		for (JavaClass cls: analyzeDefUse(parseTrees, null, new IdentityHashMap<>(), new IdentityHashMap<>()))
+			classes.add(cls.PACKAGE + '.' + cls.NAME);
+		List<MethodDefInfo> methods = new ArrayList<>();
+		for (List<MethodDefInfo> infos: methodIndex.values())
+			for (MethodDefInfo info: infos)
+				if (classes.contains(info.PACKAGE + '.' + info.CLASS_NAME))  // not of the project index
+					methods.add(info);
+		return methods;
+	}
+
+	/**
+	 * Extract the class-infos, and the DEF-USE info of all statements of the given parse-trees;
+	 * the DEF-USE info of each statement is stored in 'dataNodes', and the parameters of
+	 * each method in 'entry2params'. Returns the extracted class-infos.
+	 */
+	private List<JavaClass> analyzeDefUse(List<ParseTree> parseTrees, CallRecords calls,
+			Map<ParserRuleContext, DEPNode> dataNodes, Map<ParserRuleContext, List<DEPNode>> entry2params) {
 		// Extract the information of all given Java classes
 		Logger.info("Extracting class-infos ... ");
 		allClassInfos = new HashMap<>();
-		List<JavaClass> classesList = JavaClassExtractor.extractInfo(parseTree);
+		List<JavaClass> classesList = new ArrayList<>();
+		for (ParseTree parseTree: parseTrees)
+			classesList.addAll(JavaClassExtractor.extractInfo(parseTree));
 		for (JavaClass cls: classesList)
 			allClassInfos.put(cls.NAME, cls);
 		
@@ -70,151 +244,149 @@ public class PDGBuilder {
 		// Initialize method DEF information
 		Logger.info("Initializing method-DEF infos ... ");
 		methodDEFs = new HashMap<>();
+		methodIndex = new HashMap<>();
 
 		for (JavaClass cls : classesList) {
 			for (JavaMethod mtd : cls.getAllMethods()) {
-				List<MethodDefInfo> list = methodDEFs.get(mtd.NAME);
-				if (list == null) {
-					list = new ArrayList<>();
-					list.add(new MethodDefInfo(mtd.RET_TYPE, mtd.NAME, cls.PACKAGE, cls.NAME, mtd.ARG_TYPES));
-					methodDEFs.put(mtd.NAME, list);
-				} else {
-					list.add(new MethodDefInfo(mtd.RET_TYPE, mtd.NAME, cls.PACKAGE, cls.NAME, mtd.ARG_TYPES));
-					// no need to do 'methodDEFs.put(...)' again
-				}
+				MethodDefInfo info = new MethodDefInfo(mtd.RET_TYPE, mtd.NAME, cls.PACKAGE, cls.NAME, mtd.ARG_TYPES);
+				methodDEFs.computeIfAbsent(mtd.NAME, k -> new ArrayList<>()).add(info);
+				methodIndex.computeIfAbsent(info.key(), k -> new ArrayList<>()).add(info);
 			}
 		}
+		analyzedClasses = new HashSet<>(classesList);
+		indexedNames = new HashSet<>();
 
 		
-		// Iteratively, extract USE-DEF info for all program statements ...
-		Map<ParserRuleContext, DEPNode> dataNodes = new IdentityHashMap<>();
-		Map<ParserRuleContext, List<DEPNode>> entry2params = new IdentityHashMap<>();
-		Logger.info("Iterative DEF-USE analysis ... ");
-		boolean changed;
-		int iteration = 0;
-		do {
-			++iteration;
-			changed = false;
-
-			DefUseVisitor defUse = new DefUseVisitor(iteration, classesList.toArray(new JavaClass[classesList.size()]), dataNodes, entry2params);
+		// Extract USE-DEF info for all program statements in a single pass;
+		// then only re-analyze the callers of methods whose DEF info is changed,
+		// until the DEF info of all methods reaches a fixed-point ...
+		Logger.info("Worklist DEF-USE analysis ... ");
+		DefUseVisitor defUse = new DefUseVisitor(classesList.toArray(new JavaClass[classesList.size()]), dataNodes, entry2params, calls);
+		for (ParseTree parseTree: parseTrees)
 			defUse.visit(parseTree);
-			changed |= defUse.changed;
-
-			Logger.debug("Iteration #" + iteration + ": " + (changed ? "CHANGED" : "NO-CHANGE"));
-			Logger.debug("\n========================================\n");
-		} while (changed);
-		
+		int revisits = defUse.analyzeWorklist();
+		Logger.debug("Re-analyzed methods: " + revisits);
+		Logger.debug("\n========================================\n");
+		return classesList;
+	}
+	
+	/**
+	 * Returns the class-info of the given type; classes of other files of the project
+	 * are found in the project index (if any). Returns null if not found.
+	 */
+	private JavaClass findClassInfo(String type) {
+		JavaClass cls = allClassInfos.get(type);
+		if (cls == null && projectIndex != null && type != null) {
+			List<JavaClass> classes = projectIndex.getClasses(type);
+			if (!classes.isEmpty())
+				cls = classes.get(0);
+		}
+		return cls;
+	}
 
-		// Build control-flow graphs for all Java files including the extracted DEF-USE info ...
-		Logger.info("Extracting CFGs ... ");
-		List<ControlFlowGraph> cfgs = CFGBuilder.build(parseTree);
-		
-		// Finally, traverse all control-flow paths and draw data-flow dependency edges ...
-		Logger.info("Adding data-flow edges ... ");
-		List<ProgramDependenceGraph> pdgs = new ArrayList<>();
-		for (ControlFlowGraph cfg: cfgs) {
-			ProgramDependenceGraph pdg = new ProgramDependenceGraph(cfg.getName());
-			pdg.attachCFG(cfg);
-			List<DEPNode> params = entry2params.get(cfg.getEntry().getRuleCtx());
-			pdg.addParams(params);
-			updateDataDependence(pdg, dataNodes);
-			pdgs.add(pdg);
+	/**
+	 * Returns the DEF infos of all methods with the given name, or null if there is none.
+	 * The methods of other files of the project are added from the project index (if any),
+	 * on the first lookup of each name; so only the names which are called are indexed.
+	 */
+	private List<MethodDefInfo> getMethodDEFs(String name) {
+		if (projectIndex != null && indexedNames.add(name)) {
+			for (MethodDefInfo info: projectIndex.newDefInfos(name, analyzedClasses)) {
+				methodDEFs.computeIfAbsent(info.NAME, k -> new ArrayList<>()).add(info);
+				methodIndex.computeIfAbsent(info.key(), k -> new ArrayList<>()).add(info);
+			}
 		}
+		return methodDEFs.get(name);
+	}
 
-		return pdgs;
+	/**
+	 * Returns the DEF infos of the methods with the given package, class, name and number of params;
+	 * or null if there is none.
+	 */
+	private List<MethodDefInfo> getMethodDEFs(String pkg, String cls, String name, int paramsCount) {
+		getMethodDEFs(name);
+		return methodIndex.get(MethodDefInfo.key(pkg, cls, name, paramsCount));
 	}
 
-	
 	/**
-	 * Traverses each CFG and uses the extracted DEF-USE info 
+	 * Uses the extracted DEF-USE info and the reaching-definitions of each CFG
 	 * to add Flow-dependence edges to the corresponding DDG.
 	 */
 	private static void updateDataDependence(ProgramDependenceGraph pdg, Map<ParserRuleContext, DEPNode> dataNodes) {
+		// all nodes of the PDG share the symbol table of the method,
+		// so DEF-USE info is copied as variable IDs
+		DEPNode entryData = dataNodes.get(pdg.getEntry().getRuleCtx());
+		SymbolTable symbols = entryData == null ? new SymbolTable() : entryData.getSymbolTable();
 		Iterator<DEPNode> allNodes = pdg.allVerticesIterator();
 		while (allNodes.hasNext()) {
 			DEPNode node = allNodes.next();
+			node.setSymbolTable(symbols);
 			DEPNode dataNode = dataNodes.get(node.getRuleCtx());
 			if (dataNode == null)
 				continue;
 			node.setAbstract(dataNode.getAbstract());
-			for (String def: dataNode.getAllDEFs()) {
-				node.addDEF(def);
-			}
-			for (String use: dataNode.getAllUSEs()) {
-				node.addUSE(use);
-			}
-			for (String selfFlow: dataNode.getAllSelfFlows()) {
-				node.addSelfFlow(selfFlow);
-			}
+			copyDefUse(dataNode, node);
 		}
 
-		DEPNode entry = pdg.getEntry();
-		for (DEPNode param: pdg.getParams()) {
-			if (param.getAllDEFs().length == 0)
+		// solve reaching-definitions on the CFG; each USE of a variable
+		// depends on all definitions of that variable reaching the node
+		ReachingDefinitions reaching = new ReachingDefinitions(pdg.getCFG(), pdg.getParams());
+		for (DEPNode param: pdg.getParams())
+			addSelfFlows(pdg, param);
+		for (DEPNode node: reaching.getNodes())
+			addSelfFlows(pdg, node);
+		for (DEPNode useNode: reaching.getNodes()) {
+			if (useNode.getUSECount() == 0)
 				continue;
-			// first add any self-flows of this node
-			for (String flow: param.getAllSelfFlows()) {
-				pdg.addEdge(new Edge<>(param, new DEPEdge(DEPEdge.Type.DATA, flow), param));
-			}
-			// now traverse the CFG for any USEs till a DEF
-			Set<DEPNode> visitedUses = new LinkedHashSet<>();
-			for (String def : param.getAllDEFs()) {
-				CFPathTraversal useTraversal = new CFPathTraversal(pdg, entry);
-				visitedUses.clear();
-				DEPNode useNode = useTraversal.next(); // skip start node
-				visitedUses.add(useNode);
-				while (useTraversal.hasNext()) {
-					useNode = useTraversal.next();
-					if (useNode.hasDEF(def))
-						useTraversal.continueNextPath(); // no need to continue this path
-					if (!visitedUses.add(useNode))
-						useTraversal.continueNextPath(); // no need to continue this path
-					else if (useNode.hasUSE(def)) {
-						pdg.addEdge(new Edge<>(param, new DEPEdge(DEPEdge.Type.DATA, def), useNode));
-					}
-				}
+			for (ReachingDefinitions.Definition def: reaching.getReachingDefinitions(useNode)) {
+				if (def.NODE != useNode && useNode.hasUSE(def.VAR))
+					pdg.addEdge(new Edge<>(def.NODE, new DEPEdge(DEPEdge.Type.DATA, def.getVarName()), useNode));
 			}
 		}
+	}
 
-		Set<DEPNode> visitedDefs = new LinkedHashSet<>();
-		CFPathTraversal defTraversal = new CFPathTraversal(pdg, entry);
-		while (defTraversal.hasNext()) {
-			DEPNode defNode = defTraversal.next();
-			if (!visitedDefs.add(defNode)) {
-				defTraversal.continueNextPath();
-				continue;
-			}
-			if (defNode.getAllDEFs().length == 0)
-				continue;
-			// first add any self-flows of this node
-			for (String flow: defNode.getAllSelfFlows()) {
-				pdg.addEdge(new Edge<>(defNode, new DEPEdge(DEPEdge.Type.DATA, flow), defNode));
-			}
-			// now traverse the CFG for any USEs till a DEF
-			Set<DEPNode> visitedUses = new LinkedHashSet<>();
-			for (String def : defNode.getAllDEFs()) {
-				CFPathTraversal useTraversal = new CFPathTraversal(pdg, defNode);
-				visitedUses.clear();
-				DEPNode useNode = useTraversal.next(); // skip start node
-				visitedUses.add(useNode);
-				while (useTraversal.hasNext()) {
-					useNode = useTraversal.next();
-					if (useNode.hasDEF(def))
-						useTraversal.continueNextPath(); // no need to continue this path
-					if (!visitedUses.add(useNode))
-						useTraversal.continueNextPath(); // no need to continue this path
-					else if (useNode.hasUSE(def)) {
-						pdg.addEdge(new Edge<>(defNode, new DEPEdge(DEPEdge.Type.DATA, def), useNode));
-					}
-				}
-			}
+	/**
+	 * Copy the DEF, USE and self-flow info of a node to another node.
+	 * Variable IDs are copied directly, if both nodes share the same symbol table.
+	 */
+	private static void copyDefUse(DEPNode from, DEPNode to) {
+		if (from.getSymbolTable() != to.getSymbolTable()) {
+			for (String def: from.getAllDEFs())
+				to.addDEF(def);
+			for (String use: from.getAllUSEs())
+				to.addUSE(use);
+			for (String selfFlow: from.getAllSelfFlows())
+				to.addSelfFlow(selfFlow);
+			return;
+		}
+		for (int i = 0; i < from.getDEFCount(); ++i)
+			to.addDEF(from.getDEF(i));
+		for (int i = 0; i < from.getUSECount(); ++i)
+			to.addUSE(from.getUSE(i));
+		for (int i = 0; i < from.getSelfFlowCount(); ++i)
+			to.addSelfFlow(from.getSelfFlow(i));
+	}
+
+	/**
+	 * Add the self-flow edges of the given node, if it defines any variable.
+	 */
+	private static void addSelfFlows(ProgramDependenceGraph pdg, DEPNode node) {
+		if (node.getDEFCount() == 0)
+			return;
+		SymbolTable symbols = node.getSymbolTable();
+		for (int i = 0; i < node.getSelfFlowCount(); ++i) {
+			String flow = symbols.getSymbol(node.getSelfFlow(i));
+			pdg.addEdge(new Edge<>(node, new DEPEdge(DEPEdge.Type.DATA, flow), node));
 		}
 	}
 	
 	/**
 	 * Visitor class which performs iterative DEF-USE analysis for all program statements.
+	 * The first visit of the parse-tree analyzes all methods, and records the methods
+	 * called by each method; afterwards, a method is only re-analyzed (by 'analyzeWorklist')
+	 * if the DEF info of any of its callees is changed since its last analysis.
 	 */
-	private static class DefUseVisitor extends JavaBaseVisitor<String> {
+	private class DefUseVisitor extends JavaBaseVisitor<String> {
 		
 		private static final int PARAM = 1;
 		private static final int FIELD = 101;
@@ -230,12 +402,21 @@ public class PDGBuilder {
 		private Map<ParserRuleContext, List<DEPNode>> entry2params;
 		private Deque<JavaClass> activeClasses;
 		private MethodDefInfo methodDefInfo;
-		private JavaField[] methodParams;
-		private List<JavaField> localVars;
-		
-		public DefUseVisitor(int iter, JavaClass[] classInfos, Map<ParserRuleContext, DEPNode> dataNodes, Map<ParserRuleContext, List<DEPNode>> entry2params) {
+		private ScopedSymbolTable scope;
+		private Map<JavaClass, Map<String, JavaField>> classFields;
+		private SymbolTable symbols;
+		private Deque<ParserRuleContext> activeMethods;
+		private Map<ParserRuleContext, Deque<JavaClass>> methodClasses;
+		private Map<MethodDefInfo, Set<ParserRuleContext>> callers;
+		private Set<ParserRuleContext> worklist;
+		private Map<ParserRuleContext, String[]> argTypesCache;
+		private CallRecords calls;
+		private DEPNode analysisNode;
+		
+		public DefUseVisitor(JavaClass[] classInfos, Map<ParserRuleContext, DEPNode> dataNodes, 
+							 Map<ParserRuleContext, List<DEPNode>> entry2params, CallRecords calls) {
 			changed = false;
-			iteration = iter;
+			iteration = 1;
 			analysisVisit = false;
 			this.dataNodes = dataNodes;
 			this.entry2params = entry2params;
@@ -245,21 +426,78 @@ public class PDGBuilder {
 			selfFlowList = new LinkedHashSet<>();
 			activeClasses = new ArrayDeque<>();
 			methodDefInfo = null;
-			methodParams = new JavaField[0];
-			localVars = new ArrayList<>();
+			scope = new ScopedSymbolTable();
+			classFields = new IdentityHashMap<>();
+			symbols = null;
+			activeMethods = new ArrayDeque<>();
+			methodClasses = new IdentityHashMap<>();
+			callers = new IdentityHashMap<>();
+			worklist = new LinkedHashSet<>();
+			argTypesCache = new IdentityHashMap<>();
+			this.calls = calls;
+			analysisNode = null;
+		}
+		
+		/**
+		 * Re-analyze the methods in the worklist until it is empty;
+		 * i.e. the DEF info of all methods has reached a fixed-point.
+		 * This must be called after the first visit of the whole parse-tree.
+		 * Returns the number of re-analyzed methods.
+		 */
+		public int analyzeWorklist() {
+			iteration = 2;
+			int revisits = 0;
+			while (!worklist.isEmpty()) {
+				Iterator<ParserRuleContext> first = worklist.iterator();
+				ParserRuleContext method = first.next();
+				first.remove();
+				activeClasses = new ArrayDeque<>(methodClasses.get(method));
+				visit(method);
+				++revisits;
+			}
+			return revisits;
+		}
+		
+		/**
+		 * Record the currently analyzed method as a caller of the given method.
+		 */
+		private void addCaller(MethodDefInfo callee) {
+			if (callee != null && !activeMethods.isEmpty())
+				callers.computeIfAbsent(callee, k -> new LinkedHashSet<>()).add(activeMethods.peek());
+		}
+		
+		/**
+		 * Add all recorded callers of the given method to the worklist,
+		 * since the DEF info of the method is changed.
+		 */
+		private void defInfoChanged(MethodDefInfo method) {
+			Set<ParserRuleContext> list = callers.get(method);
+			if (list != null)
+				worklist.addAll(list);
+		}
+		
+		/**
+		 * Visit the body of the given method (or constructor) as the currently analyzed method.
+		 */
+		private void visitMethodBody(ParserRuleContext method, ParseTree body) {
+			methodClasses.putIfAbsent(method, new ArrayDeque<>(activeClasses));
+			activeMethods.push(method);
+			visit(body);
+			activeMethods.pop();
 		}
 		
 		private void analyseDefUse(DEPNode node, ParseTree expression) {
 			Logger.debug("--- ANALYSIS ---");
 			Logger.debug(node.toString());
 			analysisVisit = true;
+			analysisNode = node;
 			String expr = visit(expression);
 			node.setAbstract(expr);
 			Logger.debug(expr);
 			//
 			StringBuilder locVarsStr = new StringBuilder(256);
 			locVarsStr.append("LOCAL VARS = [");
-			for (JavaField lv: localVars)
+			for (JavaField lv: scope.getLocals())
 				locVarsStr.append(lv.TYPE).append(' ').append(lv.NAME).append(", ");
 			locVarsStr.append("]");
 			Logger.debug(locVarsStr.toString());
@@ -269,6 +507,7 @@ public class PDGBuilder {
 				Logger.debug("USABLE");
 			}
 			analysisVisit = false;
+			analysisNode = null;
 			Logger.debug("Changed = " + changed);
 			Logger.debug("DEFs = " + Arrays.toString(node.getAllDEFs()));
 			Logger.debug("USEs = " + Arrays.toString(node.getAllUSEs()));
@@ -276,10 +515,12 @@ public class PDGBuilder {
 				int status = isDefined(def);
 				if (status > -1) {
 					if (status < 100) {
-						methodDefInfo.setArgDEF(status, true);
+						if (methodDefInfo.setArgDEF(status, true))
+							defInfoChanged(methodDefInfo);
 						Logger.debug("Method defines argument #" + status);
 					} else if (status == FIELD) {
-						methodDefInfo.setStateDEF(true);
+						if (methodDefInfo.setStateDEF(true))
+							defInfoChanged(methodDefInfo);
 						if (def.startsWith("this."))
 							def = def.substring(5);
 						def = "$THIS." + def;
@@ -337,21 +578,18 @@ public class PDGBuilder {
 		 * or if the symbol is a method parameter, returns the index of the parameter.
 		 */
 		private int isDefined(String id) {
-			for (int i = 0; i < methodParams.length; ++i)
-				if (methodParams[i].NAME.equals(id))
-					return i;
-			for (JavaField local: localVars)
-				if (local.NAME.equals(id))
-					return LOCAL;
+			int param = scope.indexOfParam(id);
+			if (param > -1)
+				return param;
+			if (scope.getLocal(id) != null)
+				return LOCAL;
 			if (id.startsWith("this."))
 				id = id.substring(5);
-			for (JavaField field: activeClasses.peek().getAllFields())
-				if (field.NAME.equals(id))
-					return FIELD;
+			if (getField(activeClasses.peek(), id) != null)
+				return FIELD;
 			for (JavaClass cls: activeClasses)
-				for (JavaField field: cls.getAllFields())
-					if (field.NAME.equals(id))
-						return OUTER;
+				if (getField(cls, id) != null)
+					return OUTER;
 			return -1;
 		}
 		
@@ -361,21 +599,19 @@ public class PDGBuilder {
 		 */
 		private String getType(String id) {
 			if (isUsableExpression(id)) {
-				for (JavaField param: methodParams)
-					if (param.NAME.equals(id))
-						return param.TYPE;
-				for (JavaField local: localVars)
-					if (local.NAME.equals(id))
-						return local.TYPE;
+				int param = scope.indexOfParam(id);
+				if (param > -1)
+					return scope.getParams()[param].TYPE;
+				JavaField local = scope.getLocal(id);
+				if (local != null)
+					return local.TYPE;
 				if (id.startsWith("this."))
 					id = id.substring(4);
-				for (JavaField field: activeClasses.peek().getAllFields())
-					if (field.NAME.equals(id))
+				for (JavaClass cls: activeClasses) {
+					JavaField field = getField(cls, id);
+					if (field != null)
 						return field.TYPE;
-				for (JavaClass cls: activeClasses)
-					for (JavaField field: cls.getAllFields())
-						if (field.NAME.equals(id))
-							return field.TYPE;
+				}
 				Logger.debug("getType(" + id + ") : is USABLE but NOT DEFINED");
 				return null;
 			} else {
@@ -396,6 +632,21 @@ public class PDGBuilder {
 			}
 		}
 		
+		/**
+		 * Returns the field of the given class with the given name; null if not found.
+		 * Fields of each class are indexed by name on the first lookup.
+		 */
+		private JavaField getField(JavaClass cls, String name) {
+			Map<String, JavaField> fields = classFields.get(cls);
+			if (fields == null) {
+				fields = new HashMap<>();
+				for (JavaField field: cls.getAllFields())
+					fields.putIfAbsent(field.NAME, field);
+				classFields.put(cls, fields);
+			}
+			return fields.get(name);
+		}
+		
 		private JavaClass findClass(String type) {
 			return null;
 		}
@@ -405,19 +656,30 @@ public class PDGBuilder {
 		 * Returns null if not found.
 		 */
 		private MethodDefInfo findDefInfo(String callee, String name, JavaParser.ExpressionListContext ctx) {
-			List<MethodDefInfo> list = methodDEFs.get(name);
+			List<MethodDefInfo> list = getMethodDEFs(name);
 			Logger.debug("METHOD NAME: " + name);
 			Logger.debug("# found = " + (list == null ? 0 : list.size()));
 			//
 			if (list == null)
-				return null;
+				return findLibraryDefInfo(callee, name, ctx);
+			// a call on a variable whose class is not analyzed (nor indexed) is a library call,
+			// even if an analyzed method has the same name; so its summary (if any) comes first,
+			// and the guess by name below is only used for library methods without a summary
+			if (librarySummaries != null && callee != null && isDefined(callee) > -1) {
+				String type = getType(callee);
+				if (type != null && findClassInfo(type) == null) {
+					MethodDefInfo summary = findLibraryDefInfo(callee, name, ctx);
+					if (summary != null)
+						return summary;
+				}
+			}
 			//
+			int argsCount = ctx == null ? 0 : ctx.expression().size();
 			if (list.size() == 1) { // only one candidate
 				Logger.debug("SINGLE CANDIDATE");
 				MethodDefInfo mtd = list.get(0);
 				// just check params-count to make sure
-				if (ctx != null && mtd.PARAM_TYPES != null &&
-						mtd.PARAM_TYPES.length != ctx.expression().size())
+				if (mtd.PARAM_TYPES.length != argsCount)
 					return null;
 				Logger.debug("WITH MATCHING PARAMS COUNT");
 				return mtd;
@@ -425,119 +687,121 @@ public class PDGBuilder {
 			//
 			if (callee == null) { // no callee; so search for self methods
 				Logger.debug("NO CALLEE");
-				forEachDefInfo:
-				for (MethodDefInfo mtd : list) {
-					// check package-name
-					if (!mtd.PACKAGE.equals(activeClasses.peek().PACKAGE))
-						continue;
-					// check class-name
-					boolean classNameMatch = false;
-					for (JavaClass cls: activeClasses) {
-						if (mtd.CLASS_NAME.equals(cls.NAME)) {
-							classNameMatch = true;
-							break;
-						}
-					}
-					if (!classNameMatch)
-						continue;
-					// check params-count
-					if (ctx != null && mtd.PARAM_TYPES != null &&
-							mtd.PARAM_TYPES.length != ctx.expression().size())
-						continue;
-					// check params-types
-					if (ctx != null) {
-						String[] argTypes = new String[ctx.expression().size()];
-						for (int i = 0; i < argTypes.length; ++i) {
-							String arg = visit(ctx.expression(i));
-							argTypes[i] = getType(arg);
-						}
-						if (mtd.PARAM_TYPES != null) {
-							for (int i = 0; i < argTypes.length; ++i) {
-								if (argTypes[i] == null)
-									continue;
-								if (!argTypes[i].equals(mtd.PARAM_TYPES[i]))
-									continue forEachDefInfo;
-							}
-						}
-					}
-					return mtd;
+				// search from the inner-most class to the outer-most one
+				String pkg = activeClasses.peek().PACKAGE;
+				for (JavaClass cls: activeClasses) {
+					MethodDefInfo mtd = findDefInfo(pkg, cls.NAME, name, ctx);
+					if (mtd != null)
+						return mtd;
 				}
 			} else if (isDefined(callee) > -1) { // has a defined callee
 				Logger.debug("DEFINED CALLEE");
 				String type = getType(callee);
-				JavaClass cls = allClassInfos.get(type);
+				JavaClass cls = findClassInfo(type);
 				if (cls != null && cls.hasMethod(name)) {
-					forEachDefInfo:
-					for (MethodDefInfo mtd : list) {
-						// check package-name
-						if (!mtd.PACKAGE.equals(cls.PACKAGE))
-							continue;
-						// check class-name
-						if (!mtd.CLASS_NAME.equals(cls.NAME)) 
-							continue;
-						// check params-count
-						if (ctx != null && mtd.PARAM_TYPES != null &&
-								mtd.PARAM_TYPES.length != ctx.expression().size())
-							continue;
-						// check params-types
-						if (ctx != null) {
-							String[] argTypes = new String[ctx.expression().size()];
-							for (int i = 0; i < argTypes.length; ++i) {
-								String arg = visit(ctx.expression(i));
-								argTypes[i] = getType(arg);
-							}
-							if (mtd.PARAM_TYPES != null) {
-								for (int i = 0; i < argTypes.length; ++i) {
-									if (argTypes[i] == null)
-										continue;
-									if (!argTypes[i].equals(mtd.PARAM_TYPES[i]))
-										continue forEachDefInfo;
-								}
-							}
-						}
+					MethodDefInfo mtd = findDefInfo(cls.PACKAGE, cls.NAME, name, ctx);
+					if (mtd != null)
 						return mtd;
-					}
 					Logger.debug("METHOD DEF INFO NOT FOUND!");
 				} else {
 					Logger.debug((cls == null ? 
 							"CLASS OF TYPE " + type + " NOT FOUND!" : 
 							"CLASS HAS NO SUCH METHOD!"));
+					if (cls == null)
+						return findLibraryDefInfo(callee, name, ctx);
 				}
 			} else { // has an undefined callee
 				Logger.debug("UNDEFINED CALLEE.");
 				//
 				// TODO: use a global retType for visiting expressions
 				//
+				return findLibraryDefInfo(callee, name, ctx);
+			}
+			return null;
+		}
+		
+		/**
+		 * Find the side-effect summary of a library method, called on the given callee;
+		 * the callee is either a defined variable, or a class name (for static methods).
+		 * Returns null if not found, or if no library summaries are used.
+		 */
+		private MethodDefInfo findLibraryDefInfo(String callee, String name, JavaParser.ExpressionListContext ctx) {
+			if (librarySummaries == null || callee == null)
+				return null;
+			String type = isDefined(callee) > -1 ? getType(callee) : callee;
+			if (type == null)
+				return null;
+			int argsCount = ctx == null ? 0 : ctx.expression().size();
+			MethodDefInfo info = librarySummaries.find(type, name, argsCount);
+			Logger.debug("LIBRARY SUMMARY OF " + type + "." + name + ": " + (info == null ? "NOT FOUND" : "FOUND"));
+			return info;
+		}
+		
+		/**
+		 * Find the method-definition-info of the given class, which matches
+		 * the number and types of the given call arguments.
+		 * Returns null if not found.
+		 */
+		private MethodDefInfo findDefInfo(String pkg, String cls, String name, JavaParser.ExpressionListContext ctx) {
+			int argsCount = ctx == null ? 0 : ctx.expression().size();
+			List<MethodDefInfo> list = getMethodDEFs(pkg, cls, name, argsCount);
+			if (list == null)
+				return null;
+			if (argsCount == 0)
+				return list.get(0);
+			String[] argTypes = getArgTypes(ctx);
+			forEachDefInfo:
+			for (MethodDefInfo mtd : list) {
+				for (int i = 0; i < argTypes.length; ++i) {
+					if (argTypes[i] == null)
+						continue;
+					if (!argTypes[i].equals(mtd.PARAM_TYPES[i]))
+						continue forEachDefInfo;
+				}
+				return mtd;
 			}
 			return null;
 		}
 		
+		/**
+		 * Returns the types of the given call arguments; null for unknown types.
+		 * Argument types are resolved once per call-site and memoized,
+		 * since the types of local variables and fields do not change between visits.
+		 */
+		private String[] getArgTypes(JavaParser.ExpressionListContext ctx) {
+			String[] argTypes = argTypesCache.get(ctx);
+			if (argTypes == null) {
+				argTypes = new String[ctx.expression().size()];
+				for (int i = 0; i < argTypes.length; ++i) {
+					String arg = visit(ctx.expression(i));
+					argTypes[i] = getType(arg);
+				}
+				argTypesCache.put(ctx, argTypes);
+			}
+			return argTypes;
+		}
+		
 		/**
 		 * Find and return matching method-definition-info.
 		 * Returns null if not found.
 		 */
 		private MethodDefInfo findDefInfo(String name, String type, JavaField[] params) {
-			List<MethodDefInfo> infoList = methodDEFs.get(name);
+			List<MethodDefInfo> infoList = getMethodDEFs(name);
 			if (infoList.size() > 1) {
+				infoList = getMethodDEFs(activeClasses.peek().PACKAGE, 
+						activeClasses.peek().NAME, name, params.length);
+				if (infoList == null)
+					return null;
 				forEachInfo:
 				for (MethodDefInfo info: infoList) {
-					if (!info.PACKAGE.equals(activeClasses.peek().PACKAGE)) 
-						continue;
-					if (!info.CLASS_NAME.equals(activeClasses.peek().NAME)) 
-						continue;
 					if ((info.RET_TYPE == null && type != null) || 
 							(info.RET_TYPE != null && type == null)) 
 						continue;
 					if (type != null && !type.startsWith(info.RET_TYPE)) 
 						continue;
-					if (info.PARAM_TYPES != null) {
-						if (info.PARAM_TYPES.length != params.length) 
-							continue;
-						for (int i = 0; i < params.length; ++i)
-							if (!params[i].TYPE.startsWith(info.PARAM_TYPES[i])) 
-								continue forEachInfo;
-					} else if (params.length > 0) 
-						continue;
+					for (int i = 0; i < params.length; ++i)
+						if (!params[i].TYPE.startsWith(info.PARAM_TYPES[i])) 
+							continue forEachInfo;
 					return info;
 				}
 			} else 
@@ -584,8 +848,7 @@ public class PDGBuilder {
 		public String visitClassBodyDeclaration(JavaParser.ClassBodyDeclarationContext ctx) {
 			// classBodyDeclaration :  ';'  |  'static'? block  |  modifier* memberDeclaration
 			if (ctx.block() != null) {
-				localVars.clear();
-				methodParams = new JavaField[0];
+				scope.enterMethod(new JavaField[0]);
 				methodDefInfo = new MethodDefInfo(null, "static-block", "", activeClasses.peek().NAME, null);
 				return null;
 			} else
@@ -595,9 +858,12 @@ public class PDGBuilder {
 		@Override
 		public String visitConstructorDeclaration(JavaParser.ConstructorDeclarationContext ctx) {
 			// Identifier formalParameters ('throws' qualifiedNameList)?  constructorBody
+			SymbolTable outerSymbols = symbols;
+			JavaField[] methodParams;
 			DEPNode entry;
 			if (iteration == 1) {
-				entry = new DEPNode();
+				symbols = new SymbolTable();
+				entry = new DEPNode(symbols);
 				List<DEPNode> params = new ArrayList<>();
 				entry2params.put(ctx, params);
 				entry.setLineOfCode(ctx.getStart().getLine());
@@ -616,7 +882,7 @@ public class PDGBuilder {
 							ctx.formalParameters().formalParameterList().formalParameter()) {
 						paramTypes.add(visitType(prm.typeType()));
 						paramIDs.add(prm.variableDeclaratorId().Identifier().getText());
-						DEPNode param = new DEPNode();
+						DEPNode param = new DEPNode(symbols);
 						changed |= param.addDEF(prm.variableDeclaratorId().Identifier().getText());
 						param.setLineOfCode(prm.getStart().getLine());
 						param.setCode(getOriginalCodeText(prm));
@@ -631,7 +897,7 @@ public class PDGBuilder {
 					if (lastParam != null) {
 						paramTypes.add(visitType(lastParam.typeType()));
 						paramIDs.add(lastParam.variableDeclaratorId().Identifier().getText());
-						DEPNode param = new DEPNode();
+						DEPNode param = new DEPNode(symbols);
 						changed |= param.addDEF(lastParam.variableDeclaratorId().Identifier().getText());
 						param.setLineOfCode(lastParam.getStart().getLine());
 						param.setCode(getOriginalCodeText(lastParam));
@@ -652,10 +918,14 @@ public class PDGBuilder {
 //					changed |= entry.addDEF(var);
 			} else {
 				entry = (DEPNode) dataNodes.get(ctx);
+				symbols = entry.getSymbolTable();
 				methodParams = (JavaField[]) entry.getProperty("params");
 			}
+			scope.enterMethod(methodParams);
 
 			methodDefInfo = findDefInfo((String) entry.getProperty("name"), null, methodParams);
+			if (calls != null && methodDefInfo != null)
+				calls.addMethod(methodDefInfo, ctx);
 
 			if (methodDefInfo == null) {
 				Logger.error("Constructor NOT FOUND!");
@@ -664,17 +934,16 @@ public class PDGBuilder {
 				Logger.error("PARAMS = " + Arrays.toString(methodParams));
 				Logger.error("CLASS = " + activeClasses.peek().NAME);
 				Logger.error("PACKAGE = " + activeClasses.peek().PACKAGE);
-				List list = methodDEFs.get((String) entry.getProperty("name"));
+				List list = getMethodDEFs((String) entry.getProperty("name"));
 				for (int i = 0; i < list.size(); ++i)
 					Logger.error(list.get(i).toString());
 			}
 
 			// Now visit method body ...
-			localVars.clear();
-			visit(ctx.constructorBody());
+			visitMethodBody(ctx, ctx.constructorBody());
 			//
-			localVars.clear();
-			methodParams = new JavaField[0];
+			scope.enterMethod(new JavaField[0]);
+			symbols = outerSymbols;
 			return null;
 		}
 		
@@ -693,9 +962,12 @@ public class PDGBuilder {
 			//
 			// lastFormalParameter :  variableModifier* typeType '...' variableDeclaratorId
 			//
+			SymbolTable outerSymbols = symbols;
+			JavaField[] methodParams;
 			DEPNode entry;
 			if (iteration == 1) {
-				entry = new DEPNode();
+				symbols = new SymbolTable();
+				entry = new DEPNode(symbols);
 				List<DEPNode> params = new ArrayList<>();
 				entry2params.put(ctx, params);
 				entry.setLineOfCode(ctx.getStart().getLine());
@@ -717,7 +989,7 @@ public class PDGBuilder {
 							ctx.formalParameters().formalParameterList().formalParameter()) {
 						paramTypes.add(visitType(prm.typeType()));
 						paramIDs.add(prm.variableDeclaratorId().Identifier().getText());
-						DEPNode param = new DEPNode();
+						DEPNode param = new DEPNode(symbols);
 						changed |= param.addDEF(prm.variableDeclaratorId().Identifier().getText());
 						param.setLineOfCode(prm.getStart().getLine());
 						param.setCode(getOriginalCodeText(prm));
@@ -732,7 +1004,7 @@ public class PDGBuilder {
 					if (lastParam != null) {
 						paramTypes.add(visitType(lastParam.typeType()));
 						paramIDs.add(lastParam.variableDeclaratorId().Identifier().getText());
-						DEPNode param = new DEPNode();
+						DEPNode param = new DEPNode(symbols);
 						changed |= param.addDEF(lastParam.variableDeclaratorId().Identifier().getText());
 						param.setLineOfCode(lastParam.getStart().getLine());
 						param.setCode(getOriginalCodeText(lastParam));
@@ -753,11 +1025,15 @@ public class PDGBuilder {
 //					changed |= entry.addDEF(pid);
 			} else {
 				entry = (DEPNode) dataNodes.get(ctx);
+				symbols = entry.getSymbolTable();
 				methodParams = (JavaField[]) entry.getProperty("params");
 			}
+			scope.enterMethod(methodParams);
 			
 			methodDefInfo = findDefInfo((String) entry.getProperty("name"), 
 										(String) entry.getProperty("type"),	methodParams);
+			if (calls != null && methodDefInfo != null)
+				calls.addMethod(methodDefInfo, ctx);
 			if (methodDefInfo == null) {
 				Logger.error("Method NOT FOUND!");
 				Logger.error("NAME = " + (String) entry.getProperty("name"));
@@ -765,18 +1041,17 @@ public class PDGBuilder {
 				Logger.error("PARAMS = " + Arrays.toString(methodParams));
 				Logger.error("CLASS = " + activeClasses.peek().NAME);
 				Logger.error("PACKAGE = " + activeClasses.peek().PACKAGE);
-				List list = methodDEFs.get((String) entry.getProperty("name"));
+				List list = getMethodDEFs((String) entry.getProperty("name"));
 				for (int i = 0; i < list.size(); ++i)
 					Logger.error(list.get(i).toString());
 			}
 			
 			// Now visit method body ...
-			localVars.clear();
 			if (ctx.methodBody() != null)
-				visit(ctx.methodBody());
+				visitMethodBody(ctx, ctx.methodBody());
 			//
-			localVars.clear();
-			methodParams = new JavaField[0];
+			scope.enterMethod(new JavaField[0]);
+			symbols = outerSymbols;
 			return null;
 		}
 		
@@ -799,7 +1074,7 @@ public class PDGBuilder {
 			// TODO: is this located correctly? Or should it be placed after 'if (analysisVisit) ...'
 
 			for (JavaParser.VariableDeclaratorContext var : ctx.variableDeclarators().variableDeclarator())
-				localVars.add(new JavaField(null, false, visitType(ctx.typeType()), 
+				scope.declare(new JavaField(null, false, visitType(ctx.typeType()), 
 						var.variableDeclaratorId().Identifier().getText()));
 			//
 			if (analysisVisit)
@@ -807,7 +1082,7 @@ public class PDGBuilder {
 			//
 			DEPNode declr;
 			if (iteration == 1) {
-				declr = new DEPNode();
+				declr = new DEPNode(symbols);
 				declr.setLineOfCode(ctx.getStart().getLine());
 				declr.setCode(getOriginalCodeText(ctx));
 				dataNodes.put(ctx, declr);
@@ -830,12 +1105,11 @@ public class PDGBuilder {
 		public String visitBlock(JavaParser.BlockContext ctx) {
 			// block :  '{' blockStatement* '}'
 			// Local vars defined inside a block, are only valid till the end of that block.
-			int entrySize = localVars.size();
+			scope.pushScope();
 			//
 			visitChildren(ctx);
 			//
-			if (localVars.size() > entrySize)
-				localVars.subList(entrySize, localVars.size()).clear();
+			scope.popScope();
 			return null;
 		}
 		
@@ -847,7 +1121,7 @@ public class PDGBuilder {
 			//
 			DEPNode expr;
 			if (iteration == 1) {
-				expr = new DEPNode();
+				expr = new DEPNode(symbols);
 				expr.setLineOfCode(ctx.getStart().getLine());
 				expr.setCode(getOriginalCodeText(ctx));
 				dataNodes.put(ctx, expr);
@@ -865,7 +1139,7 @@ public class PDGBuilder {
 			// 'if' parExpression statement ('else' statement)?
 			DEPNode ifNode;
 			if (iteration == 1) {
-				ifNode = new DEPNode();
+				ifNode = new DEPNode(symbols);
 				ifNode.setLineOfCode(ctx.getStart().getLine());
 				ifNode.setCode("if " + getOriginalCodeText(ctx.parExpression()));
 				dataNodes.put(ctx, ifNode);
@@ -884,7 +1158,7 @@ public class PDGBuilder {
 		@Override
 		public String visitForStatement(JavaParser.ForStatementContext ctx) {
 			// 'for' '(' forControl ')' statement
-			int entrySize = localVars.size();
+			scope.pushScope();
 			//  First, we should check type of for-loop ...
 			if (ctx.forControl().enhancedForControl() != null) {
 				// This is a for-each loop;
@@ -892,7 +1166,7 @@ public class PDGBuilder {
 				//     variableModifier* typeType variableDeclaratorId ':' expression
 				DEPNode forExpr;
 				if (iteration == 1) {
-					forExpr = new DEPNode();
+					forExpr = new DEPNode(symbols);
 					forExpr.setLineOfCode(ctx.forControl().getStart().getLine());
 					forExpr.setCode("for (" + getOriginalCodeText(ctx.forControl()) + ")");
 					dataNodes.put(ctx.forControl().enhancedForControl(), forExpr);
@@ -903,7 +1177,7 @@ public class PDGBuilder {
 				// Now analyse DEF-USE by visiting the expression ...
 				String type = visitType(ctx.forControl().enhancedForControl().typeType());
 				String var = ctx.forControl().enhancedForControl().variableDeclaratorId().Identifier().getText();
-				localVars.add(new JavaField(null, false, type, var));
+				scope.declare(new JavaField(null, false, type, var));
 				changed |= forExpr.addDEF(var);
 				analyseDefUse(forExpr, ctx.forControl().enhancedForControl().expression());
 			} else {
@@ -912,7 +1186,7 @@ public class PDGBuilder {
 				if (ctx.forControl().forInit() != null) { // non-empty init
 					DEPNode forInit;
 					if (iteration == 1) {
-						forInit = new DEPNode();
+						forInit = new DEPNode(symbols);
 						forInit.setLineOfCode(ctx.forControl().forInit().getStart().getLine());
 						forInit.setCode(getOriginalCodeText(ctx.forControl().forInit()));
 						dataNodes.put(ctx.forControl().forInit(), forInit);
@@ -930,7 +1204,7 @@ public class PDGBuilder {
 				if (ctx.forControl().expression() != null) { // non-empty predicate-expression
 					DEPNode forExpr;
 					if (iteration == 1) {
-						forExpr = new DEPNode();
+						forExpr = new DEPNode(symbols);
 						forExpr.setLineOfCode(ctx.forControl().expression().getStart().getLine());
 						forExpr.setCode("for (" + getOriginalCodeText(ctx.forControl().expression()) + ")");
 						dataNodes.put(ctx.forControl().expression(), forExpr);
@@ -945,7 +1219,7 @@ public class PDGBuilder {
 				if (ctx.forControl().forUpdate() != null) { // non-empty for-update
 					DEPNode forUpdate;
 					if (iteration == 1) {
-						forUpdate = new DEPNode();
+						forUpdate = new DEPNode(symbols);
 						forUpdate.setCode(getOriginalCodeText(ctx.forControl().forUpdate()));
 						forUpdate.setLineOfCode(ctx.forControl().forUpdate().getStart().getLine());
 						dataNodes.put(ctx.forControl().forUpdate(), forUpdate);
@@ -960,8 +1234,7 @@ public class PDGBuilder {
 			// visit for loop body
 			String visit = visit(ctx.statement());
 			// clear any local vars defined in the for loop
-			if (localVars.size() > entrySize)
-				localVars.subList(entrySize, localVars.size()).clear();
+			scope.popScope();
 			return visit;
 		}
 		
@@ -970,7 +1243,7 @@ public class PDGBuilder {
 			// 'while' parExpression statement
 			DEPNode whileNode;
 			if (iteration == 1) {
-				whileNode = new DEPNode();
+				whileNode = new DEPNode(symbols);
 				whileNode.setLineOfCode(ctx.getStart().getLine());
 				whileNode.setCode("while " + getOriginalCodeText(ctx.parExpression()));
 				dataNodes.put(ctx, whileNode);
@@ -991,7 +1264,7 @@ public class PDGBuilder {
 			//
 			DEPNode whileNode;
 			if (iteration == 1) {
-				whileNode = new DEPNode();
+				whileNode = new DEPNode(symbols);
 				whileNode.setLineOfCode(ctx.parExpression().getStart().getLine());
 				whileNode.setCode("while " + getOriginalCodeText(ctx.parExpression()));
 				dataNodes.put(ctx, whileNode);
@@ -1010,7 +1283,7 @@ public class PDGBuilder {
 			//  switchBlockStatementGroup :  switchLabel+ blockStatement+
 			DEPNode switchNode;
 			if (iteration == 1) {
-				switchNode = new DEPNode();
+				switchNode = new DEPNode(symbols);
 				switchNode.setLineOfCode(ctx.getStart().getLine());
 				switchNode.setCode("switch " + getOriginalCodeText(ctx.parExpression()));
 				dataNodes.put(ctx, switchNode);
@@ -1033,7 +1306,7 @@ public class PDGBuilder {
 			// 'return' expression? ';'
 			DEPNode ret;
 			if (iteration == 1) {
-				ret = new DEPNode();
+				ret = new DEPNode(symbols);
 				ret.setLineOfCode(ctx.getStart().getLine());
 				ret.setCode(getOriginalCodeText(ctx));
 				dataNodes.put(ctx, ret);
@@ -1052,7 +1325,7 @@ public class PDGBuilder {
 			// 'synchronized' parExpression block
 			DEPNode syncStmt;
 			if (iteration == 1) {
-				syncStmt = new DEPNode();
+				syncStmt = new DEPNode(symbols);
 				syncStmt.setLineOfCode(ctx.getStart().getLine());
 				syncStmt.setCode("synchronized " + getOriginalCodeText(ctx.parExpression()));
 				dataNodes.put(ctx, syncStmt);
@@ -1071,7 +1344,7 @@ public class PDGBuilder {
 			// 'throw' expression ';'
 			DEPNode throwNode;
 			if (iteration == 1) {
-				throwNode = new DEPNode();
+				throwNode = new DEPNode(symbols);
 				throwNode.setLineOfCode(ctx.getStart().getLine());
 				throwNode.setCode("throw " + getOriginalCodeText(ctx.expression()));
 				dataNodes.put(ctx, throwNode);
@@ -1099,7 +1372,7 @@ public class PDGBuilder {
 				for (JavaParser.CatchClauseContext cx: ctx.catchClause()) {
 					DEPNode catchNode;
 					if (iteration == 1) {
-						catchNode = new DEPNode();
+						catchNode = new DEPNode(symbols);
 						catchNode.setLineOfCode(cx.getStart().getLine());
 						catchNode.setCode("catch (" + cx.catchType().getText() + " " + cx.Identifier().getText() + ")");
 						dataNodes.put(cx, catchNode);
@@ -1110,12 +1383,12 @@ public class PDGBuilder {
 					// Define the exception var
 					String type = cx.catchType().getText();
 					String var = cx.Identifier().getText();
-					JavaField exceptionVar = new JavaField(null, false, type, var);
-					localVars.add(exceptionVar);
+					scope.pushScope();
+					scope.declare(new JavaField(null, false, type, var));
 					changed |= catchNode.addDEF(var);
 					//
 					visit(cx.block());
-					localVars.remove(exceptionVar);
+					scope.popScope();
 				}
 			}
 			if (ctx.finallyBlock() != null)
@@ -1132,12 +1405,12 @@ public class PDGBuilder {
 			// resources :  resource (';' resource)*
 			// resource  :  variableModifier* classOrInterfaceType variableDeclaratorId '=' expression
 			//
-			int entrySize = localVars.size();
+			scope.pushScope();
 			// Analyze all resources
 			for (JavaParser.ResourceContext rsrx: ctx.resourceSpecification().resources().resource()) {
 				DEPNode resource;
 				if (iteration == 1) {
-					resource = new DEPNode();
+					resource = new DEPNode(symbols);
 					resource.setLineOfCode(rsrx.getStart().getLine());
 					resource.setCode(getOriginalCodeText(rsrx));
 					dataNodes.put(rsrx, resource);
@@ -1148,7 +1421,7 @@ public class PDGBuilder {
 				// Define the resource variable
 				String type = rsrx.classOrInterfaceType().getText();
 				String var = rsrx.variableDeclaratorId().getText();
-				localVars.add(new JavaField(null, false, type, var));
+				scope.declare(new JavaField(null, false, type, var));
 				//
 				// Now analyse DEF-USE by visiting the expression ...
 				resource.addDEF(var);
@@ -1166,7 +1439,7 @@ public class PDGBuilder {
 				for (JavaParser.CatchClauseContext cx: ctx.catchClause()) {
 					DEPNode catchNode;
 					if (iteration == 1) {
-						catchNode = new DEPNode();
+						catchNode = new DEPNode(symbols);
 						catchNode.setLineOfCode(cx.getStart().getLine());
 						catchNode.setCode("catch (" + cx.catchType().getText() + " " + cx.Identifier().getText() + ")");
 						dataNodes.put(cx, catchNode);
@@ -1177,13 +1450,13 @@ public class PDGBuilder {
 					// Define the exception var
 					String type = cx.catchType().getText();
 					String var = cx.Identifier().getText();
-					JavaField exception = new JavaField(null, false, type, var);
-					localVars.add(exception);
+					scope.pushScope();
+					scope.declare(new JavaField(null, false, type, var));
 					changed |= catchNode.addDEF(var);
 					//
 					visit(cx.block());
 					//
-					localVars.remove(exception);
+					scope.popScope();
 				}
 			}
 			if (ctx.finallyBlock() != null)
@@ -1191,8 +1464,7 @@ public class PDGBuilder {
 				visit(ctx.finallyBlock().block());
 			//			
 			// Remove resources from local vars ...
-			if (localVars.size() > entrySize)
-				localVars.subList(entrySize, localVars.size()).clear();
+			scope.popScope();
 			return null;
 		}		
 		
@@ -1324,29 +1596,51 @@ public class PDGBuilder {
 		 * This method will also add usable expressions to the USE-list.
 		 */
 		private String visitMethodArgs(JavaParser.ExpressionListContext ctx, MethodDefInfo defInfo) {
+			return visitMethodArgs(null, ctx, defInfo);
+		}
+		
+		/**
+		 * Visit the arguments of a method call; if the given call context is not null,
+		 * the call is recorded as a call of the currently analyzed statement.
+		 */
+		private String visitMethodArgs(ParserRuleContext call, JavaParser.ExpressionListContext ctx, MethodDefInfo defInfo) {
 			// expressionList :  expression (',' expression)*
-			if (ctx != null) {
-				StringBuilder args = new StringBuilder();
-				List<JavaParser.ExpressionContext> argsList = ctx.expression();
-				String arg = visit(argsList.get(0));
+			int argsCount = ctx == null ? 0 : ctx.expression().size();
+			String[] argExprs = new String[argsCount];
+			String[] argVars = new String[argsCount];
+			StringBuilder args = new StringBuilder();
+			for (int i = 0; i < argsCount; ++i) {
+				String arg = visit(ctx.expression(i));
+				argExprs[i] = arg;
+				if (i > 0)
+					args.append(", ");
 				args.append(arg);
 				if (isUsableExpression(arg)) {
 					useList.add(arg);
-					if (defInfo != null && defInfo.argDEFs()[0])
+					if (defInfo != null && defInfo.argDEFs()[i])
 						defList.add(arg);
+					argVars[i] = resolveVar(arg);
 				}
-				for (int i = 1; i < argsList.size(); ++i) {
-					arg = visit(argsList.get(i));
-					args.append(", ").append(arg);
-					if (isUsableExpression(arg)) {
-						useList.add(arg);
-						if (defInfo != null && defInfo.argDEFs()[i])
-							defList.add(arg);
-					}
-				}
-				return args.toString();
-			} else
-				return "";
+			}
+			if (call != null && calls != null && defInfo != null && analysisVisit && analysisNode != null)
+				calls.addCall(analysisNode.getRuleCtx(), call, defInfo, argExprs, argVars);
+			return args.toString();
+		}
+		
+		/**
+		 * Returns the variable name of the given usable expression, as it is recorded
+		 * in DEF-USE info (i.e. fields are prefixed by '$THIS.'); null if not defined.
+		 */
+		private String resolveVar(String var) {
+			int status = isDefined(var);
+			if (status < 0)
+				return null;
+			if (status == FIELD) {
+				if (var.startsWith("this."))
+					var = var.substring(5);
+				var = "$THIS." + var;
+			}
+			return var;
 		}
 		
 		@Override
@@ -1378,11 +1672,12 @@ public class PDGBuilder {
 			}
 			//
 			MethodDefInfo defInfo = findDefInfo(callee, methodName, ctx.expressionList());
+			addCaller(defInfo);
 			Logger.debug("FIND DEF RESULT: " + defInfo);
 			Logger.debug("---");
 			if (callee != null && defInfo != null && defInfo.doesStateDEF())
 				defList.add(callee);
-			return callExpression + '(' + visitMethodArgs(ctx.expressionList(), defInfo) + ')';
+			return callExpression + '(' + visitMethodArgs(ctx, ctx.expressionList(), defInfo) + ')';
 		}
 		
 		@Override
@@ -1446,7 +1741,8 @@ public class PDGBuilder {
 				// class constructor ...
 				JavaParser.ArgumentsContext argsCtx = ctx.creator().classCreatorRest().arguments();
 				MethodDefInfo defInfo = findDefInfo(null, creator, argsCtx.expressionList());
-				rest = '(' + visitMethodArgs(argsCtx.expressionList(), defInfo) + ')';
+				addCaller(defInfo);
+				rest = '(' + visitMethodArgs(ctx, argsCtx.expressionList(), defInfo) + ')';
 			}
 			return "$NEW " + creator + rest;
 		}
@@ -1468,7 +1764,8 @@ public class PDGBuilder {
 			// 3rd process constructor arguments ...
 			JavaParser.ArgumentsContext argsCtx = ctx.innerCreator().classCreatorRest().arguments();
 			MethodDefInfo defInfo = findDefInfo(null, creator, argsCtx.expressionList());
-			String rest = '(' + visitMethodArgs(argsCtx.expressionList(), defInfo) + ')';
+			addCaller(defInfo);
+			String rest = '(' + visitMethodArgs(ctx, argsCtx.expressionList(), defInfo) + ')';
 			return expression + ".$NEW " + creator + rest;
 		}
 		
@@ -1855,102 +2152,3 @@ public class PDGBuilder {
 	}
 	
 }
-
-
-/**
- * A simple structure to store DEF information about a Java method.
- * 
- * @author Seyed Mohammad Ghaffarian
- */
-class MethodDefInfo {
-	
-	// Method ID
-	public final String NAME;
-	public final String PACKAGE;
-	public final String RET_TYPE;
-	public final String CLASS_NAME;
-	public final String[] PARAM_TYPES;
-	
-	// DEF Info
-	private boolean stateDEF;
-	private boolean[] argDEFs;
-	private List<String> fieldDEFs;
-	
-	public MethodDefInfo(String ret, String name, String pkg, String cls, String[] args) {
-		NAME = name;
-		RET_TYPE = ret;
-		CLASS_NAME = cls;
-		PACKAGE = pkg == null ? "" : pkg;
-		PARAM_TYPES = args == null ? new String[0] : args;
-		//
-		fieldDEFs = new ArrayList<>(); 
-		stateDEF = guessByTypeOrName(); 
-		argDEFs = new boolean[PARAM_TYPES.length];  // all initialized to 'false'
-	}
-
-	private boolean guessByTypeOrName() {
-		// First check if this method is a constructor ...
-		if (RET_TYPE == null)
-			return true;
-		// If not, then try to guess by method-name ...
-		String[] prefixes = { "set", "put", "add", "insert", "push", "append" };
-		for (String pre: prefixes)
-			if (NAME.toLowerCase().startsWith(pre))
-				return true;
-		return false;
-	}
-
-	public boolean doesStateDEF() {
-		return stateDEF;
-	}
-
-	public void setStateDEF(boolean stateDef) {
-		stateDEF = stateDef;
-	}
-
-	public boolean[] argDEFs() {
-		return argDEFs;
-	}
-	
-	public void setArgDEF(int argIndex, boolean def) {
-		argDEFs[argIndex] = def;
-	}
-
-	public void setAllArgDEFs(boolean[] argDefs) {
-		argDEFs = argDefs;
-	}
-
-	public String[] fieldDEFs() {
-		return fieldDEFs.toArray(new String[fieldDEFs.size()]);
-	}
-
-	public void addFieldDEF(String fieldName) {
-		if (!fieldDEFs.contains(fieldName)) {
-			fieldDEFs.add(fieldName);
-			stateDEF = true;
-		}
-	}
-	
-	@Override
-	public boolean equals(Object obj) {
-		if (!(obj instanceof MethodDefInfo))
-			return false;
-		MethodDefInfo info = (MethodDefInfo) obj;
-		return this.NAME.equals(info.NAME) && this.CLASS_NAME.equals(info.CLASS_NAME)
-				&& this.PACKAGE.equals(info.PACKAGE) && this.RET_TYPE.equals(info.RET_TYPE)
-				&& Arrays.equals(this.PARAM_TYPES, info.PARAM_TYPES);
-	}
-
-	@Override
-	public String toString() {
-		String retType = RET_TYPE == null ? "null" : RET_TYPE;
-		String args = PARAM_TYPES == null ? "null" : Arrays.toString(PARAM_TYPES);
-		StringBuilder str = new StringBuilder();
-		str.append("{ TYPE : \"").append(retType).append("\", ");
-		str.append("NAME : \"").append(NAME).append("\", ");
-		str.append("ARGS : ").append(args).append(", ");
-		str.append("CLASS : \"").append(CLASS_NAME).append("\", ");
-		str.append("PACKAGE : \"").append(PACKAGE).append("\" }");
-		return str.toString();
-	}
-}
@@ -0,0 +1,233 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Program slicing on a Program Dependence Graph.
+ * A backward slice of a criterion node contains all nodes which the criterion
+ * (transitively) depends on; a forward slice contains all nodes which (transitively)
+ * depend on the criterion. Slices follow data dependences only, or both data and
+ * control dependences. A chop between a source and a sink contains the nodes
+ * which depend on the source, and the sink depends on them.
+ *
+ * Nodes are identified by an index in [0, size()), in order of the PDG vertices;
+ * dependences are stored as int-indexed adjacency arrays, and slices are computed
+ * as bit-sets by a single reachability sweep. The slicer is a snapshot of the PDG;
+ * later modifications of the PDG are not reflected in it.
+ * A slicer reuses its buffers between sweeps, so it is not thread-safe.
+ */
+public class PDGSlicer {
+
+	private final ProgramDependenceGraph pdg;
+	private final DEPNode[] nodes;
+	private final Map<DEPNode, Integer> indices;
+	private final Adjacency dataSuccs, dataPreds;
+	private final Adjacency ctrlSuccs, ctrlPreds;
+	// reusable buffers of reachability sweeps
+	private final int[] stack;
+
+	public PDGSlicer(ProgramDependenceGraph pdg) {
+		this.pdg = pdg;
+		int n = pdg.vertexCount();
+		nodes = new DEPNode[n];
+		indices = new IdentityHashMap<>();
+		Iterator<DEPNode> vertices = pdg.allVerticesIterator();
+		while (vertices.hasNext()) {
+			DEPNode node = vertices.next();
+			nodes[indices.size()] = node;
+			indices.put(node, indices.size());
+		}
+		dataSuccs = new Adjacency(pdg, DEPEdge.Type.DATA, false);
+		dataPreds = new Adjacency(pdg, DEPEdge.Type.DATA, true);
+		ctrlSuccs = new Adjacency(pdg, DEPEdge.Type.CTRL, false);
+		ctrlPreds = new Adjacency(pdg, DEPEdge.Type.CTRL, true);
+		stack = new int[n];
+	}
+
+	/**
+	 * Returns the number of PDG nodes.
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the index of the given PDG node, or -1 if it is not part of the PDG.
+	 */
+	public int indexOf(DEPNode node) {
+		Integer index = indices.get(node);
+		return index == null ? -1 : index;
+	}
+
+	public DEPNode getNode(int index) {
+		return nodes[index];
+	}
+
+	public ProgramDependenceGraph getPDG() {
+		return pdg;
+	}
+
+	/**
+	 * Returns the backward slice of the given criterion; the criterion itself is included.
+	 * If 'control' is true, control dependences are followed as well as data dependences.
+	 */
+	public List<DEPNode> backwardSlice(DEPNode criterion, boolean control) {
+		return toNodes(backwardSlice(checkIndex(criterion), control));
+	}
+
+	/**
+	 * Returns the forward slice of the given criterion; the criterion itself is included.
+	 * If 'control' is true, control dependences are followed as well as data dependences.
+	 */
+	public List<DEPNode> forwardSlice(DEPNode criterion, boolean control) {
+		return toNodes(forwardSlice(checkIndex(criterion), control));
+	}
+
+	/**
+	 * Returns the chop between the given source and sink; i.e. all nodes on
+	 * dependence paths from the source to the sink. This is empty if there is no such path.
+	 */
+	public List<DEPNode> chop(DEPNode source, DEPNode sink, boolean control) {
+		return toNodes(chop(checkIndex(source), checkIndex(sink), control));
+	}
+
+	public BitSet backwardSlice(int criterion, boolean control) {
+		BitSet criteria = new BitSet(nodes.length);
+		criteria.set(criterion);
+		return backwardSlice(criteria, control);
+	}
+
+	public BitSet forwardSlice(int criterion, boolean control) {
+		BitSet criteria = new BitSet(nodes.length);
+		criteria.set(criterion);
+		return forwardSlice(criteria, control);
+	}
+
+	/**
+	 * Returns the union of the backward slices of all given criteria, in a single sweep.
+	 */
+	public BitSet backwardSlice(BitSet criteria, boolean control) {
+		return reach(criteria, dataPreds, control ? ctrlPreds : null);
+	}
+
+	/**
+	 * Returns the union of the forward slices of all given criteria, in a single sweep.
+	 */
+	public BitSet forwardSlice(BitSet criteria, boolean control) {
+		return reach(criteria, dataSuccs, control ? ctrlSuccs : null);
+	}
+
+	public BitSet chop(int source, int sink, boolean control) {
+		BitSet chop = forwardSlice(source, control);
+		chop.and(backwardSlice(sink, control));
+		return chop;
+	}
+
+	/**
+	 * Returns the backward slice of each of the given criteria, in the same order.
+	 * Each slice takes one reachability sweep, sharing the same adjacency and buffers.
+	 */
+	public List<BitSet> backwardSlices(int[] criteria, boolean control) {
+		List<BitSet> slices = new ArrayList<>(criteria.length);
+		for (int criterion: criteria)
+			slices.add(backwardSlice(criterion, control));
+		return slices;
+	}
+
+	/**
+	 * Returns the forward slice of each of the given criteria, in the same order.
+	 * Each slice takes one reachability sweep, sharing the same adjacency and buffers.
+	 */
+	public List<BitSet> forwardSlices(int[] criteria, boolean control) {
+		List<BitSet> slices = new ArrayList<>(criteria.length);
+		for (int criterion: criteria)
+			slices.add(forwardSlice(criterion, control));
+		return slices;
+	}
+
+	/**
+	 * Returns the PDG nodes of the given slice, in order of their indices.
+	 */
+	public List<DEPNode> toNodes(BitSet slice) {
+		List<DEPNode> list = new ArrayList<>(slice.cardinality());
+		for (int i = slice.nextSetBit(0); i >= 0; i = slice.nextSetBit(i + 1))
+			list.add(nodes[i]);
+		return list;
+	}
+
+	private int checkIndex(DEPNode node) {
+		int index = indexOf(node);
+		if (index < 0)
+			throw new IllegalArgumentException("Node is not part of the PDG: " + node);
+		return index;
+	}
+
+	/**
+	 * Returns all nodes reachable from the given start nodes, following the given adjacencies;
+	 * the second adjacency can be null.
+	 */
+	private BitSet reach(BitSet start, Adjacency first, Adjacency second) {
+		BitSet visited = (BitSet) start.clone();
+		int top = 0;
+		for (int i = start.nextSetBit(0); i >= 0; i = start.nextSetBit(i + 1))
+			stack[top++] = i;
+		while (top > 0) {
+			int v = stack[--top];
+			top = push(v, first, visited, top);
+			if (second != null)
+				top = push(v, second, visited, top);
+		}
+		return visited;
+	}
+
+	private int push(int v, Adjacency adjacency, BitSet visited, int top) {
+		for (int k = adjacency.offsets[v]; k < adjacency.offsets[v + 1]; ++k) {
+			int w = adjacency.targets[k];
+			if (!visited.get(w)) {
+				visited.set(w);
+				stack[top++] = w;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Compressed adjacency lists; the neighbors of node 'v' are
+	 * targets[offsets[v]] ... targets[offsets[v + 1] - 1].
+	 */
+	private class Adjacency {
+
+		final int[] offsets;
+		final int[] targets;
+
+		Adjacency(ProgramDependenceGraph pdg, DEPEdge.Type type, boolean reverse) {
+			int n = nodes.length;
+			offsets = new int[n + 1];
+			for (int v = 0; v < n; ++v)
+				offsets[v + 1] = offsets[v] + edges(pdg, nodes[v], type, reverse).size();
+			targets = new int[offsets[n]];
+			for (int v = 0; v < n; ++v) {
+				List<Edge<DEPNode, DEPEdge>> edges = edges(pdg, nodes[v], type, reverse);
+				for (int k = 0; k < edges.size(); ++k) {
+					Edge<DEPNode, DEPEdge> edge = edges.get(k);
+					targets[offsets[v] + k] = indices.get(reverse ? edge.source : edge.target);
+				}
+			}
+		}
+
+		private List<Edge<DEPNode, DEPEdge>> edges(ProgramDependenceGraph pdg, DEPNode node, DEPEdge.Type type, boolean reverse) {
+			if (type == DEPEdge.Type.DATA)
+				return reverse ? pdg.inDataEdges(node) : pdg.outDataEdges(node);
+			return reverse ? pdg.inCtrlEdges(node) : pdg.outCtrlEdges(node);
+		}
+	}
+}
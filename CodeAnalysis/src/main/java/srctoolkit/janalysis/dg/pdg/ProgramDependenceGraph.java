@@ -6,6 +6,7 @@ import srctoolkit.janalysis.common.graph.AbstractProgramGraph;
 import srctoolkit.janalysis.dg.DEPEdge;
 import srctoolkit.janalysis.dg.cfg.CFEdge;
 import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
+import srctoolkit.janalysis.dg.cfg.DominatorTree;
 import srctoolkit.janalysis.dg.DEPNode;
 import srctoolkit.janalysis.utils.Logger;
 import srctoolkit.janalysis.utils.StringUtils;
@@ -23,12 +24,21 @@ public class ProgramDependenceGraph extends AbstractProgramGraph<DEPNode, DEPEdg
 	private String name;
 	private DEPNode entry;
 	private List<DEPNode> params;
+	private ControlFlowGraph cfg;
+	// control and data edges, in order of addition; overall and per node
+	private final EdgeList ctrlEdges;
+	private final EdgeList dataEdges;
+	private final Map<DEPNode, TypedEdges> adjacency;
 	
 	public ProgramDependenceGraph(String name) {
 		super();
+		this.ctrlEdges = new EdgeList();
+		this.dataEdges = new EdgeList();
+		this.adjacency = new IdentityHashMap<>();
 		this.name = name;
 		this.entry = null;
 		this.params = new ArrayList<>();
+		this.cfg = null;
         properties.put("label", "PDG");
         properties.put("type", "Program Dependence Graph (PDG)");
 	}
@@ -56,7 +66,19 @@ public class ProgramDependenceGraph extends AbstractProgramGraph<DEPNode, DEPEdg
 		return params;
 	}
 	
+	/**
+	 * Returns the CFG attached to this PDG; control-flow paths are traversed on this graph.
+	 */
+	public ControlFlowGraph getCFG() {
+		return cfg;
+	}
+
+	/**
+	 * Attach the given CFG to this PDG; all CFG nodes are added to this graph,
+	 * and control-dependence edges are drawn using the post-dominator tree of the CFG.
+	 */
 	public void attachCFG(ControlFlowGraph cfg) {
+		this.cfg = cfg;
 		this.entry = cfg.getEntry();
 		for (DEPNode param: this.params) {
 			addVertex(param);
@@ -66,56 +88,196 @@ public class ProgramDependenceGraph extends AbstractProgramGraph<DEPNode, DEPEdg
 			DEPNode ctrlNode = ctrlNodes.next();
 			addVertex(ctrlNode);
 		}
-		Iterator<Edge<DEPNode, CFEdge>> ctrlEdges = cfg.allEdgesIterator();
-		while(ctrlEdges.hasNext()) {
-			Edge<DEPNode, CFEdge> ctrlEdge = ctrlEdges.next();
-			addEdge(new Edge<>(ctrlEdge.source, new DEPEdge(DEPEdge.Type.CTRL, ctrlEdge.label.getLabel()), ctrlEdge.target));
-		}
+		addControlDependences(cfg);
 	}
 
-	public 	List<Edge<DEPNode, DEPEdge>> ctrlEdges() {
-		List<Edge<DEPNode, DEPEdge>> ctrlEdges = new ArrayList<>();
-		for (Edge<DEPNode, DEPEdge> edge: allEdges) {
-			if (edge.label.getType() == DEPEdge.Type.CTRL) {
-				ctrlEdges.add(edge);
+	/**
+	 * Node Y is control-dependent on node X (through the CFG edge X->S) iff Y post-dominates S,
+	 * but Y does not strictly post-dominate X (Ferrante, Ottenstein and Warren).
+	 * For each CFG edge X->S, these are the nodes on the post-dominator tree path
+	 * from S up to (excluding) the immediate post-dominator of X.
+	 * As if there was an edge from entry to exit, the entry node controls all
+	 * nodes which are not control-dependent on any other node.
+	 */
+	private void addControlDependences(ControlFlowGraph cfg) {
+		DominatorTree postDoms = DominatorTree.postDominators(cfg);
+		int exit = postDoms.getRoot();
+		Iterator<Edge<DEPNode, CFEdge>> cfgEdges = cfg.allEdgesIterator();
+		while (cfgEdges.hasNext()) {
+			Edge<DEPNode, CFEdge> cfgEdge = cfgEdges.next();
+			int stop = cfgEdge.source == entry ? exit : postDoms.getImmediateDominator(postDoms.indexOf(cfgEdge.source));
+			int runner = postDoms.indexOf(cfgEdge.target);
+			while (runner != stop && runner != exit && runner >= 0) {
+				addEdge(new Edge<>(cfgEdge.source, new DEPEdge(DEPEdge.Type.CTRL, cfgEdge.label.getLabel()), postDoms.getNode(runner)));
+				runner = postDoms.getImmediateDominator(runner);
 			}
 		}
-		return ctrlEdges;
 	}
 
-	public 	List<Edge<DEPNode, DEPEdge>> dataEdges() {
-		List<Edge<DEPNode, DEPEdge>> dataEdges = new ArrayList<>();
-		for (Edge<DEPNode, DEPEdge> edge: allEdges) {
-			if (edge.label.getType() == DEPEdge.Type.DATA) {
-				dataEdges.add(edge);
+	/**
+	 * Returns a slicer for the current state of this PDG;
+	 * the same slicer should be reused for slicing multiple criteria.
+	 */
+	public PDGSlicer getSlicer() {
+		return new PDGSlicer(this);
+	}
+
+	@Override
+	public boolean addVertex(DEPNode v) {
+		if (super.addVertex(v)) {
+			adjacency.put(v, new TypedEdges());
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeVertex(DEPNode v) {
+		TypedEdges edges = adjacency.get(v);
+		if (edges == null || !super.removeVertex(v))
+			return false;
+		// the edges of the removed vertex are removed from the lists of their other end
+		for (EdgeList list: new EdgeList[] { edges.ctrlIn, edges.dataIn, edges.ctrlOut, edges.dataOut })
+			for (int i = list.size() - 1; i >= 0; --i)
+				removeTyped(list.get(i));
+		adjacency.remove(v);
+		return true;
+	}
+
+	@Override
+	public boolean addEdge(Edge<DEPNode, DEPEdge> e) {
+		if (super.addEdge(e)) {
+			EdgeList all = typedEdges(e.label.getType());
+			if (all != null) {
+				all.append(e);
+				TypedEdges src = adjacency.get(e.source);
+				TypedEdges trg = adjacency.get(e.target);
+				if (e.label.getType() == DEPEdge.Type.CTRL) {
+					src.ctrlOut.append(e);
+					trg.ctrlIn.append(e);
+				} else {
+					src.dataOut.append(e);
+					trg.dataIn.append(e);
+				}
 			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeEdge(Edge<DEPNode, DEPEdge> e) {
+		if (super.removeEdge(e)) {
+			removeTyped(e);
+			return true;
 		}
+		return false;
+	}
+
+	@Override
+	public Set<Edge<DEPNode, DEPEdge>> removeEdges(DEPNode src, DEPNode trgt) {
+		Set<Edge<DEPNode, DEPEdge>> removed = super.removeEdges(src, trgt);
+		for (Edge<DEPNode, DEPEdge> e: removed)
+			removeTyped(e);
+		return removed;
+	}
+
+	/**
+	 * Remove the given edge from the typed edge lists.
+	 */
+	private void removeTyped(Edge<DEPNode, DEPEdge> e) {
+		EdgeList all = typedEdges(e.label.getType());
+		if (all == null || !all.delete(e))
+			return;
+		TypedEdges src = adjacency.get(e.source);
+		TypedEdges trg = adjacency.get(e.target);
+		boolean ctrl = e.label.getType() == DEPEdge.Type.CTRL;
+		if (src != null)
+			(ctrl ? src.ctrlOut : src.dataOut).delete(e);
+		if (trg != null)
+			(ctrl ? trg.ctrlIn : trg.dataIn).delete(e);
+	}
+
+	private EdgeList typedEdges(DEPEdge.Type type) {
+		switch (type) {
+			case CTRL:
+				return ctrlEdges;
+			case DATA:
+				return dataEdges;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns all control-dependence edges, in order of their addition.
+	 * The returned list is a read-only view, which reflects later modifications of this graph.
+	 */
+	public List<Edge<DEPNode, DEPEdge>> ctrlEdges() {
+		return ctrlEdges;
+	}
+
+	/**
+	 * Returns all data-dependence edges, in order of their addition.
+	 * The returned list is a read-only view, which reflects later modifications of this graph.
+	 */
+	public List<Edge<DEPNode, DEPEdge>> dataEdges() {
 		return dataEdges;
 	}
 
+	public int ctrlEdgeCount() {
+		return ctrlEdges.size();
+	}
+
+	public int dataEdgeCount() {
+		return dataEdges.size();
+	}
+
+	/**
+	 * Returns the outgoing control-dependence edges of the given node, as a read-only view;
+	 * i.e. the edges to the nodes which are control-dependent on the given node.
+	 */
 	public List<Edge<DEPNode, DEPEdge>> outCtrlEdges(DEPNode node) {
-		List<Edge<DEPNode, DEPEdge>> edges = new ArrayList<>();
-		Iterator<Edge<DEPNode, DEPEdge>> outEdges = outgoingEdgesIterator(node);
-		while (outEdges.hasNext()) {
-			Edge<DEPNode, DEPEdge> out = outEdges.next();
-			if (out.label.getType() == DEPEdge.Type.CTRL)
-				edges.add(out);
-		}
-		return edges;
+		TypedEdges edges = adjacency.get(node);
+		return edges == null ? EdgeList.EMPTY : edges.ctrlOut;
 	}
 
+	/**
+	 * Returns the outgoing data-dependence edges of the given node, as a read-only view;
+	 * i.e. the edges to the nodes which use a definition of the given node.
+	 */
 	public List<Edge<DEPNode, DEPEdge>> outDataEdges(DEPNode node) {
-		List<Edge<DEPNode, DEPEdge>> edges = new ArrayList<>();
-		Iterator<Edge<DEPNode, DEPEdge>> outEdges = outgoingEdgesIterator(node);
-		while (outEdges.hasNext()) {
-			Edge<DEPNode, DEPEdge> out = outEdges.next();
-			if (out.label.getType() == DEPEdge.Type.DATA)
-				edges.add(out);
-		}
-		return edges;
+		TypedEdges edges = adjacency.get(node);
+		return edges == null ? EdgeList.EMPTY : edges.dataOut;
+	}
+
+	/**
+	 * Returns the incoming control-dependence edges of the given node, as a read-only view.
+	 */
+	public List<Edge<DEPNode, DEPEdge>> inCtrlEdges(DEPNode node) {
+		TypedEdges edges = adjacency.get(node);
+		return edges == null ? EdgeList.EMPTY : edges.ctrlIn;
+	}
+
+	/**
+	 * Returns the incoming data-dependence edges of the given node, as a read-only view.
+	 */
+	public List<Edge<DEPNode, DEPEdge>> inDataEdges(DEPNode node) {
+		TypedEdges edges = adjacency.get(node);
+		return edges == null ? EdgeList.EMPTY : edges.dataIn;
+	}
+
+	/**
+	 * Release the rule-contexts of all nodes of this PDG (and its CFG), keeping only their keys;
+	 * so this PDG does not keep the parse-tree alive. See 'DEPNode.releaseRuleCtx()'.
+	 */
+	public void releaseRuleContexts() {
+		for (DEPNode node: allVertices)
+			node.releaseRuleCtx();
+		if (cfg != null)
+			cfg.releaseRuleContexts();
 	}
 
-	
 	public void printAllNodesUseDefs(Logger.Level level) {
 		for (DEPNode node: allVertices) {
 			Logger.log(node, level);
@@ -254,4 +416,63 @@ public class ProgramDependenceGraph extends AbstractProgramGraph<DEPNode, DEPEdg
 		json.append("  ]\n}\n");
 		return json.toString();
 	}
+
+	/**
+	 * Control and data edges of a node.
+	 */
+	private static class TypedEdges {
+		final EdgeList ctrlIn = new EdgeList();
+		final EdgeList ctrlOut = new EdgeList();
+		final EdgeList dataIn = new EdgeList();
+		final EdgeList dataOut = new EdgeList();
+	}
+
+	/**
+	 * Array-based list of edges, which is read-only for clients (the inherited
+	 * modifiers are unsupported); it is indexed without allocation.
+	 */
+	private static class EdgeList extends AbstractList<Edge<DEPNode, DEPEdge>> implements RandomAccess {
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static final Edge<DEPNode, DEPEdge>[] NO_EDGES = new Edge[0];
+
+		static final EdgeList EMPTY = new EdgeList();
+
+		private Edge<DEPNode, DEPEdge>[] edges;
+		private int size;
+
+		EdgeList() {
+			edges = NO_EDGES;
+			size = 0;
+		}
+
+		@Override
+		public Edge<DEPNode, DEPEdge> get(int index) {
+			if (index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return edges[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		void append(Edge<DEPNode, DEPEdge> edge) {
+			if (size == edges.length)
+				edges = Arrays.copyOf(edges, Math.max(4, size * 2));
+			edges[size++] = edge;
+		}
+
+		boolean delete(Edge<DEPNode, DEPEdge> edge) {
+			for (int i = 0; i < size; ++i) {
+				if (edges[i].equals(edge)) {
+					System.arraycopy(edges, i + 1, edges, i, size - i - 1);
+					edges[--size] = null;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 }
@@ -0,0 +1,244 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.utils.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Project-wide index of the classes of a set of Java source files; i.e. their members,
+ * method signatures and type hierarchy. The index is built once (in parallel), and can be
+ * shared read-only by the PDG builds of all files of the project, so method calls and
+ * field accesses on classes of other files are resolved without re-parsing those files.
+ *
+ * All lookups are hash-indexed, and all maps and lists of the index are unmodifiable;
+ * the indexed class-infos must not be modified after the index is built.
+ */
+public final class ProjectIndex {
+
+	private final List<JavaClass> classes;
+	private final Map<JavaClass, String> classFiles;
+	private final Map<String, List<JavaClass>> classesByName;
+	private final Map<String, JavaClass> classesByQualifiedName;
+	private final Map<String, List<MethodEntry>> methodsByName;
+	private final Map<String, MethodEntry> methodsBySignature;
+	private final Map<String, List<JavaClass>> fieldOwners;
+	private final Map<String, List<JavaClass>> subTypes;
+
+	private ProjectIndex(List<String> files, List<List<JavaClass>> fileClasses) {
+		List<JavaClass> all = new ArrayList<>();
+		Map<JavaClass, String> clsFiles = new LinkedHashMap<>();
+		Map<String, List<JavaClass>> byName = new HashMap<>();
+		Map<String, JavaClass> byQualifiedName = new HashMap<>();
+		Map<String, List<MethodEntry>> mtdByName = new HashMap<>();
+		Map<String, MethodEntry> mtdBySignature = new HashMap<>();
+		Map<String, List<JavaClass>> fldOwners = new HashMap<>();
+		Map<String, List<JavaClass>> subs = new HashMap<>();
+		for (int i = 0; i < files.size(); ++i) {
+			for (JavaClass cls: fileClasses.get(i)) {
+				all.add(cls);
+				clsFiles.put(cls, files.get(i));
+				byName.computeIfAbsent(cls.NAME, k -> new ArrayList<>()).add(cls);
+				byQualifiedName.putIfAbsent(qualifiedName(cls), cls);
+				for (JavaMethod mtd: cls.getAllMethods()) {
+					MethodEntry entry = new MethodEntry(cls, mtd);
+					mtdByName.computeIfAbsent(mtd.NAME, k -> new ArrayList<>()).add(entry);
+					mtdBySignature.putIfAbsent(entry.SIGNATURE, entry);
+				}
+				for (JavaField fld: cls.getAllFields())
+					fldOwners.computeIfAbsent(fld.NAME, k -> new ArrayList<>()).add(cls);
+				for (String sup: superTypes(cls))
+					subs.computeIfAbsent(SideEffectSummaries.simpleName(sup), k -> new ArrayList<>()).add(cls);
+			}
+		}
+		classes = Collections.unmodifiableList(all);
+		classFiles = Collections.unmodifiableMap(clsFiles);
+		classesByName = freeze(byName);
+		classesByQualifiedName = Collections.unmodifiableMap(byQualifiedName);
+		methodsByName = freeze(mtdByName);
+		methodsBySignature = Collections.unmodifiableMap(mtdBySignature);
+		fieldOwners = freeze(fldOwners);
+		subTypes = freeze(subs);
+	}
+
+	/**
+	 * Build the index of the given Java source files; files are parsed in parallel.
+	 */
+	public static ProjectIndex build(String[] files) throws IOException {
+		Logger.info("Indexing " + files.length + " source files ... ");
+		List<List<JavaClass>> fileClasses;
+		try {
+			fileClasses = Arrays.stream(files).parallel().map(file -> {
+				try (InputStream in = new FileInputStream(file)) {
+					return JavaClassExtractor.extractInfo(in);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		ProjectIndex index = new ProjectIndex(Arrays.asList(files), fileClasses);
+		Logger.info("Indexed " + index.classes.size() + " classes.");
+		return index;
+	}
+
+	/**
+	 * Returns all indexed classes, in order of their files.
+	 */
+	public List<JavaClass> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Returns the source file of the given class; null if the class is not indexed.
+	 */
+	public String getFile(JavaClass cls) {
+		return classFiles.get(cls);
+	}
+
+	/**
+	 * Returns the classes with the given simple name (in different packages).
+	 */
+	public List<JavaClass> getClasses(String name) {
+		return classesByName.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * Returns the class with the given qualified name; null if not found.
+	 */
+	public JavaClass getClass(String qualifiedName) {
+		return classesByQualifiedName.get(qualifiedName);
+	}
+
+	/**
+	 * Returns all methods with the given name, from all classes.
+	 */
+	public List<MethodEntry> getMethods(String name) {
+		return methodsByName.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * Returns the method with the given signature; null if not found.
+	 * See 'MethodEntry.SIGNATURE' for the signature format.
+	 */
+	public MethodEntry getMethod(String signature) {
+		return methodsBySignature.get(signature);
+	}
+
+	/**
+	 * Returns the classes which declare a field with the given name.
+	 */
+	public List<JavaClass> getFieldOwners(String name) {
+		return fieldOwners.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * Returns the direct super-types of the given class (the extended class first, then
+	 * the implemented interfaces) which are found in this index.
+	 */
+	public List<JavaClass> getSuperTypes(JavaClass cls) {
+		List<JavaClass> supers = new ArrayList<>();
+		for (String sup: superTypes(cls)) {
+			JavaClass supCls = resolve(cls, SideEffectSummaries.simpleName(sup));
+			if (supCls != null)
+				supers.add(supCls);
+		}
+		return supers;
+	}
+
+	/**
+	 * Returns the indexed classes which directly extend or implement the given class.
+	 */
+	public List<JavaClass> getSubTypes(JavaClass cls) {
+		List<JavaClass> subs = new ArrayList<>();
+		for (JavaClass sub: subTypes.getOrDefault(cls.NAME, Collections.emptyList()))
+			if (getSuperTypes(sub).contains(cls))
+				subs.add(sub);
+		return subs;
+	}
+
+	/**
+	 * Resolve the given simple class name, as seen from the given class;
+	 * a class of the same package is preferred, then an imported class.
+	 * Returns null if no class with the given name is indexed.
+	 */
+	public JavaClass resolve(JavaClass from, String name) {
+		List<JavaClass> candidates = getClasses(name);
+		if (candidates.size() <= 1)
+			return candidates.isEmpty() ? null : candidates.get(0);
+		for (JavaClass cls: candidates)
+			if (cls.PACKAGE.equals(from.PACKAGE))
+				return cls;
+		for (JavaClass cls: candidates)
+			for (String imprt: from.IMPORTS)
+				if (imprt.equals(qualifiedName(cls)) || imprt.equals(cls.PACKAGE + ".*"))
+					return cls;
+		return candidates.get(0);
+	}
+
+	/**
+	 * Returns the DEF infos of the indexed methods with the given name, except those of the given classes;
+	 * the returned infos are new objects, so they can be modified by a PDG build.
+	 */
+	List<MethodDefInfo> newDefInfos(String name, Set<JavaClass> excluded) {
+		List<MethodDefInfo> infos = new ArrayList<>();
+		for (MethodEntry entry: getMethods(name))
+			if (!excluded.contains(entry.CLASS))
+				infos.add(new MethodDefInfo(entry.METHOD.RET_TYPE, entry.METHOD.NAME,
+						entry.CLASS.PACKAGE, entry.CLASS.NAME, entry.METHOD.ARG_TYPES));
+		return infos;
+	}
+
+	private static String qualifiedName(JavaClass cls) {
+		return cls.PACKAGE.isEmpty() ? cls.NAME : cls.PACKAGE + '.' + cls.NAME;
+	}
+
+	private static List<String> superTypes(JavaClass cls) {
+		List<String> supers = new ArrayList<>();
+		if (cls.EXTENDS != null)
+			supers.add(cls.EXTENDS);
+		if (cls.getInterfaces() != null)
+			supers.addAll(Arrays.asList(cls.getInterfaces()));
+		return supers;
+	}
+
+	private static <T> Map<String, List<T>> freeze(Map<String, List<T>> map) {
+		for (Map.Entry<String, List<T>> entry: map.entrySet())
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * A method of an indexed class. The signature of a method is its qualified class name,
+	 * and its name and parameter types; e.g. "pkg.Cls.name(int,String)".
+	 */
+	public static class MethodEntry {
+
+		public final JavaClass CLASS;
+		public final JavaMethod METHOD;
+		public final String SIGNATURE;
+
+		MethodEntry(JavaClass cls, JavaMethod mtd) {
+			CLASS = cls;
+			METHOD = mtd;
+			SIGNATURE = qualifiedName(cls) + '.' + mtd.NAME + '(' + (mtd.ARG_TYPES == null ? "" : String.join(",", mtd.ARG_TYPES)) + ')';
+		}
+
+		@Override
+		public String toString() {
+			return SIGNATURE;
+		}
+	}
+}
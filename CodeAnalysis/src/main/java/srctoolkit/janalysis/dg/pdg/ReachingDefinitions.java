@@ -0,0 +1,253 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.SymbolTable;
+import srctoolkit.janalysis.dg.cfg.CFEdge;
+import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reaching-definitions analysis over a Control Flow Graph.
+ * This is the classic iterative worklist algorithm, where GEN, KILL, IN and OUT
+ * sets of definitions are bit-vectors, and nodes are visited in reverse post-order.
+ *
+ * Each definition is a pair of a node and a variable it defines (DEF);
+ * parameter definitions are generated at the exit of the CFG entry node.
+ * Variables are identified by their IDs in the symbol table of the method
+ * (i.e. the table of the CFG nodes); names are only resolved on demand.
+ * A definition reaches a node if there is a control-flow path from the
+ * definition to the node, without any other definition of the same variable.
+ */
+public class ReachingDefinitions {
+
+	private final ControlFlowGraph cfg;
+	private final SymbolTable symbols;
+	private final List<Definition> definitions;
+	private final BitSet[] definitionsOf;
+	private final Map<DEPNode, Integer> indices;
+	private final List<DEPNode> order;
+	private final BitSet[] in;
+
+	/**
+	 * Solve reaching-definitions for the given CFG and parameters.
+	 * The parameters list can be null, if there are no parameters.
+	 */
+	public ReachingDefinitions(ControlFlowGraph cfg, List<DEPNode> params) {
+		this.cfg = cfg;
+		this.definitions = new ArrayList<>();
+		this.indices = new IdentityHashMap<>();
+		this.order = cfg.getStructure().getReversePostOrder();
+		this.symbols = order.isEmpty() ? new SymbolTable() : order.get(0).getSymbolTable();
+		for (int i = 0; i < order.size(); ++i)
+			indices.put(order.get(i), i);
+		int n = order.size();
+		BitSet[] gen = new BitSet[n];
+		BitSet[] kill = new BitSet[n];
+		// number all definitions; parameters first
+		if (params != null)
+			for (DEPNode param: params)
+				for (int k = 0; k < param.getDEFCount(); ++k)
+					addDefinition(param, getDEF(param, k));
+		int paramDefs = definitions.size();
+		for (int i = 0; i < n; ++i) {
+			DEPNode node = order.get(i);
+			gen[i] = new BitSet();
+			for (int k = 0; k < node.getDEFCount(); ++k)
+				gen[i].set(addDefinition(node, getDEF(node, k)));
+		}
+		if (n > 0)
+			gen[0].set(0, paramDefs);
+		definitionsOf = new BitSet[symbols.size()];
+		for (int d = 0; d < definitions.size(); ++d) {
+			int var = definitions.get(d).VAR;
+			if (definitionsOf[var] == null)
+				definitionsOf[var] = new BitSet();
+			definitionsOf[var].set(d);
+		}
+		for (int i = 0; i < n; ++i) {
+			DEPNode node = order.get(i);
+			kill[i] = new BitSet();
+			for (int k = 0; k < node.getDEFCount(); ++k)
+				kill[i].or(definitionsOf[getDEF(node, k)]);
+			kill[i].andNot(gen[i]);
+		}
+		//
+		in = new BitSet[n];
+		BitSet[] out = new BitSet[n];
+		for (int i = 0; i < n; ++i) {
+			in[i] = new BitSet();
+			out[i] = (BitSet) gen[i].clone();
+		}
+		int[][] preds = predecessors();
+		boolean[] queued = new boolean[n];
+		int[] worklist = new int[n];
+		int head = 0, size = n;
+		for (int i = 0; i < n; ++i) {
+			worklist[i] = i;
+			queued[i] = true;
+		}
+		int[][] succs = successors(preds);
+		BitSet newOut = new BitSet();
+		while (size > 0) {
+			int v = worklist[head];
+			head = (head + 1) % n;
+			--size;
+			queued[v] = false;
+			for (int p: preds[v])
+				in[v].or(out[p]);
+			newOut.clear();
+			newOut.or(in[v]);
+			newOut.andNot(kill[v]);
+			newOut.or(gen[v]);
+			if (!newOut.equals(out[v])) {
+				out[v].clear();
+				out[v].or(newOut);
+				for (int s: succs[v]) {
+					if (!queued[s]) {
+						queued[s] = true;
+						worklist[(head + size) % n] = s;
+						++size;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns all definitions reaching the entry of the given node.
+	 */
+	public List<Definition> getReachingDefinitions(DEPNode node) {
+		List<Definition> reaching = new ArrayList<>();
+		Integer index = indices.get(node);
+		if (index == null)
+			return reaching;
+		for (int d = in[index].nextSetBit(0); d >= 0; d = in[index].nextSetBit(d + 1))
+			reaching.add(definitions.get(d));
+		return reaching;
+	}
+
+	/**
+	 * Returns the nodes whose definition of the given variable reaches the entry of the given node.
+	 */
+	public List<DEPNode> getReachingDefinitions(DEPNode node, String var) {
+		return getReachingDefinitions(node, symbols.indexOf(var));
+	}
+
+	/**
+	 * Returns the nodes whose definition of the variable with the given ID reaches the entry of the given node.
+	 */
+	public List<DEPNode> getReachingDefinitions(DEPNode node, int var) {
+		List<DEPNode> reaching = new ArrayList<>();
+		Integer index = indices.get(node);
+		BitSet defs = var < 0 || var >= definitionsOf.length ? null : definitionsOf[var];
+		if (index == null || defs == null)
+			return reaching;
+		for (int d = in[index].nextSetBit(0); d >= 0; d = in[index].nextSetBit(d + 1))
+			if (defs.get(d))
+				reaching.add(definitions.get(d).NODE);
+		return reaching;
+	}
+
+	/**
+	 * Returns the CFG nodes reachable from the entry, in reverse post-order.
+	 */
+	public List<DEPNode> getNodes() {
+		return order;
+	}
+
+	public ControlFlowGraph getCFG() {
+		return cfg;
+	}
+
+	/**
+	 * Returns the symbol table of the variable IDs of the definitions.
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
+
+	/**
+	 * Returns the ID of the k-th DEF of the given node; the nodes of a method share
+	 * its symbol table, otherwise the variable name is interned in this table.
+	 */
+	private int getDEF(DEPNode node, int k) {
+		if (node.getSymbolTable() == symbols)
+			return node.getDEF(k);
+		return symbols.intern(node.getSymbolTable().getSymbol(node.getDEF(k)));
+	}
+
+	private int addDefinition(DEPNode node, int var) {
+		definitions.add(new Definition(node, var, symbols));
+		return definitions.size() - 1;
+	}
+
+	private int[][] predecessors() {
+		int[][] preds = new int[order.size()][];
+		for (int i = 0; i < preds.length; ++i) {
+			List<Integer> list = new ArrayList<>();
+			Iterator<Edge<DEPNode, CFEdge>> ins = cfg.incomingEdgesIterator(order.get(i));
+			while (ins.hasNext()) {
+				Integer p = indices.get(ins.next().source);
+				if (p != null)
+					list.add(p);
+			}
+			preds[i] = toArray(list);
+		}
+		return preds;
+	}
+
+	private static int[][] successors(int[][] preds) {
+		List<List<Integer>> lists = new ArrayList<>(preds.length);
+		for (int i = 0; i < preds.length; ++i)
+			lists.add(new ArrayList<>(2));
+		for (int i = 0; i < preds.length; ++i)
+			for (int p: preds[i])
+				lists.get(p).add(i);
+		int[][] succs = new int[preds.length][];
+		for (int i = 0; i < succs.length; ++i)
+			succs[i] = toArray(lists.get(i));
+		return succs;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; ++i)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/**
+	 * A single definition; a node, and the ID of a variable defined by it.
+	 */
+	public static class Definition {
+
+		public final DEPNode NODE;
+		public final int VAR;
+		private final SymbolTable symbols;
+
+		Definition(DEPNode node, int var, SymbolTable symbols) {
+			NODE = node;
+			VAR = var;
+			this.symbols = symbols;
+		}
+
+		/**
+		 * Returns the name of the defined variable.
+		 */
+		public String getVarName() {
+			return symbols.getSymbol(VAR);
+		}
+
+		@Override
+		public String toString() {
+			return getVarName() + " @ " + NODE;
+		}
+	}
+}
@@ -0,0 +1,529 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.antlrparser.JavaLexer;
+import srctoolkit.janalysis.common.antlrparser.JavaParser;
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
+import srctoolkit.janalysis.utils.Logger;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * System Dependence Graph (SDG) builder for Java programs.
+ * The PDGs of all methods of the given sources are built together, and linked
+ * at the method calls which are resolved to the analyzed methods.
+ *
+ * Summary edges are computed per method, as the formal-ins reaching each formal-out
+ * of the method; a summary depends on the summaries of the callees, so methods are
+ * grouped into strongly-connected components of the call-graph, and components are
+ * processed bottom-up. Independent components (of the same level) are processed
+ * in parallel, and methods of a component are re-computed by a worklist until
+ * their summaries do not change.
+ */
+public class SDGBuilder {
+
+	public static SystemDependenceGraph buildWithCode(String[] codes) {
+		Logger.info("Parsing source codes ... ");
+		List<ParseTree> parseTrees = new ArrayList<>();
+		for (String code: codes)
+			parseTrees.add(parse(new ANTLRInputStream(code)));
+		return build(parseTrees);
+	}
+
+	public static SystemDependenceGraph build(String[] files) throws IOException {
+		Logger.info("Parsing source files ... ");
+		List<ParseTree> parseTrees = new ArrayList<>();
+		for (String file: files) {
+			try (InputStream inFile = new FileInputStream(file)) {
+				parseTrees.add(parse(new ANTLRInputStream(inFile)));
+			}
+		}
+		return build(parseTrees);
+	}
+
+	public static SystemDependenceGraph build(List<ParseTree> parseTrees) {
+		CallRecords calls = new CallRecords();
+		PDGBuilder builder = new PDGBuilder();
+		List<ProgramDependenceGraph> pdgs = builder.build(parseTrees, calls);
+
+		Logger.info("Linking PDGs ... ");
+		SystemDependenceGraph sdg = new SystemDependenceGraph();
+		Map<ParserRuleContext, ProgramDependenceGraph> declarations = new IdentityHashMap<>();
+		for (ProgramDependenceGraph pdg: pdgs) {
+			sdg.addPDG(pdg, addFormalOuts(pdg, calls.getMethod(pdg.getEntry().getRuleCtx())));
+			declarations.put(pdg.getEntry().getRuleCtx(), pdg);
+		}
+		for (ProgramDependenceGraph pdg: pdgs)
+			addCallSites(sdg, pdg, calls, declarations);
+
+		Logger.info("Computing summary edges ... ");
+		addSummaryEdges(sdg);
+		if (builder.isReleaseRuleContexts())
+			sdg.releaseRuleContexts();
+		return sdg;
+	}
+
+	private static ParseTree parse(ANTLRInputStream input) {
+		JavaLexer lexer = new JavaLexer(input);
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		JavaParser parser = new JavaParser(tokens);
+		return parser.compilationUnit();
+	}
+
+	/**
+	 * Create the formal-out nodes of the given PDG, and add their dependences to the PDG;
+	 * the returned value depends on all return statements, and each argument defined
+	 * by the method depends on the definitions reaching the exits of the method.
+	 */
+	private static List<DEPNode> addFormalOuts(ProgramDependenceGraph pdg, MethodDefInfo method) {
+		List<DEPNode> outs = new ArrayList<>();
+		if (method == null)
+			return outs;
+		DEPNode entry = pdg.getEntry();
+		if (method.RET_TYPE != null && !method.RET_TYPE.equals("void")) {
+			DEPNode ret = newNode(entry, "formal-out: " + SystemDependenceGraph.RETURN, entry.getLineOfCode());
+			ret.addUSE(SystemDependenceGraph.RETURN);
+			outs.add(ret);
+			pdg.addVertex(ret);
+			pdg.addEdge(new Edge<>(entry, new DEPEdge(DEPEdge.Type.CTRL, ""), ret));
+			Iterator<DEPNode> nodes = pdg.getCFG().allVerticesIterator();
+			while (nodes.hasNext()) {
+				DEPNode node = nodes.next();
+				if (node.getRuleCtx() instanceof JavaParser.ReturnStatementContext)
+					pdg.addEdge(new Edge<>(node, new DEPEdge(DEPEdge.Type.DATA, SystemDependenceGraph.RETURN), ret));
+			}
+		}
+		boolean[] argDEFs = method.argDEFs();
+		List<DEPNode> params = pdg.getParams();
+		ReachingDefinitions reaching = null;
+		for (int i = 0; i < argDEFs.length && i < params.size(); ++i) {
+			if (!argDEFs[i])
+				continue;
+			if (reaching == null)
+				reaching = new ReachingDefinitions(pdg.getCFG(), params);
+			String var = (String) params.get(i).getProperty("name");
+			DEPNode out = newNode(entry, "formal-out: " + var, params.get(i).getLineOfCode());
+			out.addUSE(var);
+			outs.add(out);
+			pdg.addVertex(out);
+			pdg.addEdge(new Edge<>(entry, new DEPEdge(DEPEdge.Type.CTRL, ""), out));
+			for (DEPNode exit: getExits(pdg.getCFG(), reaching)) {
+				if (exit.hasDEF(var))
+					pdg.addEdge(new Edge<>(exit, new DEPEdge(DEPEdge.Type.DATA, var), out));
+				else
+					for (DEPNode def: reaching.getReachingDefinitions(exit, var))
+						pdg.addEdge(new Edge<>(def, new DEPEdge(DEPEdge.Type.DATA, var), out));
+			}
+		}
+		return outs;
+	}
+
+	/**
+	 * Returns the reachable CFG nodes without any successors.
+	 */
+	private static List<DEPNode> getExits(ControlFlowGraph cfg, ReachingDefinitions reaching) {
+		List<DEPNode> exits = new ArrayList<>();
+		for (DEPNode node: reaching.getNodes())
+			if (!cfg.outgoingEdgesIterator(node).hasNext())
+				exits.add(node);
+		return exits;
+	}
+
+	/**
+	 * Create the call sites of the given PDG; i.e. for each recorded call of each
+	 * statement which is resolved to an analyzed method.
+	 */
+	private static void addCallSites(SystemDependenceGraph sdg, ProgramDependenceGraph pdg, CallRecords calls,
+									 Map<ParserRuleContext, ProgramDependenceGraph> declarations) {
+		List<DEPNode> nodes = new ArrayList<>();
+		Iterator<DEPNode> vertices = pdg.allVerticesIterator();
+		while (vertices.hasNext())
+			nodes.add(vertices.next());
+		for (DEPNode node: nodes) {
+			if (node.getRuleCtx() == null)
+				continue;
+			for (CallRecords.Call call: calls.getCalls(node.getRuleCtx())) {
+				ParserRuleContext declaration = calls.getDeclaration(call.CALLEE);
+				ProgramDependenceGraph callee = declaration == null ? null : declarations.get(declaration);
+				if (callee == null || callee.getParams().size() != call.ARGS.length)
+					continue;
+				sdg.addCallSite(addCallSite(sdg, pdg, node, callee, call));
+			}
+		}
+	}
+
+	private static SystemDependenceGraph.CallSite addCallSite(SystemDependenceGraph sdg, ProgramDependenceGraph caller,
+						DEPNode node, ProgramDependenceGraph callee, CallRecords.Call call) {
+		sdg.addEdge(new Edge<>(node, new DEPEdge(DEPEdge.Type.CALL, ""), callee.getEntry()));
+		//
+		// actual-ins depend on the definitions of the argument variables reaching the call;
+		// for other arguments, all definitions reaching the call are conservatively used.
+		List<Edge<DEPNode, DEPEdge>> inData = caller.inDataEdges(node);
+		List<DEPNode> actualIns = new ArrayList<>();
+		for (int i = 0; i < call.ARGS.length; ++i) {
+			DEPNode in = newNode(node, "actual-in: " + call.ARGS[i], node.getLineOfCode());
+			if (call.ARG_VARS[i] != null)
+				in.addUSE(call.ARG_VARS[i]);
+			actualIns.add(in);
+			sdg.addVertex(in);
+			sdg.addEdge(new Edge<>(node, new DEPEdge(DEPEdge.Type.CTRL, ""), in));
+			for (Edge<DEPNode, DEPEdge> edge: inData)
+				if (call.ARG_VARS[i] == null || call.ARG_VARS[i].equals(edge.label.getLabel()))
+					sdg.addEdge(new Edge<>(edge.source, new DEPEdge(DEPEdge.Type.DATA, edge.label.getLabel()), in));
+			DEPNode formal = callee.getParams().get(i);
+			sdg.addEdge(new Edge<>(in, new DEPEdge(DEPEdge.Type.PARAM_IN, (String) formal.getProperty("name")), formal));
+		}
+		//
+		// actual-outs; the returned value flows into the call statement,
+		// and each defined argument variable flows to the uses of its definition by the call.
+		List<DEPNode> actualOuts = new ArrayList<>();
+		List<DEPNode> formalOuts = sdg.getFormalOuts(callee);
+		int k = 0;
+		if (!formalOuts.isEmpty() && formalOuts.get(0).hasUSE(SystemDependenceGraph.RETURN)) {
+			DEPNode out = newNode(node, "actual-out: " + SystemDependenceGraph.RETURN, node.getLineOfCode());
+			out.addDEF(SystemDependenceGraph.RETURN);
+			linkActualOut(sdg, node, out, formalOuts.get(0), SystemDependenceGraph.RETURN);
+			sdg.addEdge(new Edge<>(out, new DEPEdge(DEPEdge.Type.DATA, SystemDependenceGraph.RETURN), node));
+			actualOuts.add(out);
+			++k;
+		}
+		boolean[] argDEFs = call.CALLEE.argDEFs();
+		for (int i = 0; i < argDEFs.length && k < formalOuts.size(); ++i) {
+			if (!argDEFs[i])
+				continue;
+			String var = call.ARG_VARS[i];
+			if (var == null) {
+				actualOuts.add(null);
+			} else {
+				DEPNode out = newNode(node, "actual-out: " + var, node.getLineOfCode());
+				out.addDEF(var);
+				linkActualOut(sdg, node, out, formalOuts.get(k), var);
+				List<DEPNode> uses = new ArrayList<>();
+				for (Edge<DEPNode, DEPEdge> edge: caller.outDataEdges(node))
+					if (var.equals(edge.label.getLabel()))
+						uses.add(edge.target);
+				for (DEPNode use: uses)
+					sdg.addEdge(new Edge<>(out, new DEPEdge(DEPEdge.Type.DATA, var), use));
+				actualOuts.add(out);
+			}
+			++k;
+		}
+		return new SystemDependenceGraph.CallSite(node, caller, callee, actualIns, actualOuts);
+	}
+
+	private static void linkActualOut(SystemDependenceGraph sdg, DEPNode node, DEPNode out, DEPNode formal, String var) {
+		sdg.addVertex(out);
+		sdg.addEdge(new Edge<>(node, new DEPEdge(DEPEdge.Type.CTRL, ""), out));
+		sdg.addEdge(new Edge<>(formal, new DEPEdge(DEPEdge.Type.PARAM_OUT, var), out));
+	}
+
+	private static DEPNode newNode(DEPNode owner, String code, int line) {
+		DEPNode node = new DEPNode(owner.getSymbolTable());
+		node.setCode(code);
+		node.setLineOfCode(line);
+		return node;
+	}
+
+	//===================================================================//
+	//                          SUMMARY EDGES                            //
+	//===================================================================//
+
+	/**
+	 * Compute the summaries of all methods, and add the summary edges of all call sites.
+	 */
+	private static void addSummaryEdges(SystemDependenceGraph sdg) {
+		List<ProgramDependenceGraph> pdgs = sdg.getPDGs();
+		Map<ProgramDependenceGraph, Integer> ids = new IdentityHashMap<>();
+		for (ProgramDependenceGraph pdg: pdgs)
+			ids.put(pdg, ids.size());
+		int n = pdgs.size();
+		List<List<SystemDependenceGraph.CallSite>> sites = new ArrayList<>(n);
+		for (int m = 0; m < n; ++m)
+			sites.add(new ArrayList<>());
+		for (SystemDependenceGraph.CallSite site: sdg.getCallSites())
+			sites.get(ids.get(site.CALLER)).add(site);
+		MethodGraph[] graphs = new MethodGraph[n];
+		for (int m = 0; m < n; ++m)
+			graphs[m] = new MethodGraph(sdg, pdgs.get(m), sites.get(m), ids);
+		for (int m = 0; m < n; ++m)
+			for (int callee: graphs[m].callees)
+				graphs[callee].callers.add(m);
+
+		BitSet[][] summaries = new BitSet[n][];
+		for (int m = 0; m < n; ++m) {
+			summaries[m] = new BitSet[graphs[m].formalOuts.length];
+			for (int j = 0; j < summaries[m].length; ++j)
+				summaries[m][j] = new BitSet();
+		}
+		List<List<int[]>> levels = callGraphLevels(graphs);
+		for (List<int[]> level: levels)
+			level.parallelStream().forEach(scc -> computeSummaries(scc, graphs, summaries));
+
+		for (int m = 0; m < n; ++m) {
+			for (SystemDependenceGraph.CallSite site: sites.get(m)) {
+				BitSet[] summary = summaries[ids.get(site.CALLEE)];
+				for (int j = 0; j < site.ACTUAL_OUTS.size(); ++j) {
+					DEPNode out = site.ACTUAL_OUTS.get(j);
+					if (out == null)
+						continue;
+					for (int i = summary[j].nextSetBit(0); i >= 0; i = summary[j].nextSetBit(i + 1))
+						sdg.addEdge(new Edge<>(site.ACTUAL_INS.get(i), new DEPEdge(DEPEdge.Type.SUMMARY, out.getAllDEFs()[0]), out));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Re-compute the summaries of the methods of a call-graph SCC, until they do not change.
+	 * Summaries of callees in other components are already final.
+	 */
+	private static void computeSummaries(int[] scc, MethodGraph[] graphs, BitSet[][] summaries) {
+		Set<Integer> members = new LinkedHashSet<>();
+		for (int m: scc)
+			members.add(m);
+		Deque<Integer> worklist = new ArrayDeque<>(members);
+		Set<Integer> queued = new LinkedHashSet<>(members);
+		while (!worklist.isEmpty()) {
+			int m = worklist.poll();
+			queued.remove(m);
+			if (graphs[m].computeSummary(summaries)) {
+				for (int caller: graphs[m].callers)
+					if (members.contains(caller) && queued.add(caller))
+						worklist.add(caller);
+			}
+		}
+	}
+
+	/**
+	 * Returns the strongly-connected components of the call-graph, grouped by level;
+	 * the callees of each component belong to lower levels.
+	 * Components are found by an iterative Tarjan's algorithm.
+	 */
+	private static List<List<int[]>> callGraphLevels(MethodGraph[] graphs) {
+		int n = graphs.length;
+		int[] index = new int[n], lowLink = new int[n], component = new int[n];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[n];
+		Deque<Integer> stack = new ArrayDeque<>();
+		Deque<int[]> calls = new ArrayDeque<>();  // pairs of (method, next callee position)
+		List<int[]> components = new ArrayList<>();
+		int counter = 0;
+		for (int root = 0; root < n; ++root) {
+			if (index[root] >= 0)
+				continue;
+			calls.push(new int[] { root, 0 });
+			index[root] = lowLink[root] = counter++;
+			stack.push(root);
+			onStack[root] = true;
+			while (!calls.isEmpty()) {
+				int[] frame = calls.peek();
+				int v = frame[0];
+				if (frame[1] < graphs[v].callees.length) {
+					int w = graphs[v].callees[frame[1]++];
+					if (index[w] < 0) {
+						index[w] = lowLink[w] = counter++;
+						stack.push(w);
+						onStack[w] = true;
+						calls.push(new int[] { w, 0 });
+					} else if (onStack[w])
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+				} else {
+					calls.pop();
+					if (!calls.isEmpty())
+						lowLink[calls.peek()[0]] = Math.min(lowLink[calls.peek()[0]], lowLink[v]);
+					if (lowLink[v] == index[v]) {
+						List<Integer> members = new ArrayList<>();
+						int w;
+						do {
+							w = stack.pop();
+							onStack[w] = false;
+							component[w] = components.size();
+							members.add(w);
+						} while (w != v);
+						int[] scc = new int[members.size()];
+						for (int i = 0; i < scc.length; ++i)
+							scc[i] = members.get(i);
+						components.add(scc);
+					}
+				}
+			}
+		}
+		// Tarjan's algorithm completes callee components before their callers
+		int[] levelOf = new int[components.size()];
+		List<List<int[]>> levels = new ArrayList<>();
+		for (int c = 0; c < components.size(); ++c) {
+			int level = 0;
+			for (int m: components.get(c))
+				for (int callee: graphs[m].callees)
+					if (component[callee] != c)
+						level = Math.max(level, levelOf[component[callee]] + 1);
+			levelOf[c] = level;
+			while (levels.size() <= level)
+				levels.add(new ArrayList<>());
+			levels.get(level).add(components.get(c));
+		}
+		return levels;
+	}
+
+	/**
+	 * Int-indexed view of the dependences of a method, used for computing its summary;
+	 * this includes the nodes of its PDG, and the actual-in/out nodes of its call sites.
+	 */
+	private static class MethodGraph {
+
+		final int[] formalIns;
+		final int[] formalOuts;
+		final int id;
+		final int[] callees;
+		final List<Integer> callers;
+		// dependence predecessors of each node (data and control)
+		final int[][] preds;
+		// call sites of each actual-out node; i.e. the callee and the position of the
+		// formal-out of the callee, and the actual-in nodes of the call site
+		final int[] outCallee;
+		final int[] outPosition;
+		final int[][] outActualIns;
+
+		MethodGraph(SystemDependenceGraph sdg, ProgramDependenceGraph pdg,
+					List<SystemDependenceGraph.CallSite> sites, Map<ProgramDependenceGraph, Integer> ids) {
+			id = ids.get(pdg);
+			Map<DEPNode, Integer> indices = new IdentityHashMap<>();
+			List<DEPNode> nodes = new ArrayList<>();
+			Iterator<DEPNode> vertices = pdg.allVerticesIterator();
+			while (vertices.hasNext())
+				addNode(vertices.next(), nodes, indices);
+			for (SystemDependenceGraph.CallSite site: sites) {
+				for (DEPNode in: site.ACTUAL_INS)
+					addNode(in, nodes, indices);
+				for (DEPNode out: site.ACTUAL_OUTS)
+					if (out != null)
+						addNode(out, nodes, indices);
+			}
+			formalIns = toIndices(pdg.getParams(), indices);
+			formalOuts = toIndices(sdg.getFormalOuts(pdg), indices);
+			//
+			int n = nodes.size();
+			preds = new int[n][];
+			List<Integer> list = new ArrayList<>();
+			for (int v = 0; v < n; ++v) {
+				list.clear();
+				Iterator<Edge<DEPNode, DEPEdge>> edges = sdg.incomingEdgesIterator(nodes.get(v));
+				while (edges.hasNext()) {
+					Edge<DEPNode, DEPEdge> edge = edges.next();
+					DEPEdge.Type type = edge.label.getType();
+					Integer u = indices.get(edge.source);
+					if (u != null && (type == DEPEdge.Type.DATA || type == DEPEdge.Type.CTRL))
+						list.add(u);
+				}
+				preds[v] = toArray(list);
+			}
+			//
+			outCallee = new int[n];
+			outPosition = new int[n];
+			outActualIns = new int[n][];
+			Arrays.fill(outCallee, -1);
+			Set<Integer> calleeSet = new LinkedHashSet<>();
+			for (SystemDependenceGraph.CallSite site: sites) {
+				int callee = ids.get(site.CALLEE);
+				calleeSet.add(callee);
+				int[] ins = toIndices(site.ACTUAL_INS, indices);
+				for (int j = 0; j < site.ACTUAL_OUTS.size(); ++j) {
+					if (site.ACTUAL_OUTS.get(j) == null)
+						continue;
+					int out = indices.get(site.ACTUAL_OUTS.get(j));
+					outCallee[out] = callee;
+					outPosition[out] = j;
+					outActualIns[out] = ins;
+				}
+			}
+			callees = toArray(new ArrayList<>(calleeSet));
+			callers = new ArrayList<>();
+		}
+
+		/**
+		 * Re-compute the summary of this method, using the current summaries of its callees;
+		 * i.e. the formal-ins which each formal-out transitively depends on.
+		 * Returns true if the summary is changed.
+		 */
+		boolean computeSummary(BitSet[][] summaries) {
+			boolean changed = false;
+			BitSet visited = new BitSet(preds.length);
+			int[] stack = new int[preds.length];
+			for (int j = 0; j < formalOuts.length; ++j) {
+				visited.clear();
+				int top = 0;
+				stack[top++] = formalOuts[j];
+				visited.set(formalOuts[j]);
+				while (top > 0) {
+					int v = stack[--top];
+					for (int u: preds[v]) {
+						if (!visited.get(u)) {
+							visited.set(u);
+							stack[top++] = u;
+						}
+					}
+					if (outCallee[v] >= 0) {
+						BitSet summary = summaries[outCallee[v]][outPosition[v]];
+						for (int i = summary.nextSetBit(0); i >= 0; i = summary.nextSetBit(i + 1)) {
+							int u = outActualIns[v][i];
+							if (!visited.get(u)) {
+								visited.set(u);
+								stack[top++] = u;
+							}
+						}
+					}
+				}
+				BitSet summary = new BitSet(formalIns.length);
+				for (int i = 0; i < formalIns.length; ++i)
+					if (visited.get(formalIns[i]))
+						summary.set(i);
+				// summaries only grow, since callee summaries only grow
+				if (!summary.equals(summaries[id][j])) {
+					summaries[id][j] = summary;
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		private static void addNode(DEPNode node, List<DEPNode> nodes, Map<DEPNode, Integer> indices) {
+			if (!indices.containsKey(node)) {
+				indices.put(node, nodes.size());
+				nodes.add(node);
+			}
+		}
+
+		private static int[] toIndices(List<DEPNode> nodes, Map<DEPNode, Integer> indices) {
+			int[] array = new int[nodes.size()];
+			for (int i = 0; i < array.length; ++i)
+				array[i] = indices.get(nodes.get(i));
+			return array;
+		}
+
+		private static int[] toArray(List<Integer> list) {
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; ++i)
+				array[i] = list.get(i);
+			return array;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block-scoped symbol table for the parameters and local variables of a method.
+ * Each name is bound to a stack of variables, so an inner declaration shadows
+ * an outer one until its scope is popped; hence resolving a name takes constant time.
+ */
+class ScopedSymbolTable {
+
+	private JavaField[] params;
+	private final Map<String, Integer> paramIndices;
+	private final Map<String, Deque<JavaField>> locals;
+	private final Deque<List<String>> scopes;
+
+	public ScopedSymbolTable() {
+		params = new JavaField[0];
+		paramIndices = new HashMap<>();
+		locals = new HashMap<>();
+		scopes = new ArrayDeque<>();
+		scopes.push(new ArrayList<>());
+	}
+
+	/**
+	 * Start a new method with the given parameters;
+	 * all local variables and scopes of the previous method are removed.
+	 */
+	public void enterMethod(JavaField[] params) {
+		this.params = params;
+		paramIndices.clear();
+		for (int i = params.length - 1; i >= 0; --i)
+			paramIndices.put(params[i].NAME, i);
+		locals.clear();
+		scopes.clear();
+		scopes.push(new ArrayList<>());
+	}
+
+	public JavaField[] getParams() {
+		return params;
+	}
+
+	/**
+	 * Returns the index of the parameter with the given name, or -1 if there is no such parameter.
+	 */
+	public int indexOfParam(String name) {
+		Integer index = paramIndices.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Open a new scope; local variables declared afterwards are removed by 'popScope'.
+	 */
+	public void pushScope() {
+		scopes.push(new ArrayList<>());
+	}
+
+	/**
+	 * Close the inner-most scope, and remove all local variables declared in it.
+	 */
+	public void popScope() {
+		if (scopes.size() == 1)
+			throw new IllegalStateException("Cannot pop the method scope!");
+		for (String name: scopes.pop()) {
+			Deque<JavaField> vars = locals.get(name);
+			vars.pop();
+			if (vars.isEmpty())
+				locals.remove(name);
+		}
+	}
+
+	/**
+	 * Declare a local variable in the inner-most scope.
+	 */
+	public void declare(JavaField var) {
+		locals.computeIfAbsent(var.NAME, k -> new ArrayDeque<>(2)).push(var);
+		scopes.peek().add(var.NAME);
+	}
+
+	/**
+	 * Returns the visible local variable with the given name, or null if not declared.
+	 */
+	public JavaField getLocal(String name) {
+		Deque<JavaField> vars = locals.get(name);
+		return vars == null ? null : vars.peek();
+	}
+
+	/**
+	 * Returns all visible local variables.
+	 */
+	public List<JavaField> getLocals() {
+		List<JavaField> visible = new ArrayList<>(locals.size());
+		for (Deque<JavaField> vars: locals.values())
+			visible.add(vars.peek());
+		return visible;
+	}
+}
@@ -0,0 +1,279 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.antlrparser.JavaLexer;
+import srctoolkit.janalysis.common.antlrparser.JavaParser;
+import srctoolkit.janalysis.utils.Logger;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of the side-effect summaries of library methods; i.e. whether a method
+ * defines the state of its receiver object, which of its arguments it defines, and which
+ * fields of its class it defines. Summaries are computed once by the DEF-USE analysis
+ * of the library sources, and saved to a versioned binary file; the file is memory-mapped
+ * when loaded, and the summary of a method is found by a single hash-table probe.
+ *
+ * Methods are identified by their simple class name, method name and number of parameters;
+ * summaries of overloaded methods with the same number of parameters are merged.
+ *
+ * File layout (big-endian):
+ *   header:  magic, version, slots-count (a power of 2), entries-count  (4 ints)
+ *   slots:   hash of key (long; zero for empty slots), offset of record (int)
+ *   records: key length (int), key (UTF-8), argument DEFs (long bit-mask),
+ *            state DEF (byte), fields length (int), field names (UTF-8; comma separated)
+ */
+public class SideEffectSummaries {
+
+	public static final int MAGIC = 0x53454653;  // "SEFS"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 12;
+
+	private final ByteBuffer buffer;
+	private final int slotsMask;
+	private final int entries;
+	// decoded summaries, so each summary is decoded only once
+	private final Map<String, MethodDefInfo> decoded;
+
+	private SideEffectSummaries(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a side-effect summaries file!");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported summaries version: " + buffer.getInt(4) + " (expected " + VERSION + ")");
+		int slots = buffer.getInt(8);
+		if (Integer.bitCount(slots) != 1 || HEADER_SIZE + (long) slots * SLOT_SIZE > buffer.limit())
+			throw new IOException("Corrupted side-effect summaries file!");
+		slotsMask = slots - 1;
+		entries = buffer.getInt(12);
+		decoded = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Load the summaries file at the given path; the file is memory-mapped (read-only).
+	 */
+	public static SideEffectSummaries load(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			return new SideEffectSummaries(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Analyze the given library source files, and save the summaries of all their methods
+	 * to the given path. Returns the number of saved summaries.
+	 */
+	public static int build(String[] librarySources, String path) throws IOException {
+		Logger.info("Parsing library source files ... ");
+		List<ParseTree> parseTrees = new ArrayList<>();
+		for (String file: librarySources) {
+			try (InputStream inFile = new FileInputStream(file)) {
+				JavaLexer lexer = new JavaLexer(new ANTLRInputStream(inFile));
+				JavaParser parser = new JavaParser(new CommonTokenStream(lexer));
+				parseTrees.add(parser.compilationUnit());
+			}
+		}
+		return save(new PDGBuilder().analyzeMethods(parseTrees), path);
+	}
+
+	/**
+	 * Save the summaries of the given methods to the given path.
+	 */
+	static int save(List<MethodDefInfo> methods, String path) throws IOException {
+		// merge the summaries of methods with the same key; sorted for a reproducible file
+		Map<String, Summary> summaries = new TreeMap<>();
+		for (MethodDefInfo method: methods) {
+			Summary summary = summaries.computeIfAbsent(
+					key(method.CLASS_NAME, method.NAME, method.PARAM_TYPES.length), k -> new Summary());
+			summary.stateDEF |= method.doesStateDEF();
+			boolean[] argDEFs = method.argDEFs();
+			for (int i = 0; i < argDEFs.length && i < Long.SIZE; ++i)
+				if (argDEFs[i])
+					summary.argDEFs |= 1L << i;
+			for (String field: method.fieldDEFs())
+				if (!summary.fieldDEFs.contains(field))
+					summary.fieldDEFs.add(field);
+		}
+		// open-addressing hash table, with a load factor of at most 0.5
+		int slots = Integer.highestOneBit(Math.max(1, summaries.size()) * 2 - 1) << 1;
+		long[] hashes = new long[slots];
+		int[] offsets = new int[slots];
+		List<byte[]> records = new ArrayList<>(summaries.size());
+		int offset = HEADER_SIZE + slots * SLOT_SIZE;
+		for (Map.Entry<String, Summary> entry: summaries.entrySet()) {
+			byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			long hash = hash(key);
+			int slot = (int) hash & (slots - 1);
+			while (hashes[slot] != 0)
+				slot = (slot + 1) & (slots - 1);
+			hashes[slot] = hash;
+			offsets[slot] = offset;
+			byte[] record = entry.getValue().encode(key);
+			records.add(record);
+			offset += record.length;
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(slots);
+			out.writeInt(summaries.size());
+			for (int i = 0; i < slots; ++i) {
+				out.writeLong(hashes[i]);
+				out.writeInt(offsets[i]);
+			}
+			for (byte[] record: records)
+				out.write(record);
+		}
+		Logger.info("Saved " + summaries.size() + " method summaries to: " + path);
+		return summaries.size();
+	}
+
+	/**
+	 * Returns the number of method summaries in this store.
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * Returns true if there is a summary of the given method.
+	 */
+	public boolean contains(String cls, String name, int paramsCount) {
+		return find(cls, name, paramsCount) != null;
+	}
+
+	/**
+	 * Returns the summary of the given method as a DEF info; null if not found.
+	 * The class name can be qualified or generic; only its simple name is used.
+	 */
+	MethodDefInfo find(String cls, String name, int paramsCount) {
+		String key = key(simpleName(cls), name, paramsCount);
+		MethodDefInfo info = decoded.get(key);
+		if (info != null)
+			return info;
+		int record = lookup(key.getBytes(StandardCharsets.UTF_8));
+		if (record < 0)
+			return null;
+		info = decode(record, simpleName(cls), name, paramsCount);
+		MethodDefInfo prev = decoded.putIfAbsent(key, info);
+		return prev == null ? info : prev;
+	}
+
+	/**
+	 * Returns the offset of the record with the given key, or -1 if not found.
+	 */
+	private int lookup(byte[] key) {
+		long hash = hash(key);
+		int slot = (int) hash & slotsMask;
+		while (true) {
+			int pos = HEADER_SIZE + slot * SLOT_SIZE;
+			long slotHash = buffer.getLong(pos);
+			if (slotHash == 0)
+				return -1;
+			if (slotHash == hash) {
+				int record = buffer.getInt(pos + 8);
+				if (keyEquals(record, key))
+					return record;
+			}
+			slot = (slot + 1) & slotsMask;
+		}
+	}
+
+	private boolean keyEquals(int record, byte[] key) {
+		if (buffer.getInt(record) != key.length)
+			return false;
+		for (int i = 0; i < key.length; ++i)
+			if (buffer.get(record + 4 + i) != key[i])
+				return false;
+		return true;
+	}
+
+	private MethodDefInfo decode(int record, String cls, String name, int paramsCount) {
+		int pos = record + 4 + buffer.getInt(record);
+		long argDEFs = buffer.getLong(pos);
+		boolean stateDEF = buffer.get(pos + 8) != 0;
+		int fieldsLength = buffer.getInt(pos + 9);
+		byte[] fields = new byte[fieldsLength];
+		for (int i = 0; i < fieldsLength; ++i)
+			fields[i] = buffer.get(pos + 13 + i);
+		//
+		String[] params = new String[paramsCount];
+		MethodDefInfo info = new MethodDefInfo("", name, "", cls, params);
+		for (int i = 0; i < paramsCount && i < Long.SIZE; ++i)
+			if ((argDEFs & (1L << i)) != 0)
+				info.setArgDEF(i, true);
+		if (fieldsLength > 0)
+			for (String field: new String(fields, StandardCharsets.UTF_8).split(","))
+				info.addFieldDEF(field);
+		info.setStateDEF(stateDEF);
+		return info;
+	}
+
+	private static String key(String cls, String name, int paramsCount) {
+		return cls + '.' + name + '/' + paramsCount;
+	}
+
+	/**
+	 * Returns the simple name of the given (possibly qualified, generic or array) type.
+	 */
+	static String simpleName(String type) {
+		int end = type.length();
+		int generic = type.indexOf('<');
+		if (generic >= 0)
+			end = generic;
+		int array = type.indexOf('[');
+		if (array >= 0 && array < end)
+			end = array;
+		return type.substring(type.lastIndexOf('.', end - 1) + 1, end);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash; zero is reserved for empty slots.
+	 */
+	private static long hash(byte[] key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b: key) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Merged summary of methods with the same key.
+	 */
+	private static class Summary {
+
+		boolean stateDEF;
+		long argDEFs;
+		final List<String> fieldDEFs = new ArrayList<>();
+
+		byte[] encode(byte[] key) {
+			byte[] fields = String.join(",", fieldDEFs).getBytes(StandardCharsets.UTF_8);
+			ByteBuffer record = ByteBuffer.allocate(4 + key.length + 8 + 1 + 4 + fields.length);
+			record.putInt(key.length).put(key);
+			record.putLong(argDEFs);
+			record.put((byte) (stateDEF ? 1 : 0));
+			record.putInt(fields.length).put(fields);
+			return record.array();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.graph.AbstractProgramGraph;
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.utils.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * System Dependence Graph (SDG); the PDGs of all methods, linked at their call sites
+ * (Horwitz, Reps and Binkley: "Interprocedural Slicing Using Dependence Graphs").
+ *
+ * Formal-in nodes of a method are the parameter nodes of its PDG; formal-out nodes
+ * are added for the returned value, and for each argument which the method defines.
+ * Each call site has an actual-in node per argument and an actual-out node per
+ * formal-out of the callee; these are linked by parameter-in and parameter-out edges,
+ * and the call statement is linked to the entry of the callee by a call edge.
+ * Summary edges connect actual-ins to actual-outs of a call site, if the callee
+ * has a dependence path from the corresponding formal-in to the formal-out.
+ */
+public class SystemDependenceGraph extends AbstractProgramGraph<DEPNode, DEPEdge> {
+
+	/**
+	 * Name of the variable of returned values.
+	 */
+	public static final String RETURN = "$RET";
+
+	private final List<ProgramDependenceGraph> pdgs;
+	private final Map<DEPNode, List<DEPNode>> formalOuts;
+	private final List<CallSite> callSites;
+
+	public SystemDependenceGraph() {
+		super();
+		pdgs = new ArrayList<>();
+		formalOuts = new IdentityHashMap<>();
+		callSites = new ArrayList<>();
+		properties.put("label", "SDG");
+		properties.put("type", "System Dependence Graph (SDG)");
+	}
+
+	/**
+	 * Add the given PDG to this graph, along with its formal-out nodes.
+	 */
+	void addPDG(ProgramDependenceGraph pdg, List<DEPNode> outs) {
+		pdgs.add(pdg);
+		addGraph(pdg);
+		for (DEPNode out: outs)
+			addVertex(out);
+		formalOuts.put(pdg.getEntry(), outs);
+	}
+
+	void addCallSite(CallSite site) {
+		callSites.add(site);
+	}
+
+	public List<ProgramDependenceGraph> getPDGs() {
+		return Collections.unmodifiableList(pdgs);
+	}
+
+	public List<CallSite> getCallSites() {
+		return Collections.unmodifiableList(callSites);
+	}
+
+	/**
+	 * Returns the formal-in nodes of the method with the given entry;
+	 * i.e. the parameter nodes of its PDG.
+	 */
+	public List<DEPNode> getFormalIns(ProgramDependenceGraph pdg) {
+		return pdg.getParams();
+	}
+
+	/**
+	 * Returns the formal-out nodes of the method of the given PDG;
+	 * the returned value (if any) comes first, then the defined arguments in order.
+	 */
+	public List<DEPNode> getFormalOuts(ProgramDependenceGraph pdg) {
+		List<DEPNode> outs = formalOuts.get(pdg.getEntry());
+		return outs == null ? Collections.emptyList() : outs;
+	}
+
+	/**
+	 * Release the rule-contexts of all nodes of this SDG, keeping only their keys;
+	 * so this SDG does not keep the parse-trees alive.
+	 */
+	public void releaseRuleContexts() {
+		for (ProgramDependenceGraph pdg: pdgs)
+			pdg.releaseRuleContexts();
+		for (DEPNode node: allVertices)
+			node.releaseRuleCtx();
+	}
+
+	/**
+	 * Returns the interprocedural backward slice of the given criterion, using the
+	 * two-phase algorithm of HRB; the first phase ascends to callers of the criterion's
+	 * method, and the second phase descends to callees, using summary edges for calls.
+	 */
+	public Set<DEPNode> backwardSlice(DEPNode criterion) {
+		Set<DEPNode> slice = reach(Collections.singletonList(criterion), true, EnumSet.of(DEPEdge.Type.PARAM_OUT));
+		return reach(slice, true, EnumSet.of(DEPEdge.Type.PARAM_IN, DEPEdge.Type.CALL));
+	}
+
+	/**
+	 * Returns the interprocedural forward slice of the given criterion, using the
+	 * two-phase algorithm; the first phase ascends to callers via parameter-out edges,
+	 * and the second phase descends to callees via parameter-in and call edges.
+	 */
+	public Set<DEPNode> forwardSlice(DEPNode criterion) {
+		Set<DEPNode> slice = reach(Collections.singletonList(criterion), false, EnumSet.of(DEPEdge.Type.PARAM_IN, DEPEdge.Type.CALL));
+		return reach(slice, false, EnumSet.of(DEPEdge.Type.PARAM_OUT));
+	}
+
+	/**
+	 * Returns all nodes reachable from the given nodes, except through the excluded edge types.
+	 */
+	private Set<DEPNode> reach(Iterable<DEPNode> start, boolean backward, Set<DEPEdge.Type> excluded) {
+		Set<DEPNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<DEPNode> stack = new ArrayDeque<>();
+		for (DEPNode node: start)
+			if (visited.add(node))
+				stack.push(node);
+		while (!stack.isEmpty()) {
+			DEPNode node = stack.pop();
+			Iterator<Edge<DEPNode, DEPEdge>> edges = backward ? incomingEdgesIterator(node) : outgoingEdgesIterator(node);
+			while (edges.hasNext()) {
+				Edge<DEPNode, DEPEdge> edge = edges.next();
+				if (excluded.contains(edge.label.getType()))
+					continue;
+				DEPNode next = backward ? edge.source : edge.target;
+				if (visited.add(next))
+					stack.push(next);
+			}
+		}
+		return visited;
+	}
+
+	@Override
+	public String exportDOT() {
+		StringBuilder dot = new StringBuilder();
+		dot.append("digraph SDG {\n");
+		dot.append("  // graph-vertices\n");
+		Map<DEPNode, String> nodeNames = new LinkedHashMap<>();
+		for (DEPNode node: allVertices) {
+			String name = "v" + (nodeNames.size() + 1);
+			nodeNames.put(node, name);
+			StringBuilder label = new StringBuilder("  [label=\"");
+			if (node.getLineOfCode() > 0)
+				label.append(node.getLineOfCode()).append(":  ");
+			label.append(StringUtils.escape(node.getCode())).append("\"];");
+			dot.append("  " + name + label.toString() + "\n");
+		}
+		dot.append("  // graph-edges\n");
+		for (Edge<DEPNode, DEPEdge> edge: allEdges) {
+			String src = nodeNames.get(edge.source);
+			String trg = nodeNames.get(edge.target);
+			String style;
+			switch (edge.label.getType()) {
+				case CTRL:
+					style = "arrowhead=empty, color=gray, style=dashed";
+					break;
+				case DATA:
+					style = "style=bold";
+					break;
+				case SUMMARY:
+					style = "color=blue, style=bold";
+					break;
+				default:
+					style = "color=red, style=dotted";
+			}
+			dot.append("  " + src + " -> " + trg + "  [" + style + ", label=\" " + edge.label.getLabel() + "\"];\n");
+		}
+		dot.append("  // end-of-graph\n}\n");
+		return dot.toString();
+	}
+
+	@Override
+	public String exportJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"directed\": true,\n");
+		json.append("  \"multigraph\": true,\n");
+		for (Map.Entry<String, String> property: properties.entrySet()) {
+			switch (property.getKey()) {
+				case "directed":
+					continue;
+				default:
+					json.append("  \"" + property.getKey() + "\": \"" + property.getValue() + "\",\n");
+			}
+		}
+		Map<DEPNode, Integer> nodeIds = new IdentityHashMap<>();
+		Map<DEPNode, String> methods = new IdentityHashMap<>();
+		for (ProgramDependenceGraph pdg: pdgs) {
+			Iterator<DEPNode> nodes = pdg.allVerticesIterator();
+			while (nodes.hasNext())
+				methods.put(nodes.next(), pdg.getName());
+			for (DEPNode out: getFormalOuts(pdg))
+				methods.put(out, pdg.getName());
+		}
+		for (CallSite site: callSites) {
+			for (DEPNode in: site.ACTUAL_INS)
+				methods.put(in, site.CALLER.getName());
+			for (DEPNode out: site.ACTUAL_OUTS)
+				if (out != null)
+					methods.put(out, site.CALLER.getName());
+		}
+		json.append("  \"nodes\": [\n");
+		for (DEPNode node: allVertices) {
+			int id = nodeIds.size();
+			nodeIds.put(node, id);
+			json.append("    {\n");
+			json.append("      \"id\": " + id + ",\n");
+			json.append("      \"line\": " + node.getLineOfCode() + ",\n");
+			json.append("      \"method\": \"" + StringUtils.escape(methods.get(node)) + "\",\n");
+			json.append("      \"label\": \"" + StringUtils.escape(node.getCode()) + "\",\n");
+			json.append("      \"defs\": " + StringUtils.toJsonArray(node.getAllDEFs()) + ",\n");
+			json.append("      \"uses\": " + StringUtils.toJsonArray(node.getAllUSEs()) + "\n");
+			json.append(id + 1 == vertexCount() ? "    }\n" : "    },\n");
+		}
+		json.append("  ],\n\n  \"edges\": [\n");
+		int edgeCounter = 0;
+		for (Edge<DEPNode, DEPEdge> edge: allEdges) {
+			json.append("    {\n");
+			json.append("      \"id\": " + edgeCounter + ",\n");
+			json.append("      \"source\": " + nodeIds.get(edge.source) + ",\n");
+			json.append("      \"target\": " + nodeIds.get(edge.target) + ",\n");
+			json.append("      \"type\": \"" + edge.label.getType().name() + "\",\n");
+			json.append("      \"label\": \"" + StringUtils.escape(edge.label.getLabel()) + "\"\n");
+			++edgeCounter;
+			json.append(edgeCounter == edgeCount() ? "    }\n" : "    },\n");
+		}
+		json.append("  ]\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * A call site in the SDG; the statement containing the call, the PDGs of the
+	 * caller and callee, the actual-in node of each parameter of the callee, and
+	 * the actual-out node of each formal-out of the callee (null if the argument
+	 * of a defined parameter is not a variable).
+	 */
+	public static class CallSite {
+
+		public final DEPNode NODE;
+		public final ProgramDependenceGraph CALLER;
+		public final ProgramDependenceGraph CALLEE;
+		public final List<DEPNode> ACTUAL_INS;
+		public final List<DEPNode> ACTUAL_OUTS;
+
+		CallSite(DEPNode node, ProgramDependenceGraph caller, ProgramDependenceGraph callee,
+				 List<DEPNode> actualIns, List<DEPNode> actualOuts) {
+			NODE = node;
+			CALLER = caller;
+			CALLEE = callee;
+			ACTUAL_INS = Collections.unmodifiableList(actualIns);
+			ACTUAL_OUTS = Collections.unmodifiableList(actualOuts);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package srctoolkit.janalysis.dg.pdg;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Source-to-sink data-flow reachability on Program Dependence Graphs;
+ * e.g. user input reaching a command execution, or a stream which is opened and never closed.
+ *
+ * Sources, sinks and sanitizers are given as method patterns, which are matched against
+ * the calls in the code of each PDG node. A pattern is a method name, optionally qualified
+ * by the name of its receiver ("System.getenv", "in.close"), or a constructor call ("new FileInputStream",
+ * which also matches "new java.io.FileInputStream"); a '*' in a pattern matches any (possibly empty) part
+ * of an identifier ("read*", "*.exec"). The entry and parameter nodes of a method are not matched,
+ * since their code is the declaration of the method, not a call.
+ *
+ * Each source node of a method gets a fact bit; facts are propagated along data dependences
+ * until a fixpoint is reached, so all source-sink pairs of a method are found in one pass.
+ * Sanitizer nodes do not receive facts from other nodes (they can still be sources themselves).
+ * Methods are analyzed independently, and in parallel.
+ */
+public class TaintAnalysis {
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("\"(\\\\.|[^\"\\\\])*\"");
+
+	private final List<Pattern> sources;
+	private final List<Pattern> sinks;
+	private final List<Pattern> sanitizers;
+
+	public TaintAnalysis(Collection<String> sources, Collection<String> sinks, Collection<String> sanitizers) {
+		this.sources = compile(sources);
+		this.sinks = compile(sinks);
+		this.sanitizers = compile(sanitizers);
+	}
+
+	/**
+	 * Analyze the given PDGs in parallel; the results are in the same order as the PDGs.
+	 */
+	public List<Result> analyze(List<ProgramDependenceGraph> pdgs) {
+		return pdgs.parallelStream().map(this::analyze).collect(Collectors.toList());
+	}
+
+	/**
+	 * Analyze the given PDG, and return all of its source-sink flows.
+	 */
+	public Result analyze(ProgramDependenceGraph pdg) {
+		int n = pdg.vertexCount();
+		DEPNode[] nodes = new DEPNode[n];
+		Map<DEPNode, Integer> indices = new IdentityHashMap<>();
+		Iterator<DEPNode> vertices = pdg.allVerticesIterator();
+		while (vertices.hasNext()) {
+			DEPNode node = vertices.next();
+			nodes[indices.size()] = node;
+			indices.put(node, indices.size());
+		}
+		// classify nodes, and assign a fact bit to each source
+		List<DEPNode> sourceNodes = new ArrayList<>();
+		BitSet[] facts = new BitSet[n];
+		boolean[] sink = new boolean[n];
+		boolean[] sanitizer = new boolean[n];
+		int[] worklist = new int[n];
+		boolean[] queued = new boolean[n];
+		int top = 0;
+		// the entry and parameter nodes hold the declaration of the method, not calls
+		Map<DEPNode, Boolean> declarations = new IdentityHashMap<>();
+		if (pdg.getEntry() != null)
+			declarations.put(pdg.getEntry(), Boolean.TRUE);
+		for (DEPNode param: pdg.getParams())
+			declarations.put(param, Boolean.TRUE);
+		for (int v = 0; v < n; ++v) {
+			facts[v] = new BitSet();
+			String code = nodes[v].getCode();
+			if (code == null || declarations.containsKey(nodes[v]))
+				continue;
+			code = STRING_LITERAL.matcher(code).replaceAll("\"\"");
+			sink[v] = matches(sinks, code);
+			sanitizer[v] = matches(sanitizers, code);
+			if (matches(sources, code)) {
+				facts[v].set(sourceNodes.size());
+				sourceNodes.add(nodes[v]);
+				worklist[top++] = v;
+				queued[v] = true;
+			}
+		}
+		// propagate facts along data dependences, until the fixpoint
+		BitSet delta = new BitSet();
+		while (top > 0) {
+			int v = worklist[--top];
+			queued[v] = false;
+			for (Edge<DEPNode, DEPEdge> edge: pdg.outDataEdges(nodes[v])) {
+				Integer w = indices.get(edge.target);
+				if (w == null || sanitizer[w])
+					continue;
+				delta.clear();
+				delta.or(facts[v]);
+				delta.andNot(facts[w]);
+				if (!delta.isEmpty()) {
+					facts[w].or(delta);
+					if (!queued[w]) {
+						worklist[top++] = w;
+						queued[w] = true;
+					}
+				}
+			}
+		}
+		// collect the source-sink pairs
+		List<Flow> flows = new ArrayList<>();
+		BitSet reached = new BitSet(sourceNodes.size());
+		for (int v = 0; v < n; ++v) {
+			if (!sink[v])
+				continue;
+			for (int s = facts[v].nextSetBit(0); s >= 0; s = facts[v].nextSetBit(s + 1))
+				flows.add(new Flow(sourceNodes.get(s), nodes[v]));
+			reached.or(facts[v]);
+		}
+		List<DEPNode> unreached = new ArrayList<>();
+		for (int s = reached.nextClearBit(0); s < sourceNodes.size(); s = reached.nextClearBit(s + 1))
+			unreached.add(sourceNodes.get(s));
+		return new Result(pdg, sourceNodes, flows, unreached);
+	}
+
+	private static boolean matches(List<Pattern> patterns, String code) {
+		for (Pattern pattern: patterns)
+			if (pattern.matcher(code).find())
+				return true;
+		return false;
+	}
+
+	private static List<Pattern> compile(Collection<String> patterns) {
+		List<Pattern> compiled = new ArrayList<>(patterns.size());
+		for (String pattern: patterns)
+			compiled.add(compile(pattern));
+		return compiled;
+	}
+
+	/**
+	 * Compile the given method pattern to a regular expression which finds its calls.
+	 */
+	static Pattern compile(String pattern) {
+		pattern = pattern.trim();
+		if (pattern.isEmpty())
+			throw new IllegalArgumentException("Empty method pattern!");
+		StringBuilder regex = new StringBuilder("(?<![\\w$])");
+		if (pattern.startsWith("new ")) {
+			// the class name may be qualified by its package; e.g. "new java.io.File("
+			regex.append("new\\s+([\\w$]+\\s*\\.\\s*)*");
+			pattern = pattern.substring(4).trim();
+		}
+		String[] parts = pattern.split("\\.");
+		for (int i = 0; i < parts.length; ++i) {
+			if (parts[i].isEmpty())
+				throw new IllegalArgumentException("Invalid method pattern: " + pattern);
+			if (i > 0)
+				regex.append("\\s*\\.\\s*");
+			for (String part: parts[i].split("\\*", -1))
+				regex.append(part.isEmpty() ? "" : Pattern.quote(part)).append("[\\w$]*");
+			regex.setLength(regex.length() - "[\\w$]*".length());
+		}
+		regex.append("\\s*(<[^()]*>\\s*)?\\(");
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * A data-flow from a source node to a sink node of the same method.
+	 */
+	public static class Flow {
+
+		public final DEPNode SOURCE;
+		public final DEPNode SINK;
+
+		Flow(DEPNode source, DEPNode sink) {
+			SOURCE = source;
+			SINK = sink;
+		}
+
+		@Override
+		public String toString() {
+			return SOURCE.getLineOfCode() + ": " + SOURCE.getCode() + "  ->  " + SINK.getLineOfCode() + ": " + SINK.getCode();
+		}
+	}
+
+	/**
+	 * The result of analyzing a method; its source nodes, the flows from sources to sinks,
+	 * and the sources which do not reach any sink (e.g. resources which are never closed).
+	 */
+	public static class Result {
+
+		public final ProgramDependenceGraph PDG;
+		public final List<DEPNode> SOURCES;
+		public final List<Flow> FLOWS;
+		public final List<DEPNode> UNREACHED_SOURCES;
+
+		Result(ProgramDependenceGraph pdg, List<DEPNode> sources, List<Flow> flows, List<DEPNode> unreached) {
+			PDG = pdg;
+			SOURCES = Collections.unmodifiableList(sources);
+			FLOWS = Collections.unmodifiableList(flows);
+			UNREACHED_SOURCES = Collections.unmodifiableList(unreached);
+		}
+	}
+}
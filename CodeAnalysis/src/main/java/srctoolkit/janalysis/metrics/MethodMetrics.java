@@ -0,0 +1,327 @@
+package srctoolkit.janalysis.metrics;
+
+import srctoolkit.janalysis.ast.ASEdge;
+import srctoolkit.janalysis.ast.ASNode;
+import srctoolkit.janalysis.ast.AbstractSyntaxTree;
+import srctoolkit.janalysis.common.antlrparser.JavaParser;
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.common.graph.GraphStructure;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.cfg.CFEdge;
+import srctoolkit.janalysis.dg.cfg.ControlFlowGraph;
+import srctoolkit.janalysis.utils.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Code complexity metrics of a single method (or constructor, or initializer block):
+ *
+ *  - STATEMENTS:  number of statements; i.e. CFG nodes other than the entry and end-markers,
+ *  - BRANCHES:    number of conditional (True/False) branch nodes in the CFG,
+ *  - CYCLOMATIC:  McCabe's cyclomatic complexity; branches + catch clauses + 1,
+ *  - ESSENTIAL:   McCabe's essential complexity; cyclomatic complexity of the CFG
+ *                 after reducing all structured constructs (see below),
+ *  - NESTING:     maximum nesting depth of control structures in the AST,
+ *  - LOOPS:       number of loops in the loop nesting forest of the CFG,
+ *  - LOOP_DEPTH:  maximum loop nesting depth of the CFG.
+ *
+ * For essential complexity, exceptional edges into catch clauses are ignored,
+ * all exits are joined into a virtual exit, and sequences, if-then, if-then-else,
+ * and single-entry single-exit loops are repeatedly collapsed. A structured method
+ * reduces to a single edge (essential complexity 1); jumps out of loops, such as
+ * break, continue or return statements, remain as unstructured edges.
+ */
+public class MethodMetrics {
+
+	public static final String CSV_HEADER =
+			"file,class,method,line,statements,branches,cyclomatic,essential,nesting,loops,loop_depth";
+
+	public final String FILE;
+	public final String CLASS;
+	public final String METHOD;
+	public final int LINE_OF_CODE;
+	public final int STATEMENTS;
+	public final int BRANCHES;
+	public final int CYCLOMATIC;
+	public final int ESSENTIAL;
+	public final int NESTING;
+	public final int LOOPS;
+	public final int LOOP_DEPTH;
+
+	private MethodMetrics(String file, String cls, String method, int line, int statements, int branches,
+						  int cyclomatic, int essential, int nesting, int loops, int loopDepth) {
+		FILE = file;
+		CLASS = cls;
+		METHOD = method;
+		LINE_OF_CODE = line;
+		STATEMENTS = statements;
+		BRANCHES = branches;
+		CYCLOMATIC = cyclomatic;
+		ESSENTIAL = essential;
+		NESTING = nesting;
+		LOOPS = loops;
+		LOOP_DEPTH = loopDepth;
+	}
+
+	/**
+	 * Compute the metrics of the given method CFG; the method subtree of the AST
+	 * is used for the nesting depth, and can be null (in which case nesting is -1).
+	 */
+	public static MethodMetrics compute(String file, ControlFlowGraph cfg, AbstractSyntaxTree ast, ASNode method) {
+		DEPNode entry = cfg.getEntry();
+		int statements = 0;
+		int branches = 0;
+		int catches = 0;
+		Iterator<DEPNode> nodes = cfg.allVerticesIterator();
+		while (nodes.hasNext()) {
+			DEPNode node = nodes.next();
+			if (node != entry && node.getLineOfCode() > 0)
+				++statements;
+			if (node.getRuleCtx() instanceof JavaParser.CatchClauseContext)
+				++catches;
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(node);
+			while (outs.hasNext()) {
+				if (outs.next().label.getLabel().equals(CFEdge.TRUE)) {
+					++branches;
+					break;
+				}
+			}
+		}
+		GraphStructure<DEPNode, CFEdge> structure = cfg.getStructure();
+		int loopDepth = 0;
+		for (GraphStructure.Loop<DEPNode> loop: structure.getLoops())
+			loopDepth = Math.max(loopDepth, loop.getDepth());
+		Object cls = entry.getProperty("class");
+		return new MethodMetrics(file, cls == null ? "" : cls.toString(), cfg.getName(), entry.getLineOfCode(),
+				statements, branches, branches + catches + 1, essentialComplexity(cfg),
+				method == null ? -1 : nestingDepth(ast, method), structure.getLoops().size(), loopDepth);
+	}
+
+	public String toCSV() {
+		return csv(FILE) + ',' + csv(CLASS) + ',' + csv(METHOD) + ',' + LINE_OF_CODE + ',' + STATEMENTS + ',' +
+				BRANCHES + ',' + CYCLOMATIC + ',' + ESSENTIAL + ',' + NESTING + ',' + LOOPS + ',' + LOOP_DEPTH;
+	}
+
+	public String toJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"file\": \"").append(StringUtils.escape(FILE)).append("\", ");
+		json.append("\"class\": \"").append(StringUtils.escape(CLASS)).append("\", ");
+		json.append("\"method\": \"").append(StringUtils.escape(METHOD)).append("\", ");
+		json.append("\"line\": ").append(LINE_OF_CODE).append(", ");
+		json.append("\"statements\": ").append(STATEMENTS).append(", ");
+		json.append("\"branches\": ").append(BRANCHES).append(", ");
+		json.append("\"cyclomatic\": ").append(CYCLOMATIC).append(", ");
+		json.append("\"essential\": ").append(ESSENTIAL).append(", ");
+		json.append("\"nesting\": ").append(NESTING).append(", ");
+		json.append("\"loops\": ").append(LOOPS).append(", ");
+		json.append("\"loop_depth\": ").append(LOOP_DEPTH).append('}');
+		return json.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJSON();
+	}
+
+	private static String csv(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+			return field;
+		return '"' + field.replace("\"", "\"\"").replace('\n', ' ') + '"';
+	}
+
+	/**
+	 * Maximum nesting depth of control structures within the given method subtree.
+	 */
+	private static int nestingDepth(AbstractSyntaxTree ast, ASNode method) {
+		int max = 0;
+		Map<ASNode, Integer> depths = new IdentityHashMap<>();
+		Deque<ASNode> stack = new ArrayDeque<>();
+		depths.put(method, 0);
+		stack.push(method);
+		while (!stack.isEmpty()) {
+			ASNode node = stack.pop();
+			int depth = depths.get(node);
+			max = Math.max(max, depth);
+			Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(node);
+			while (outs.hasNext()) {
+				ASNode child = outs.next().target;
+				if (depths.containsKey(child))
+					continue;
+				depths.put(child, isNesting(child.getType()) ? depth + 1 : depth);
+				stack.push(child);
+			}
+		}
+		return max;
+	}
+
+	private static boolean isNesting(ASNode.Type type) {
+		switch (type) {
+			case IF:
+			case FOR:
+			case FOR_EACH:
+			case WHILE:
+			case DO_WHILE:
+			case TRY:
+			case SWITCH:
+			case SYNC:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	//=====================================================================//
+	//                        ESSENTIAL COMPLEXITY                         //
+	//=====================================================================//
+
+	private static int essentialComplexity(ControlFlowGraph cfg) {
+		// index the normal control-flow graph; exceptional edges into catch clauses are dropped
+		Map<DEPNode, Integer> indices = new IdentityHashMap<>();
+		List<DEPNode> nodes = new ArrayList<>();
+		Deque<DEPNode> stack = new ArrayDeque<>();
+		indices.put(cfg.getEntry(), 0);
+		nodes.add(cfg.getEntry());
+		stack.push(cfg.getEntry());
+		List<Set<Integer>> succs = new ArrayList<>();
+		List<Set<Integer>> preds = new ArrayList<>();
+		succs.add(new LinkedHashSet<>());
+		preds.add(new LinkedHashSet<>());
+		while (!stack.isEmpty()) {
+			DEPNode node = stack.pop();
+			int index = indices.get(node);
+			Iterator<Edge<DEPNode, CFEdge>> outs = cfg.outgoingEdgesIterator(node);
+			while (outs.hasNext()) {
+				DEPNode target = outs.next().target;
+				if (target.getRuleCtx() instanceof JavaParser.CatchClauseContext
+						&& !(node.getRuleCtx() instanceof JavaParser.CatchClauseContext))
+					continue;
+				Integer targetIndex = indices.get(target);
+				if (targetIndex == null) {
+					targetIndex = nodes.size();
+					indices.put(target, targetIndex);
+					nodes.add(target);
+					succs.add(new LinkedHashSet<>());
+					preds.add(new LinkedHashSet<>());
+					stack.push(target);
+				}
+				succs.get(index).add(targetIndex);
+				preds.get(targetIndex).add(index);
+			}
+		}
+		int exit = nodes.size();
+		succs.add(new LinkedHashSet<>());
+		preds.add(new LinkedHashSet<>());
+		for (int v = 0; v < exit; ++v) {
+			if (succs.get(v).isEmpty()) {
+				succs.get(v).add(exit);
+				preds.get(exit).add(v);
+			}
+		}
+		//
+		boolean[] removed = new boolean[exit + 1];
+		Deque<Integer> worklist = new ArrayDeque<>();
+		for (int v = 0; v <= exit; ++v)
+			worklist.add(v);
+		while (!worklist.isEmpty()) {
+			int u = worklist.poll();
+			if (removed[u] || u == exit)
+				continue;
+			Set<Integer> out = succs.get(u);
+			// self-loop of a collapsed loop body
+			if (out.contains(u) && out.size() > 1) {
+				unlink(u, u, succs, preds);
+				reduced(u, preds, worklist);
+				continue;
+			}
+			// sequence
+			if (out.size() == 1) {
+				int v = out.iterator().next();
+				if (v != u && v != exit && v != 0 && preds.get(v).size() == 1) {
+					unlink(u, v, succs, preds);
+					for (int w: new ArrayList<>(succs.get(v))) {
+						unlink(v, w, succs, preds);
+						link(u, w == v ? u : w, succs, preds);
+					}
+					removed[v] = true;
+					reduced(u, preds, worklist);
+				}
+				continue;
+			}
+			if (out.size() != 2)
+				continue;
+			Iterator<Integer> it = out.iterator();
+			int a = it.next();
+			int b = it.next();
+			if (reduceBranch(u, a, b, exit, succs, preds, removed) || reduceBranch(u, b, a, exit, succs, preds, removed))
+				reduced(u, preds, worklist);
+		}
+		// E - N + 2 on the reduced graph
+		int edges = 0;
+		int vertices = 0;
+		for (int v = 0; v <= exit; ++v) {
+			if (removed[v])
+				continue;
+			++vertices;
+			edges += succs.get(v).size();
+		}
+		return edges - vertices + 2;
+	}
+
+	/**
+	 * Collapse a single-entry single-exit node 'a' of the two-way branch 'u' to {'a', 'b'}:
+	 * if-then (a flows into b), if-then-else (a and b flow into the same node),
+	 * or a loop (a flows back into u).
+	 */
+	private static boolean reduceBranch(int u, int a, int b, int exit, List<Set<Integer>> succs,
+										List<Set<Integer>> preds, boolean[] removed) {
+		if (a == u || a == exit || preds.get(a).size() != 1 || succs.get(a).size() != 1)
+			return false;
+		int join = succs.get(a).iterator().next();
+		if (join == b || join == u) {
+			// if-then, or loop body
+			unlink(u, a, succs, preds);
+			unlink(a, join, succs, preds);
+			removed[a] = true;
+			return true;
+		}
+		if (b != u && b != exit && preds.get(b).size() == 1 && succs.get(b).size() == 1
+				&& succs.get(b).contains(join)) {
+			// if-then-else
+			unlink(u, a, succs, preds);
+			unlink(a, join, succs, preds);
+			unlink(u, b, succs, preds);
+			unlink(b, join, succs, preds);
+			removed[a] = true;
+			removed[b] = true;
+			link(u, join, succs, preds);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * After a reduction at node 'u', its predecessors may become reducible as well.
+	 */
+	private static void reduced(int u, List<Set<Integer>> preds, Deque<Integer> worklist) {
+		worklist.add(u);
+		worklist.addAll(preds.get(u));
+	}
+
+	private static void link(int u, int v, List<Set<Integer>> succs, List<Set<Integer>> preds) {
+		succs.get(u).add(v);
+		preds.get(v).add(u);
+	}
+
+	private static void unlink(int u, int v, List<Set<Integer>> succs, List<Set<Integer>> preds) {
+		succs.get(u).remove(v);
+		preds.get(v).remove(u);
+	}
+}
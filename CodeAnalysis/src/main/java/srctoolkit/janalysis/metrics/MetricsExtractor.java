@@ -0,0 +1,107 @@
+package srctoolkit.janalysis.metrics;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import srctoolkit.janalysis.ast.ASNode;
+import srctoolkit.janalysis.ast.ASTBuilder;
+import srctoolkit.janalysis.ast.AbstractSyntaxTree;
+import srctoolkit.janalysis.common.antlrparser.JavaLexer;
+import srctoolkit.janalysis.common.antlrparser.JavaParser;
+import srctoolkit.janalysis.dg.cfg.CFGBuilder;
+import srctoolkit.janalysis.utils.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts code complexity metrics for all methods of Java source files.
+ * Each file is parsed once; the CFG and AST of each method are built from
+ * the same parse-tree, and metrics are computed as soon as each CFG is built.
+ * Results are written as a CSV table, or as newline-delimited JSON (NDJSON);
+ * one row per method (including constructors and initializer blocks).
+ */
+public class MetricsExtractor {
+
+	private final boolean json;
+
+	public MetricsExtractor(boolean json) {
+		this.json = json;
+	}
+
+	/**
+	 * Extract metrics for all the given Java source files, and write them to the given writer.
+	 * Files are processed in parallel, but the output follows the order of the given files.
+	 */
+	public void extract(String[] files, Writer out) throws IOException {
+		if (!json)
+			out.write(MethodMetrics.CSV_HEADER + '\n');
+		Arrays.stream(files).parallel().map(file -> {
+			try {
+				StringBuilder lines = new StringBuilder();
+				for (MethodMetrics metrics: extract(file))
+					lines.append(json ? metrics.toJSON() : metrics.toCSV()).append('\n');
+				return lines.toString();
+			} catch (IOException ex) {
+				Logger.error(ex);
+				return "";
+			}
+		}).forEachOrdered(lines -> {
+			try {
+				out.write(lines);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Extract metrics for all methods of the given Java source file, in source order.
+	 */
+	public static List<MethodMetrics> extract(String file) throws IOException {
+		ParseTree tree;
+		try (InputStream inFile = new FileInputStream(file)) {
+			JavaLexer lexer = new JavaLexer(new ANTLRInputStream(inFile));
+			tree = new JavaParser(new CommonTokenStream(lexer)).compilationUnit();
+		}
+		AbstractSyntaxTree ast = ASTBuilder.build(tree, null, null);
+		// AST method nodes by their type and line; methods are matched in source order
+		Map<String, Deque<ASNode>> methods = new HashMap<>();
+		Iterator<ASNode> nodes = ast.allVerticesIterator();
+		while (nodes.hasNext()) {
+			ASNode node = nodes.next();
+			if (node.getType() == ASNode.Type.METHOD || node.getType() == ASNode.Type.CONSTRUCTOR
+					|| node.getType() == ASNode.Type.STATIC_BLOCK)
+				methods.computeIfAbsent(node.getType().name() + ':' + node.getLineOfCode(), k -> new ArrayDeque<>()).add(node);
+		}
+		List<MethodMetrics> results = new ArrayList<>();
+		CFGBuilder.build(tree, cfg -> {
+			Deque<ASNode> matches = methods.get(methodKey(cfg.getEntry().getRuleCtx()));
+			ASNode method = matches == null ? null : matches.poll();
+			results.add(MethodMetrics.compute(file, cfg, ast, method));
+		});
+		return results;
+	}
+
+	private static String methodKey(ParserRuleContext ctx) {
+		if (ctx instanceof JavaParser.MethodDeclarationContext)
+			return ASNode.Type.METHOD.name() + ':' + ctx.getStart().getLine();
+		if (ctx instanceof JavaParser.ConstructorDeclarationContext)
+			return ASNode.Type.CONSTRUCTOR.name() + ':' + ctx.getStart().getLine();
+		if (ctx instanceof JavaParser.ClassBodyDeclarationContext)
+			return ASNode.Type.STATIC_BLOCK.name() + ':' + ((JavaParser.ClassBodyDeclarationContext) ctx).block().getStart().getLine();
+		return "";
+	}
+}
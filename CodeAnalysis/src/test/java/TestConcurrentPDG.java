@@ -0,0 +1,147 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.pdg.PDGBuilder;
+import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Stress test of concurrent PDG builds; many threads run 'buildWithCode' (and reused
+ * builder sessions) on different sources at the same time, and every result must be
+ * identical to the result of a serial build of the same source.
+ * Usage: TestConcurrentPDG [threads] [rounds] [java files ...]
+ */
+class TestConcurrentPDG {
+
+    private static final String[] SOURCES = {
+        "class A {\n" +
+        "    int total;\n" +
+        "    void add(int[] items, int n) {\n" +
+        "        for (int i = 0; i < n; ++i) {\n" +
+        "            if (items[i] > 0)\n" +
+        "                total += items[i];\n" +
+        "        }\n" +
+        "        reset(items);\n" +
+        "    }\n" +
+        "    void reset(int[] items) { items[0] = 0; }\n" +
+        "}\n",
+        "class B {\n" +
+        "    String name;\n" +
+        "    void setName(String n) { name = n; }\n" +
+        "    String run(B other, String s) {\n" +
+        "        String t = s.trim();\n" +
+        "        other.setName(t);\n" +
+        "        while (t.length() > 3)\n" +
+        "            t = t.substring(1);\n" +
+        "        return t + other.name;\n" +
+        "    }\n" +
+        "}\n",
+        "class C {\n" +
+        "    int f(int x) {\n" +
+        "        int y = 0;\n" +
+        "        try {\n" +
+        "            y = g(x);\n" +
+        "        } catch (Exception ex) {\n" +
+        "            y = -1;\n" +
+        "        }\n" +
+        "        switch (y) {\n" +
+        "            case 0: return x;\n" +
+        "            default: return y;\n" +
+        "        }\n" +
+        "    }\n" +
+        "    int g(int x) { return x * 2; }\n" +
+        "}\n"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Logger.setEnabled(false);
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        List<String> sources = new ArrayList<>();
+        Collections.addAll(sources, SOURCES);
+        for (int i = 2; i < args.length; ++i)
+            sources.add(new String(Files.readAllBytes(Paths.get(args[i]))));
+
+        // expected results of serial builds; sources which cannot be built are skipped
+        List<String> expected = new ArrayList<>();
+        for (Iterator<String> it = sources.iterator(); it.hasNext(); ) {
+            try {
+                expected.add(fingerprint(PDGBuilder.buildWithCode(it.next())));
+            } catch (RuntimeException ex) {
+                System.err.println("SKIPPED: " + ex);
+                it.remove();
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t;
+            results.add(pool.submit(() -> {
+                PDGBuilder session = new PDGBuilder();
+                int failures = 0;
+                for (int r = 0; r < rounds; ++r) {
+                    int k = (offset + r) % sources.size();
+                    // alternate between the static entry point and a reused session
+                    List<ProgramDependenceGraph> pdgs = r % 2 == 0
+                            ? PDGBuilder.buildWithCode(sources.get(k))
+                            : session.buildFromCode(sources.get(k));
+                    if (!fingerprint(pdgs).equals(expected.get(k))) {
+                        ++failures;
+                        System.err.println("MISMATCH: source #" + k + " in round " + r);
+                    }
+                }
+                return failures;
+            }));
+        }
+        int failures = 0;
+        for (Future<Integer> result : results)
+            failures += result.get();
+        pool.shutdown();
+        System.out.println(threads + " threads x " + rounds + " rounds over " + sources.size()
+                + " sources: " + (failures == 0 ? "OK" : failures + " MISMATCHES"));
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Returns a textual fingerprint of the given PDGs; their nodes with DEF-USE info, and their edges.
+     */
+    private static String fingerprint(List<ProgramDependenceGraph> pdgs) {
+        StringBuilder str = new StringBuilder();
+        for (ProgramDependenceGraph pdg : pdgs) {
+            str.append(pdg.getName()).append('\n');
+            List<String> lines = new ArrayList<>();
+            Iterator<DEPNode> nodes = pdg.allVerticesIterator();
+            while (nodes.hasNext()) {
+                DEPNode node = nodes.next();
+                lines.add("  " + describe(node) + " DEFS=" + String.join(",", node.getAllDEFs())
+                        + " USES=" + String.join(",", node.getAllUSEs()));
+            }
+            Iterator<Edge<DEPNode, DEPEdge>> edges = pdg.allEdgesIterator();
+            while (edges.hasNext()) {
+                Edge<DEPNode, DEPEdge> edge = edges.next();
+                lines.add("  " + describe(edge.source) + " -" + edge.label.getType() + ":"
+                        + edge.label.getLabel() + "-> " + describe(edge.target));
+            }
+            Collections.sort(lines);
+            for (String line : lines)
+                str.append(line).append('\n');
+        }
+        return str.toString();
+    }
+
+    private static String describe(DEPNode node) {
+        return node.getLineOfCode() + ":" + node.getCode();
+    }
+}
@@ -0,0 +1,188 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.pdg.CFPathTraversal;
+import srctoolkit.janalysis.dg.pdg.PDGBuilder;
+import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Regression check of PDG data edges, against the CFG path-traversal which used to compute them.
+ * Usage: TestDependences [java files ...]
+ */
+class TestDependences {
+
+    private static final String[] SOURCES = {
+        "class S {\n" +
+        "    int sum(int[] a, int n) {\n" +
+        "        int s = 0;\n" +
+        "        int p = 1;\n" +
+        "        for (int i = 0; i < n; ++i) {\n" +
+        "            s += a[i];\n" +
+        "            p *= 2;\n" +
+        "        }\n" +
+        "        return s;\n" +
+        "    }\n" +
+        "}\n",
+        "class B {\n" +
+        "    String name;\n" +
+        "    void setName(String n) { name = n; }\n" +
+        "    String run(B other, String s) {\n" +
+        "        String t = s.trim();\n" +
+        "        other.setName(t);\n" +
+        "        while (t.length() > 3) {\n" +
+        "            if (t.startsWith(\"x\"))\n" +
+        "                break;\n" +
+        "            t = t.substring(1);\n" +
+        "        }\n" +
+        "        return t + other.name;\n" +
+        "    }\n" +
+        "}\n",
+        "class C {\n" +
+        "    int f(int x) {\n" +
+        "        int y = 0;\n" +
+        "        try {\n" +
+        "            y = g(x);\n" +
+        "        } catch (Exception ex) {\n" +
+        "            y = -1;\n" +
+        "        }\n" +
+        "        switch (y) {\n" +
+        "            case 0: x = 1;\n" +
+        "            case 1: return x;\n" +
+        "            default: return y;\n" +
+        "        }\n" +
+        "    }\n" +
+        "    int g(int x) {\n" +
+        "        do { x -= 2; } while (x > 0);\n" +
+        "        return x * 2;\n" +
+        "    }\n" +
+        "}\n"
+    };
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        Logger.setEnabled(false);
+        List<String> sources = new ArrayList<>();
+        Collections.addAll(sources, SOURCES);
+        for (String file : args)
+            sources.add(new String(Files.readAllBytes(Paths.get(file))));
+
+        int checked = 0;
+        for (String source : sources) {
+            List<ProgramDependenceGraph> pdgs;
+            try {
+                pdgs = PDGBuilder.buildWithCode(source);
+            } catch (RuntimeException ex) {
+                System.err.println("SKIPPED: " + ex);
+                continue;
+            }
+            for (ProgramDependenceGraph pdg : pdgs) {
+                checkDataEdges(pdg);
+                ++checked;
+            }
+        }
+        System.out.println(checked + " PDGs checked: " + (failures == 0 ? "OK" : failures + " FAILURES"));
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void fail(String message) {
+        ++failures;
+        System.err.println("FAILED: " + message);
+    }
+
+    //=====================================================================//
+    //                            DATA EDGES                               //
+    //=====================================================================//
+
+    /**
+     * Compare the data edges of the given PDG with those found by traversing the CFG
+     * paths from each definition, up to the next definition of the same variable.
+     */
+    private static void checkDataEdges(ProgramDependenceGraph pdg) {
+        Set<String> expected = new TreeSet<>();
+        Map<DEPNode, Integer> ids = numberNodes(pdg);
+        for (DEPNode param : pdg.getParams())
+            traverseDEFs(pdg, param, pdg.getEntry(), ids, expected);
+        Set<DEPNode> visitedDefs = new LinkedHashSet<>();
+        CFPathTraversal defTraversal = new CFPathTraversal(pdg, pdg.getEntry());
+        while (defTraversal.hasNext()) {
+            DEPNode defNode = defTraversal.next();
+            if (!visitedDefs.add(defNode)) {
+                defTraversal.continueNextPath();
+                continue;
+            }
+            traverseDEFs(pdg, defNode, defNode, ids, expected);
+        }
+        Set<String> actual = new TreeSet<>();
+        for (Edge<DEPNode, DEPEdge> edge : pdg.dataEdges())
+            actual.add(describe(edge, ids));
+        if (!actual.equals(expected)) {
+            Set<String> missing = new TreeSet<>(expected);
+            missing.removeAll(actual);
+            Set<String> extra = new TreeSet<>(actual);
+            extra.removeAll(expected);
+            fail(pdg.getName() + ": data edges differ; missing " + missing + ", extra " + extra);
+        }
+    }
+
+    private static void traverseDEFs(ProgramDependenceGraph pdg, DEPNode defNode, DEPNode start,
+                                     Map<DEPNode, Integer> ids, Set<String> edges) {
+        if (defNode.getAllDEFs().length == 0)
+            return;
+        for (String flow : defNode.getAllSelfFlows())
+            edges.add(describe(defNode, flow, defNode, ids));
+        Set<DEPNode> visitedUses = new LinkedHashSet<>();
+        for (String def : defNode.getAllDEFs()) {
+            CFPathTraversal useTraversal = new CFPathTraversal(pdg, start);
+            visitedUses.clear();
+            visitedUses.add(useTraversal.next()); // skip start node
+            while (useTraversal.hasNext()) {
+                DEPNode useNode = useTraversal.next();
+                if (useNode.hasDEF(def))
+                    useTraversal.continueNextPath();
+                if (!visitedUses.add(useNode))
+                    useTraversal.continueNextPath();
+                else if (useNode.hasUSE(def))
+                    edges.add(describe(defNode, def, useNode, ids));
+            }
+        }
+    }
+
+    //=====================================================================//
+    //                             UTILITIES                               //
+    //=====================================================================//
+
+    private static Map<DEPNode, Integer> numberNodes(ProgramDependenceGraph pdg) {
+        Map<DEPNode, Integer> ids = new IdentityHashMap<>();
+        Iterator<DEPNode> nodes = pdg.allVerticesIterator();
+        while (nodes.hasNext())
+            ids.put(nodes.next(), ids.size());
+        return ids;
+    }
+
+    private static String describe(DEPNode node) {
+        return node.getLineOfCode() + ":" + node.getCode();
+    }
+
+    private static String describe(Edge<DEPNode, DEPEdge> edge, Map<DEPNode, Integer> ids) {
+        return describe(edge.source, edge.label.getLabel(), edge.target, ids);
+    }
+
+    private static String describe(DEPNode source, String var, DEPNode target, Map<DEPNode, Integer> ids) {
+        return "#" + ids.get(source) + " " + describe(source) + " -" + var + "-> #" + ids.get(target) + " " + describe(target);
+    }
+}
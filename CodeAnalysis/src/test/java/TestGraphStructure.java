@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import srctoolkit.janalysis.common.graph.Digraph;
+import srctoolkit.janalysis.common.graph.GraphStructure;
+
+/**
+ * Check of the loop nesting forest of GraphStructure on small hand-made graphs;
+ * including a root which is itself a loop header, nested loops, self-loops and
+ * an irreducible loop.
+ */
+class TestGraphStructure {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        // the root is a loop header; 'b' is outside of any loop
+        GraphStructure<String, String> gs = structure("r", "r>x", "x>r", "r>b");
+        check("root loop: loop of b", gs.getLoop("b") == null);
+        check("root loop: depth of b", gs.getLoopDepth("b") == 0);
+        check("root loop: header", gs.isLoopHeader("r") && gs.getLoop("x").getHeader().equals("r"));
+        check("root loop: nodes", sameNodes(gs.getLoop("r").getNodes(), "r", "x"));
+        check("root loop: loop count", gs.getLoops().size() == 1);
+
+        // nested loops, with a self-loop inside the inner loop
+        gs = structure("e", "e>h1", "h1>h2", "h2>s", "s>s", "s>h2", "h2>t", "t>h1", "h1>x");
+        check("nested: depths", gs.getLoopDepth("e") == 0 && gs.getLoopDepth("h1") == 1
+                && gs.getLoopDepth("t") == 1 && gs.getLoopDepth("h2") == 2 && gs.getLoopDepth("s") == 3
+                && gs.getLoopDepth("x") == 0);
+        check("nested: parents", gs.getLoop("s").getParent() == gs.getLoop("h2")
+                && gs.getLoop("h2").getParent() == gs.getLoop("h1") && gs.getLoop("h1").getParent() == null);
+        check("nested: outer nodes", sameNodes(gs.getLoop("h1").getNodes(), "h1", "h2", "s", "t"));
+        check("nested: top-level loops", gs.getTopLevelLoops().size() == 1);
+
+        // irreducible loop; 'a' and 'b' both enter the cycle
+        gs = structure("e", "e>a", "e>b", "a>b", "b>a", "b>x");
+        check("irreducible: reducible flag", !gs.getLoop("a").isReducible());
+        check("irreducible: nodes", sameNodes(gs.getLoop("a").getNodes(), "a", "b"));
+        check("irreducible: outside", gs.getLoop("e") == null && gs.getLoop("x") == null);
+
+        System.out.println(failures == 0 ? "OK" : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Build the structure of a graph given as "src>trg" edges, from the given root.
+     */
+    private static GraphStructure<String, String> structure(String root, String... edges) {
+        Digraph<String, String> graph = new Digraph<>();
+        graph.addVertex(root);
+        for (String edge : edges) {
+            String[] ends = edge.split(">");
+            graph.addVertex(ends[0]);
+            graph.addVertex(ends[1]);
+            graph.addEdge(ends[0], ends[1]);
+        }
+        return new GraphStructure<>(graph, root);
+    }
+
+    private static boolean sameNodes(List<String> nodes, String... expected) {
+        return nodes.size() == expected.length && new HashSet<>(nodes).equals(new HashSet<>(Arrays.asList(expected)));
+    }
+
+    private static void check(String name, boolean ok) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + name);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import srctoolkit.janalysis.ast.ASEdge;
+import srctoolkit.janalysis.ast.ASNode;
+import srctoolkit.janalysis.ast.ASTBuilder;
+import srctoolkit.janalysis.ast.AbstractSyntaxTree;
+import srctoolkit.janalysis.ast.SourceEdit;
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Check of incremental AST rebuilds; random edits are applied to each source one after
+ * another, and after each edit the rebuilt tree must be identical to a full build of the
+ * edited source (structure, code, normalized code, line numbers and hashes);
+ * and rebuilding a copy of a tree must not change the original tree.
+ * Usage: TestIncrementalAST [edits per source] [java files ...]
+ */
+class TestIncrementalAST {
+
+    private static final String SOURCE =
+        "package sample;\n" +
+        "\n" +
+        "import java.util.List;\n" +
+        "\n" +
+        "class Counter {\n" +
+        "    private int total = 0;\n" +
+        "    private static int instances;\n" +
+        "\n" +
+        "    static {\n" +
+        "        int start = 1;\n" +
+        "        instances = start;\n" +
+        "    }\n" +
+        "\n" +
+        "    Counter(int start) {\n" +
+        "        total = start;\n" +
+        "        ++instances;\n" +
+        "    }\n" +
+        "\n" +
+        "    int add(List<Integer> items) {\n" +
+        "        int sum = 0;\n" +
+        "        for (int item : items) {\n" +
+        "            sum += item;\n" +
+        "            total += item;\n" +
+        "        }\n" +
+        "        return sum;\n" +
+        "    }\n" +
+        "\n" +
+        "    Runnable reset() {\n" +
+        "        return new Runnable() {\n" +
+        "            public void run() {\n" +
+        "                int old = total;\n" +
+        "                total = 0;\n" +
+        "                System.out.println(old);\n" +
+        "            }\n" +
+        "        };\n" +
+        "    }\n" +
+        "\n" +
+        "    int twice(int x) { int y = x * 2; return y; } int limit = 10;\n" +
+        "\n" +
+        "    static class Box {\n" +
+        "        int value = 3;\n" +
+        "        int get() {\n" +
+        "            return value + instances;\n" +
+        "        }\n" +
+        "    }\n" +
+        "\n" +
+        "    int last(int n) {\n" +
+        "        if (n <= 1)\n" +
+        "            return n;\n" +
+        "        return last(n - 1) + total;\n" +
+        "    }\n" +
+        "}\n";
+
+    public static void main(String[] args) throws Exception {
+        Logger.setEnabled(false);
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<String> sources = new ArrayList<>();
+        sources.add(SOURCE);
+        for (int i = 1; i < args.length; ++i)
+            sources.add(new String(Files.readAllBytes(Paths.get(args[i]))));
+
+        Random random = new Random(28);
+        int incremental = 0, full = 0, failures = 0;
+        for (String code : sources) {
+            AbstractSyntaxTree ast;
+            try {
+                ast = ASTBuilder.buildWithCode(code);
+            } catch (RuntimeException ex) {
+                System.err.println("SKIPPED: " + ex);
+                continue;
+            }
+            for (int r = 0; r < rounds; ++r) {
+                // one or two edits after statements; new lines, new declarations, or changed literals
+                List<SourceEdit> edits = new ArrayList<>();
+                StringBuilder edited = new StringBuilder(code);
+                int at = randomStatementEnd(code, random);
+                if (at < 0)
+                    break;
+                int count = random.nextInt(3) == 0 ? 2 : 1;
+                int shift = 0;
+                for (int e = 0; e < count && at >= 0; ++e) {
+                    String text = randomEdit(random, r);
+                    int oldLength = 0;
+                    if (text.isEmpty()) {
+                        // replace the digit before the semicolon, if any
+                        if (!Character.isDigit(code.charAt(at - 1)))
+                            continue;
+                        text = String.valueOf(random.nextInt(10));
+                        oldLength = 1;
+                        edited.replace(at - 1 + shift, at + shift, text);
+                        edits.add(new SourceEdit(at - 1, 1, 1));
+                    } else {
+                        edited.insert(at + 1 + shift, text);
+                        edits.add(new SourceEdit(at + 1, 0, text.length()));
+                    }
+                    shift += text.length() - oldLength;
+                    at = code.indexOf(';', at + 1);
+                }
+                if (edits.isEmpty())
+                    continue;
+                String newCode = edited.toString();
+                String expected;
+                try {
+                    expected = dump(ASTBuilder.buildWithCode(newCode));
+                } catch (RuntimeException ex) {
+                    // the edit broke the code (e.g. a semicolon in a comment); skip it
+                    continue;
+                }
+                AbstractSyntaxTree rebuilt = ASTBuilder.rebuild(ast, newCode, edits);
+                if (rebuilt == ast)
+                    ++incremental;
+                else
+                    ++full;
+                if (!dump(rebuilt).equals(expected)) {
+                    ++failures;
+                    System.err.println("MISMATCH: round " + r + ", edits " + edits);
+                    break;
+                }
+                ast = rebuilt;
+                code = newCode;
+            }
+        }
+        // rebuilding a copy must not change the original tree
+        AbstractSyntaxTree original = ASTBuilder.buildWithCode(SOURCE);
+        String before = dump(original);
+        int at = SOURCE.indexOf(';', SOURCE.indexOf("int sum")) + 1;
+        String newCode = SOURCE.substring(0, at) + "\n\n        int copied = 1;" + SOURCE.substring(at);
+        AbstractSyntaxTree rebuilt = ASTBuilder.rebuild(new AbstractSyntaxTree(original), newCode,
+                Arrays.asList(new SourceEdit(at, 0, newCode.length() - SOURCE.length())));
+        if (!dump(original).equals(before) || !dump(rebuilt).equals(dump(ASTBuilder.buildWithCode(newCode)))) {
+            ++failures;
+            System.err.println("MISMATCH: rebuild of a copy");
+        }
+        System.out.println(incremental + " incremental and " + full + " full rebuilds: "
+                + (failures == 0 ? "OK" : failures + " MISMATCHES"));
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static int randomStatementEnd(String code, Random random) {
+        int from = code.indexOf('{');
+        if (from < 0)
+            return -1;
+        int at = code.indexOf(';', from + random.nextInt(code.length() - from));
+        return at >= 0 ? at : code.indexOf(';', from);
+    }
+
+    private static String randomEdit(Random random, int round) {
+        switch (random.nextInt(4)) {
+            case 0:  return "\n";
+            case 1:  return "\n\n        int tmp" + round + " = " + round + ";";
+            case 2:  return " ";
+            default: return "";
+        }
+    }
+
+    /**
+     * Returns a pre-order dump of the given tree, with the code, normalized code, line and hash of each node.
+     */
+    private static String dump(AbstractSyntaxTree ast) {
+        StringBuilder str = new StringBuilder();
+        Set<ASNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ASNode> stack = new ArrayList<>(Arrays.asList(ast.root));
+        while (!stack.isEmpty()) {
+            ASNode node = stack.remove(stack.size() - 1);
+            if (!visited.add(node))
+                continue;
+            str.append(node.getType()).append('|').append(node.getCode()).append('|')
+               .append(node.getNormalizedCode()).append('|').append(node.getLineOfCode()).append('|')
+               .append(Long.toHexString(node.getHash())).append('\n');
+            List<ASNode> children = new ArrayList<>();
+            Iterator<Edge<ASNode, ASEdge>> outs = ast.outgoingEdgesIterator(node);
+            while (outs.hasNext())
+                children.add(outs.next().target);
+            Collections.reverse(children);
+            stack.addAll(children);
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.pdg.PDGBuilder;
+import srctoolkit.janalysis.dg.pdg.PDGSlicer;
+import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Check of PDG slicing; backward and forward slices and chops of every node (with and
+ * without control dependences), against plain walks over the PDG edges, and the slices
+ * of a small method against fixed expected slices.
+ * Usage: TestPDGSlicer [java files ...]
+ */
+class TestPDGSlicer {
+
+    private static final String[] SOURCES = {
+        "class S {\n" +
+        "    int sum(int[] a, int n) {\n" +
+        "        int s = 0;\n" +
+        "        int p = 1;\n" +
+        "        for (int i = 0; i < n; ++i) {\n" +
+        "            s += a[i];\n" +
+        "            p *= 2;\n" +
+        "        }\n" +
+        "        return s;\n" +
+        "    }\n" +
+        "}\n",
+        "class B {\n" +
+        "    String name;\n" +
+        "    void setName(String n) { name = n; }\n" +
+        "    String run(B other, String s) {\n" +
+        "        String t = s.trim();\n" +
+        "        other.setName(t);\n" +
+        "        while (t.length() > 3) {\n" +
+        "            if (t.startsWith(\"x\"))\n" +
+        "                break;\n" +
+        "            t = t.substring(1);\n" +
+        "        }\n" +
+        "        return t + other.name;\n" +
+        "    }\n" +
+        "}\n",
+        "class C {\n" +
+        "    int f(int x) {\n" +
+        "        int y = 0;\n" +
+        "        try {\n" +
+        "            y = g(x);\n" +
+        "        } catch (Exception ex) {\n" +
+        "            y = -1;\n" +
+        "        }\n" +
+        "        switch (y) {\n" +
+        "            case 0: x = 1;\n" +
+        "            case 1: return x;\n" +
+        "            default: return y;\n" +
+        "        }\n" +
+        "    }\n" +
+        "    int g(int x) {\n" +
+        "        do { x -= 2; } while (x > 0);\n" +
+        "        return x * 2;\n" +
+        "    }\n" +
+        "}\n"
+    };
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        Logger.setEnabled(false);
+        List<String> sources = new ArrayList<>();
+        Collections.addAll(sources, SOURCES);
+        for (String file : args)
+            sources.add(new String(Files.readAllBytes(Paths.get(file))));
+
+        int checked = 0;
+        for (String source : sources) {
+            List<ProgramDependenceGraph> pdgs;
+            try {
+                pdgs = PDGBuilder.buildWithCode(source);
+            } catch (RuntimeException ex) {
+                System.err.println("SKIPPED: " + ex);
+                continue;
+            }
+            for (ProgramDependenceGraph pdg : pdgs) {
+                checkSlices(pdg);
+                ++checked;
+            }
+        }
+        checkExpectedSlices();
+        System.out.println(checked + " PDGs sliced: " + (failures == 0 ? "OK" : failures + " FAILURES"));
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void fail(String message) {
+        ++failures;
+        System.err.println("FAILED: " + message);
+    }
+
+    /**
+     * Compare the slices and chops of all nodes of the given PDG with plain walks over its edges.
+     */
+    private static void checkSlices(ProgramDependenceGraph pdg) {
+        PDGSlicer slicer = new PDGSlicer(pdg);
+        for (int v = 0; v < slicer.size(); ++v) {
+            DEPNode node = slicer.getNode(v);
+            for (boolean control : new boolean[] {false, true}) {
+                Set<DEPNode> backward = walk(pdg, node, control, true);
+                Set<DEPNode> forward = walk(pdg, node, control, false);
+                if (!sameNodes(slicer.backwardSlice(node, control), backward))
+                    fail(pdg.getName() + ": backward slice of '" + node.getCode() + "', control=" + control);
+                if (!sameNodes(slicer.forwardSlice(node, control), forward))
+                    fail(pdg.getName() + ": forward slice of '" + node.getCode() + "', control=" + control);
+                DEPNode sink = slicer.getNode(slicer.size() - 1 - v);
+                Set<DEPNode> chop = walk(pdg, sink, control, true);
+                chop.retainAll(forward);
+                if (!sameNodes(slicer.chop(node, sink, control), chop))
+                    fail(pdg.getName() + ": chop of '" + node.getCode() + "' and '" + sink.getCode() + "', control=" + control);
+            }
+        }
+    }
+
+    private static Set<DEPNode> walk(ProgramDependenceGraph pdg, DEPNode start, boolean control, boolean backward) {
+        Set<DEPNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DEPNode> stack = new ArrayDeque<>();
+        visited.add(start);
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            DEPNode node = stack.pop();
+            List<Edge<DEPNode, DEPEdge>> edges = new ArrayList<>(backward ? pdg.inDataEdges(node) : pdg.outDataEdges(node));
+            if (control)
+                edges.addAll(backward ? pdg.inCtrlEdges(node) : pdg.outCtrlEdges(node));
+            for (Edge<DEPNode, DEPEdge> edge : edges) {
+                DEPNode next = backward ? edge.source : edge.target;
+                if (visited.add(next))
+                    stack.push(next);
+            }
+        }
+        return visited;
+    }
+
+    private static boolean sameNodes(List<DEPNode> slice, Set<DEPNode> expected) {
+        Set<DEPNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        nodes.addAll(slice);
+        return nodes.size() == slice.size() && nodes.equals(expected);
+    }
+
+    /**
+     * Check the slices of the 'sum' method against fixed expected slices.
+     */
+    private static void checkExpectedSlices() throws IOException {
+        ProgramDependenceGraph pdg = PDGBuilder.buildWithCode(SOURCES[0]).get(0);
+        PDGSlicer slicer = new PDGSlicer(pdg);
+        DEPNode ret = findNode(pdg, "return s;");
+        DEPNode prod = findNode(pdg, "int p = 1");
+        DEPNode cond = findNode(pdg, "for (i < n)");
+        expectSlice("backward data slice of 'return s;'", slicer.backwardSlice(ret, false),
+                "2:int[] a", "3:int s = 0", "5:int i = 0", "5:++i", "6:s += a[i]", "9:return s;");
+        expectSlice("backward slice of 'return s;'", slicer.backwardSlice(ret, true),
+                "2:int sum(int[] a, int n)", "2:int[] a", "2:int n", "3:int s = 0", "5:int i = 0",
+                "5:for (i < n)", "5:++i", "6:s += a[i]", "9:return s;");
+        expectSlice("forward slice of 'int p = 1'", slicer.forwardSlice(prod, true),
+                "4:int p = 1", "7:p *= 2");
+        expectSlice("forward slice of 'for (i < n)'", slicer.forwardSlice(cond, true),
+                "5:for (i < n)", "5:++i", "6:s += a[i]", "7:p *= 2", "9:return s;");
+        expectSlice("chop of 'int p = 1' and 'return s;'", slicer.chop(prod, ret, true));
+    }
+
+    private static void expectSlice(String title, List<DEPNode> slice, String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (DEPNode node : slice)
+            actual.add(describe(node));
+        Collections.sort(actual);
+        List<String> sorted = new ArrayList<>(Arrays.asList(expected));
+        Collections.sort(sorted);
+        if (!actual.equals(sorted))
+            fail(title + ": expected " + sorted + ", but was " + actual);
+    }
+
+    private static DEPNode findNode(ProgramDependenceGraph pdg, String code) {
+        Iterator<DEPNode> nodes = pdg.allVerticesIterator();
+        while (nodes.hasNext()) {
+            DEPNode node = nodes.next();
+            if (code.equals(node.getCode()))
+                return node;
+        }
+        throw new IllegalStateException("No node '" + code + "' in " + pdg.getName());
+    }
+
+    private static String describe(DEPNode node) {
+        return node.getLineOfCode() + ":" + node.getCode();
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.pdg.PDGBuilder;
+import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.dg.pdg.SideEffectSummaries;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Check of the side-effect summaries store; a save/load round-trip, rejection of files
+ * of other versions, lookups of keys whose hash-table slots collide, and the use of
+ * library summaries for calls which share their name with a method of the analyzed code.
+ */
+class TestSideEffectSummaries {
+
+    private static final String LIBRARY =
+        "class Box {\n" +
+        "    int value;\n" +
+        "    void zap(int x) { value = x; }\n" +
+        "    int peek() { return value; }\n" +
+        "    void put(int x) { value = x; }\n" +
+        "    void put(String s) { value = s.length(); }\n" +
+        "%s" +
+        "}\n";
+
+    private static final String APP =
+        "class App {\n" +
+        "    void m(Box b) {\n" +
+        "        b.zap(1);\n" +
+        "    }\n" +
+        "%s" +
+        "}\n";
+
+    private static final int FILLERS = 40;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        Logger.setEnabled(false);
+        Path dir = Files.createTempDirectory("summaries");
+        StringBuilder fillers = new StringBuilder();
+        for (int i = 0; i < FILLERS; ++i)
+            fillers.append("    void m").append(i).append("() { value = ").append(i).append("; }\n");
+        Path library = dir.resolve("Box.java");
+        Files.write(library, String.format(LIBRARY, fillers).getBytes(StandardCharsets.UTF_8));
+        Path store = dir.resolve("box.sefs");
+
+        // round-trip; overloads with the same number of params share one summary
+        int saved = SideEffectSummaries.build(new String[] {library.toString()}, store.toString());
+        SideEffectSummaries summaries = SideEffectSummaries.load(store.toString());
+        check("round-trip: size", saved == 3 + FILLERS && summaries.size() == saved);
+        check("round-trip: lookups", summaries.contains("Box", "zap", 1) && summaries.contains("Box", "peek", 0)
+                && summaries.contains("Box", "put", 1) && summaries.contains("java.util.Box<T>", "zap", 1));
+        check("round-trip: missing", !summaries.contains("Box", "zap", 2) && !summaries.contains("Bag", "zap", 1)
+                && !summaries.contains("Box", "put", 2));
+
+        // keys with the same home slot are all found; a missing key is not found past them
+        byte[] bytes = Files.readAllBytes(store);
+        int slots = ByteBuffer.wrap(bytes).getInt(8);
+        List<String> keys = new ArrayList<>(Arrays.asList("zap/1", "peek/0", "put/1"));
+        for (int i = 0; i < FILLERS; ++i)
+            keys.add("m" + i + "/0");
+        String[] pair = null;
+        for (int i = 0; i < keys.size() && pair == null; ++i)
+            for (int j = 0; j < i && pair == null; ++j)
+                if (homeSlot("Box." + keys.get(i), slots) == homeSlot("Box." + keys.get(j), slots))
+                    pair = new String[] {keys.get(j), keys.get(i)};
+        check("collision: found a pair", pair != null);
+        if (pair != null) {
+            for (String key : pair) {
+                String[] nameArity = key.split("/");
+                check("collision: lookup of " + key,
+                        summaries.contains("Box", nameArity[0], Integer.parseInt(nameArity[1])));
+            }
+            String missing = null;
+            for (int i = 0; missing == null && i < 10000; ++i)
+                if (homeSlot("Box.q" + i + "/0", slots) == homeSlot("Box." + pair[0], slots))
+                    missing = "q" + i;
+            check("collision: missing key", missing != null && !summaries.contains("Box", missing, 0));
+        }
+
+        // files of other versions, and other files, are rejected
+        ByteBuffer.wrap(bytes).putInt(4, SideEffectSummaries.VERSION + 1);
+        check("version: rejected", rejects(dir.resolve("v2.sefs"), bytes, "version"));
+        ByteBuffer.wrap(bytes).putInt(0, 0x12345678);
+        check("magic: rejected", rejects(dir.resolve("other.sefs"), bytes, "Not a side-effect"));
+
+        // the summary of 'Box.zap' is used, even when the analyzed code declares another 'zap'
+        List<String> alone = callDEFs(String.format(APP, ""), summaries);
+        List<String> shadowed = callDEFs(String.format(APP, "    void zap(int y) { }\n"), summaries);
+        check("library call: DEFs " + alone, alone.contains("b"));
+        check("library call with same-named method: DEFs " + shadowed, shadowed.contains("b"));
+
+        for (String file : new String[] {"Box.java", "box.sefs", "v2.sefs", "other.sefs"})
+            Files.deleteIfExists(dir.resolve(file));
+        Files.delete(dir);
+
+        System.out.println(failures == 0 ? "OK" : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Returns the DEFs of the 'b.zap(1)' node of the given code, built with the given summaries.
+     */
+    private static List<String> callDEFs(String code, SideEffectSummaries summaries) throws IOException {
+        for (ProgramDependenceGraph pdg : new PDGBuilder().withLibrarySummaries(summaries).buildFromCode(code)) {
+            Iterator<DEPNode> nodes = pdg.allVerticesIterator();
+            while (nodes.hasNext()) {
+                DEPNode node = nodes.next();
+                if ("b.zap(1)".equals(node.getCode()))
+                    return Arrays.asList(node.getAllDEFs());
+            }
+        }
+        throw new IllegalStateException("No 'b.zap(1)' node!");
+    }
+
+    private static boolean rejects(Path path, byte[] bytes, String message) throws IOException {
+        Files.write(path, bytes);
+        try {
+            SideEffectSummaries.load(path.toString());
+            return false;
+        } catch (IOException ex) {
+            return ex.getMessage().contains(message);
+        }
+    }
+
+    /**
+     * Returns the home slot of the given key; the hash is the 64-bit FNV-1a of the store.
+     */
+    private static int homeSlot(String key, int slots) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        if (hash == 0)
+            hash = 1;
+        return (int) hash & (slots - 1);
+    }
+
+    private static void check(String name, boolean ok) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + name);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import srctoolkit.janalysis.common.graph.Edge;
+import srctoolkit.janalysis.dg.DEPEdge;
+import srctoolkit.janalysis.dg.DEPNode;
+import srctoolkit.janalysis.dg.pdg.SDGBuilder;
+import srctoolkit.janalysis.dg.pdg.SystemDependenceGraph;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Check of the summary edges of system dependence graphs, across mutually recursive
+ * methods; against fixed expected edges, and against a naive whole-program fixpoint.
+ */
+class TestSummaryEdges {
+
+    // mutually recursive methods; 'k' only reaches a print statement of 'f', so no
+    // summary edge may go from it, while all other arguments reach the returned values
+    private static final String RECURSIVE =
+        "class M {\n" +
+        "    int f(int n, int k) {\n" +
+        "        if (n <= 0)\n" +
+        "            return 0;\n" +
+        "        System.out.println(k);\n" +
+        "        return g(n - 1);\n" +
+        "    }\n" +
+        "    int g(int n) {\n" +
+        "        return f(n, n) + 1;\n" +
+        "    }\n" +
+        "    int ping(int n, int acc) {\n" +
+        "        if (n <= 0)\n" +
+        "            return acc;\n" +
+        "        return pong(n - 1, acc + n);\n" +
+        "    }\n" +
+        "    int pong(int n, int acc) {\n" +
+        "        return ping(n, acc * 2);\n" +
+        "    }\n" +
+        "    void main(int a, int b) {\n" +
+        "        int r = f(a, b);\n" +
+        "        int s = ping(b, r);\n" +
+        "        System.out.println(s);\n" +
+        "    }\n" +
+        "}\n";
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Logger.setEnabled(false);
+        checkSummaryEdges();
+        System.out.println(failures == 0 ? "OK" : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void fail(String message) {
+        ++failures;
+        System.err.println("FAILED: " + message);
+    }
+
+    /**
+     * Check the summary edges of the SDG of the mutually recursive methods, against fixed
+     * expected edges, and against a naive fixpoint over all call sites of the program.
+     */
+    private static void checkSummaryEdges() {
+        SystemDependenceGraph sdg = SDGBuilder.buildWithCode(new String[] {RECURSIVE});
+        Set<String> actual = new TreeSet<>();
+        Set<Edge<DEPNode, DEPEdge>> summaries = Collections.newSetFromMap(new IdentityHashMap<>());
+        Iterator<Edge<DEPNode, DEPEdge>> edges = sdg.allEdgesIterator();
+        while (edges.hasNext()) {
+            Edge<DEPNode, DEPEdge> edge = edges.next();
+            if (edge.label.getType() == DEPEdge.Type.SUMMARY) {
+                summaries.add(edge);
+                actual.add(describe(edge.source) + " -> " + describe(edge.target));
+            }
+        }
+        Set<String> expected = new TreeSet<>(Arrays.asList(
+                "6:actual-in: (n $SUB $INT) -> 6:actual-out: $RET",
+                "9:actual-in: n -> 9:actual-out: $RET",
+                "14:actual-in: (n $SUB $INT) -> 14:actual-out: $RET",
+                "14:actual-in: (acc $ADD n) -> 14:actual-out: $RET",
+                "17:actual-in: n -> 17:actual-out: $RET",
+                "17:actual-in: (acc $MUL $INT) -> 17:actual-out: $RET",
+                "20:actual-in: a -> 20:actual-out: $RET",
+                "21:actual-in: b -> 21:actual-out: $RET",
+                "21:actual-in: r -> 21:actual-out: $RET"));
+        if (!actual.equals(expected))
+            fail("summary edges: expected " + expected + ", but was " + actual);
+
+        // naive fixpoint; a summary edge links an actual-in to an actual-out, if the
+        // callee has an intra-procedural path (including summary edges) between them
+        Map<DEPNode, Set<DEPNode>> reference = new IdentityHashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SystemDependenceGraph.CallSite site : sdg.getCallSites()) {
+                List<DEPNode> formalIns = sdg.getFormalIns(site.CALLEE);
+                List<DEPNode> formalOuts = sdg.getFormalOuts(site.CALLEE);
+                for (int i = 0; i < site.ACTUAL_INS.size(); ++i) {
+                    Set<DEPNode> reached = reach(sdg, formalIns.get(i), reference);
+                    for (int j = 0; j < site.ACTUAL_OUTS.size(); ++j) {
+                        DEPNode out = site.ACTUAL_OUTS.get(j);
+                        if (out != null && reached.contains(formalOuts.get(j)))
+                            changed |= reference.computeIfAbsent(site.ACTUAL_INS.get(i),
+                                    k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(out);
+                    }
+                }
+            }
+        }
+        int count = 0;
+        for (Edge<DEPNode, DEPEdge> edge : summaries) {
+            Set<DEPNode> outs = reference.get(edge.source);
+            if (outs == null || !outs.contains(edge.target))
+                fail("unexpected summary edge: " + describe(edge.source) + " -> " + describe(edge.target));
+        }
+        for (Set<DEPNode> outs : reference.values())
+            count += outs.size();
+        if (count != summaries.size())
+            fail("summary edges: " + summaries.size() + " edges, but the naive fixpoint has " + count);
+    }
+
+    /**
+     * Returns the nodes reachable from the given node along data, control and
+     * (the given) summary edges; these never leave the method of the node.
+     */
+    private static Set<DEPNode> reach(SystemDependenceGraph sdg, DEPNode start, Map<DEPNode, Set<DEPNode>> summaries) {
+        Set<DEPNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DEPNode> stack = new ArrayDeque<>();
+        visited.add(start);
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            DEPNode node = stack.pop();
+            List<DEPNode> next = new ArrayList<>(summaries.getOrDefault(node, Collections.emptySet()));
+            Iterator<Edge<DEPNode, DEPEdge>> edges = sdg.outgoingEdgesIterator(node);
+            while (edges.hasNext()) {
+                Edge<DEPNode, DEPEdge> edge = edges.next();
+                if (edge.label.getType() == DEPEdge.Type.DATA || edge.label.getType() == DEPEdge.Type.CTRL)
+                    next.add(edge.target);
+            }
+            for (DEPNode target : next)
+                if (visited.add(target))
+                    stack.push(target);
+        }
+        return visited;
+    }
+
+    private static String describe(DEPNode node) {
+        return node.getLineOfCode() + ":" + node.getCode();
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srctoolkit.janalysis.dg.pdg.PDGBuilder;
+import srctoolkit.janalysis.dg.pdg.ProgramDependenceGraph;
+import srctoolkit.janalysis.dg.pdg.TaintAnalysis;
+import srctoolkit.janalysis.utils.Logger;
+
+/**
+ * Check of TaintAnalysis on a small class; a source-sink flow, a flow cut by a sanitizer,
+ * sources which never reach a sink (a stream which is never closed), qualified constructor
+ * calls, and methods declared with the name of a source.
+ */
+class TestTaintAnalysis {
+
+    private static final String SOURCE =
+        "class Shell {\n" +
+        "    void run(java.io.BufferedReader in) throws Exception {\n" +
+        "        String cmd = in.readLine();\n" +
+        "        Runtime.getRuntime().exec(cmd);\n" +
+        "    }\n" +
+        "    void safe(java.io.BufferedReader in) throws Exception {\n" +
+        "        String cmd = in.readLine();\n" +
+        "        String clean = escape(cmd);\n" +
+        "        Runtime.getRuntime().exec(clean);\n" +
+        "    }\n" +
+        "    int leak() throws Exception {\n" +
+        "        FileInputStream f = new FileInputStream(\"data\");\n" +
+        "        return f.read();\n" +
+        "    }\n" +
+        "    void closed() throws Exception {\n" +
+        "        java.io.FileInputStream f = new java.io.FileInputStream(\"data\");\n" +
+        "        f.close();\n" +
+        "    }\n" +
+        "    String readLine() {\n" +
+        "        return \"readLine()\";\n" +
+        "    }\n" +
+        "    String escape(String s) {\n" +
+        "        return s.replace(' ', '_');\n" +
+        "    }\n" +
+        "}\n";
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        Logger.setEnabled(false);
+        TaintAnalysis taint = new TaintAnalysis(
+                Arrays.asList("readLine", "new FileInputStream"),
+                Arrays.asList("exec", "close"),
+                Arrays.asList("escape"));
+        Map<String, TaintAnalysis.Result> results = new HashMap<>();
+        List<ProgramDependenceGraph> pdgs = PDGBuilder.buildWithCode(SOURCE);
+        for (TaintAnalysis.Result result : taint.analyze(pdgs))
+            results.put(result.PDG.getName(), result);
+
+        // a source flows into a sink
+        TaintAnalysis.Result run = find(results, "run");
+        check("run: one flow", run.FLOWS.size() == 1 && run.UNREACHED_SOURCES.isEmpty());
+        check("run: source and sink", run.FLOWS.size() == 1
+                && run.FLOWS.get(0).SOURCE.getCode().contains("readLine")
+                && run.FLOWS.get(0).SINK.getCode().contains("exec"));
+        // the sanitizer cuts the flow
+        TaintAnalysis.Result safe = find(results, "safe");
+        check("safe: no flow", safe.SOURCES.size() == 1 && safe.FLOWS.isEmpty());
+        check("safe: source unreached", safe.UNREACHED_SOURCES.size() == 1);
+        // a stream which is never closed
+        TaintAnalysis.Result leak = find(results, "leak");
+        check("leak: unreached source", leak.SOURCES.size() == 1 && leak.FLOWS.isEmpty()
+                && leak.UNREACHED_SOURCES.size() == 1);
+        // a package-qualified constructor call, which is closed
+        TaintAnalysis.Result closed = find(results, "closed");
+        check("closed: qualified source", closed.SOURCES.size() == 1 && closed.FLOWS.size() == 1
+                && closed.UNREACHED_SOURCES.isEmpty());
+        // the declaration of 'readLine' is not a call of 'readLine', nor is a string literal
+        TaintAnalysis.Result readLine = find(results, "readLine");
+        check("readLine: no source", readLine.SOURCES.isEmpty() && readLine.UNREACHED_SOURCES.isEmpty());
+        TaintAnalysis.Result escape = find(results, "escape");
+        check("escape: no source", escape.SOURCES.isEmpty());
+
+        System.out.println(failures == 0 ? "OK" : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Returns the result of the given method; PDGs are named by the signatures of their methods.
+     */
+    private static TaintAnalysis.Result find(Map<String, TaintAnalysis.Result> results, String method) {
+        for (Map.Entry<String, TaintAnalysis.Result> entry : results.entrySet())
+            if (entry.getKey().contains(" " + method + "("))
+                return entry.getValue();
+        throw new IllegalStateException("No PDG for method: " + method + " in " + results.keySet());
+    }
+
+    private static void check(String name, boolean ok) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + name);
+        }
+    }
+}